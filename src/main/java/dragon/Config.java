@@ -32,6 +32,31 @@ public class Config extends HashMap<String, Object> {
 	 */
 	public static final String TOPOLOGY_TICK_TUPLE_FREQ_SECS="topology.tic.tuple.freq.secs";
 	
+	/**
+	 * the period in milliseconds at which tick tuples are sent to a bolt, where zero
+	 * means that the legacy period in seconds is used if it is set
+	 */
+	public static final String TOPOLOGY_TICK_TUPLE_FREQ_MS="topology.tick.tuple.freq.ms";
+	
+	/**
+	 * the maximum number of tuple trees that each spout task may have pending, where
+	 * zero means that tuple trees are not tracked
+	 */
+	public static final String TOPOLOGY_MAX_SPOUT_PENDING="topology.max.spout.pending";
+	
+	/**
+	 * the time in seconds after which a tracked tuple tree that has not completed
+	 * is expired and counted as failed
+	 */
+	public static final String TOPOLOGY_MESSAGE_TIMEOUT_SECS="topology.message.timeout.secs";
+	
+	/**
+	 * the share of a stream above which a key is hot and is split over more target
+	 * tasks, for subscriptions made with a hot key grouping that do not give their
+	 * own threshold, where zero means that their hot keys are not detected
+	 */
+	public static final String TOPOLOGY_HOTKEY_THRESHOLD="topology.hotkey.threshold";
+	
 	/**
 	 * the size of the buffers on Spout and Bolt outputs
 	 */
@@ -52,6 +77,70 @@ public class Config extends HashMap<String, Object> {
 	 */
 	public static final String DRAGON_TUPLE_BUNDLE_LINGER_MS="dragon.tuple.bundle.linger.ms";
 	
+	/**
+	 * whether to adapt the bundle size and linger time to the observed arrival rate
+	 */
+	public static final String DRAGON_TUPLE_BUNDLE_ADAPTIVE="dragon.tuple.bundle.adaptive";
+	
+	/**
+	 * the latency target in milliseconds that adaptive bundling aims to keep bundles within
+	 */
+	public static final String DRAGON_TUPLE_BUNDLE_LATENCY_SLO_MS="dragon.tuple.bundle.latency.slo.ms";
+	
+	/**
+	 * whether spouts and bolts may emit from multiple threads concurrently
+	 */
+	public static final String DRAGON_COLLECTOR_CONCURRENT="dragon.collector.concurrent";
+	
+	/**
+	 * the largest number of keys that an emitter holds tuples for, per combined
+	 * subscription, before sending the combined tuples
+	 */
+	public static final String DRAGON_COMBINER_MAX_KEYS="dragon.combiner.max.keys";
+	
+	/**
+	 * the number of times an idle spout spins before yielding
+	 */
+	public static final String DRAGON_SPOUT_BACKOFF_SPIN="dragon.spout.backoff.spin";
+	
+	/**
+	 * the number of times an idle spout yields before parking
+	 */
+	public static final String DRAGON_SPOUT_BACKOFF_YIELD="dragon.spout.backoff.yield";
+	
+	/**
+	 * the maximum time in milliseconds that an idle spout parks for
+	 */
+	public static final String DRAGON_SPOUT_BACKOFF_PARK_MAX_MS="dragon.spout.backoff.park.max.ms";
+	
+	/**
+	 * whether to throttle spouts when buffers downstream of them are above their high watermark
+	 */
+	public static final String DRAGON_BACKPRESSURE_ENABLED="dragon.backpressure.enabled";
+	
+	/**
+	 * the fraction of a buffer's capacity at which it comes under pressure
+	 */
+	public static final String DRAGON_BACKPRESSURE_HIGH_WATERMARK="dragon.backpressure.high.watermark";
+	
+	/**
+	 * the fraction of a buffer's capacity at which its pressure clears
+	 */
+	public static final String DRAGON_BACKPRESSURE_LOW_WATERMARK="dragon.backpressure.low.watermark";
+	
+	/**
+	 * the period in milliseconds at which a node reports again to its peers that
+	 * its buffers are under pressure, where reports that are not refreshed for
+	 * three periods expire, and zero means that reports are not refreshed
+	 */
+	public static final String DRAGON_BACKPRESSURE_REFRESH_MS="dragon.backpressure.refresh.ms";
+	
+	/**
+	 * the period in milliseconds at which a node reports the input queue depths
+	 * of its tasks to its peers, for load aware groupings
+	 */
+	public static final String DRAGON_LOAD_REPORT_PERIOD_MS="dragon.load.report.period.ms";
+	
 	/**
 	 * the base directory where Dragon can store files such as submitted jar files and check point data
 	 */
@@ -68,22 +157,53 @@ public class Config extends HashMap<String, Object> {
 	public static final String DRAGON_PERSISTENCE_DIR="dragon.persistance.dir";
 	
 	/**
-	 * the size of the thread pool that transfers tuples within a local cluster
+	 * the size of the thread pool that transfers tuples within a local cluster,
+	 * which is the size that it starts with and the least it is reduced to
 	 */
 	public static final String DRAGON_LOCALCLUSTER_THREADS="dragon.localcluster.threads";
 	
+	/**
+	 * the largest size that the thread pool that transfers tuples within a local
+	 * cluster is grown to, where zero means the number of available processors
+	 */
+	public static final String DRAGON_LOCALCLUSTER_THREADS_MAX="dragon.localcluster.threads.max";
+	
+	/**
+	 * the number of cores that the threads of a local cluster may use, where zero
+	 * means no limit
+	 */
+	public static final String DRAGON_LOCALCLUSTER_CPU_QUOTA="dragon.localcluster.cpu.quota";
+	
+	/**
+	 * the weight of a local cluster when sharing the cores of a node that
+	 * are in contention
+	 */
+	public static final String DRAGON_LOCALCLUSTER_CPU_WEIGHT="dragon.localcluster.cpu.weight";
+	
 	/**
 	 * the size of the thread pool that transfers tuples into the local cluster
 	 * from the network (note that values larger than 1 result in tuple reordering on streams)
 	 */
 	public static final String DRAGON_ROUTER_INPUT_THREADS="dragon.router.input.threads";
 	
+	/**
+	 * the largest size that the router input thread pool is grown to, where zero
+	 * means the number of available processors
+	 */
+	public static final String DRAGON_ROUTER_INPUT_THREADS_MAX="dragon.router.input.threads.max";
+	
 	/**
 	 *  the size of the thread pool that transfers tuples out of the local cluster to the 
-	 *  network (note that values large than 1 result in tuple reordering on streams)
+	 *  network, where tuples on a stream stay in order for any size
 	 */
 	public static final String DRAGON_ROUTER_OUTPUT_THREADS="dragon.router.output.threads";
 	
+	/**
+	 * the largest size that the router output thread pool is grown to, where zero
+	 * means the number of available processors
+	 */
+	public static final String DRAGON_ROUTER_OUTPUT_THREADS_MAX="dragon.router.output.threads.max";
+	
 	/**
 	 * the size of the buffers for tuples transferring into the local cluster from the network
 	 */
@@ -377,12 +497,33 @@ public class Config extends HashMap<String, Object> {
 		put(DRAGON_INPUT_BUFFER_SIZE,16);
 		put(DRAGON_TUPLE_BUNDLE_SIZE,64);
 		put(DRAGON_TUPLE_BUNDLE_LINGER_MS,50L);
+		put(DRAGON_TUPLE_BUNDLE_ADAPTIVE,false);
+		put(DRAGON_TUPLE_BUNDLE_LATENCY_SLO_MS,10L);
+		put(DRAGON_COLLECTOR_CONCURRENT,false);
+		put(DRAGON_COMBINER_MAX_KEYS,1024);
+		put(DRAGON_SPOUT_BACKOFF_SPIN,100);
+		put(DRAGON_SPOUT_BACKOFF_YIELD,10);
+		put(DRAGON_SPOUT_BACKOFF_PARK_MAX_MS,100L);
+		put(DRAGON_BACKPRESSURE_ENABLED,false);
+		put(DRAGON_BACKPRESSURE_HIGH_WATERMARK,0.8);
+		put(DRAGON_BACKPRESSURE_LOW_WATERMARK,0.4);
+		put(DRAGON_BACKPRESSURE_REFRESH_MS,1000L);
+		put(DRAGON_LOAD_REPORT_PERIOD_MS,100L);
+		put(TOPOLOGY_MAX_SPOUT_PENDING,0);
+		put(TOPOLOGY_MESSAGE_TIMEOUT_SECS,30);
+		put(TOPOLOGY_TICK_TUPLE_FREQ_MS,0L);
+		put(TOPOLOGY_HOTKEY_THRESHOLD,0.1);
 		put(DRAGON_DATA_DIR,"/tmp/dragon");
 		put(DRAGON_PERSISTENCE_DIR,"persistance");
 		put(DRAGON_JAR_DIR,"jars");
 		put(DRAGON_LOCALCLUSTER_THREADS,2);
+		put(DRAGON_LOCALCLUSTER_THREADS_MAX,0);
+		put(DRAGON_LOCALCLUSTER_CPU_QUOTA,0.0);
+		put(DRAGON_LOCALCLUSTER_CPU_WEIGHT,1.0);
 		put(DRAGON_ROUTER_INPUT_THREADS,1);
+		put(DRAGON_ROUTER_INPUT_THREADS_MAX,1);
 		put(DRAGON_ROUTER_OUTPUT_THREADS,1);
+		put(DRAGON_ROUTER_OUTPUT_THREADS_MAX,0);
 		put(DRAGON_ROUTER_INPUT_BUFFER_SIZE,16);
 		put(DRAGON_ROUTER_OUTPUT_BUFFER_SIZE,16);
 		put(DRAGON_SERVICE_TIMEOUT_MS,30*1000);
@@ -418,12 +559,29 @@ public class Config extends HashMap<String, Object> {
 		remove(DRAGON_INPUT_BUFFER_SIZE);
 		remove(DRAGON_TUPLE_BUNDLE_SIZE);
 		remove(DRAGON_TUPLE_BUNDLE_LINGER_MS);
+		remove(DRAGON_TUPLE_BUNDLE_ADAPTIVE);
+		remove(DRAGON_TUPLE_BUNDLE_LATENCY_SLO_MS);
+		remove(DRAGON_COLLECTOR_CONCURRENT);
+		remove(DRAGON_COMBINER_MAX_KEYS);
+		remove(DRAGON_SPOUT_BACKOFF_SPIN);
+		remove(DRAGON_SPOUT_BACKOFF_YIELD);
+		remove(DRAGON_SPOUT_BACKOFF_PARK_MAX_MS);
+		remove(DRAGON_BACKPRESSURE_ENABLED);
+		remove(DRAGON_BACKPRESSURE_HIGH_WATERMARK);
+		remove(DRAGON_BACKPRESSURE_LOW_WATERMARK);
+		remove(DRAGON_BACKPRESSURE_REFRESH_MS);
+		remove(DRAGON_LOAD_REPORT_PERIOD_MS);
 		remove(DRAGON_DATA_DIR);
 		remove(DRAGON_PERSISTENCE_DIR);
 		remove(DRAGON_JAR_DIR);
 		remove(DRAGON_LOCALCLUSTER_THREADS);
+		remove(DRAGON_LOCALCLUSTER_THREADS_MAX);
+		remove(DRAGON_LOCALCLUSTER_CPU_QUOTA);
+		remove(DRAGON_LOCALCLUSTER_CPU_WEIGHT);
 		remove(DRAGON_ROUTER_INPUT_THREADS);
+		remove(DRAGON_ROUTER_INPUT_THREADS_MAX);
 		remove(DRAGON_ROUTER_OUTPUT_THREADS);
+		remove(DRAGON_ROUTER_OUTPUT_THREADS_MAX);
 		remove(DRAGON_ROUTER_INPUT_BUFFER_SIZE);
 		remove(DRAGON_ROUTER_OUTPUT_BUFFER_SIZE);
 		remove(DRAGON_METRICS_ENABLED);
@@ -471,6 +629,201 @@ public class Config extends HashMap<String, Object> {
 		}
 	}
 	
+	/**
+	 * 
+	 * @return whether tuple bundling is adaptive
+	 */
+	public boolean getDragonTupleBundleAdaptive() {
+		return (Boolean)get(DRAGON_TUPLE_BUNDLE_ADAPTIVE);
+	}
+	
+	/**
+	 * 
+	 * @return the tuple bundle latency slo ms
+	 */
+	public long getDragonTupleBundleLatencySloMS() {
+		Object o=get(DRAGON_TUPLE_BUNDLE_LATENCY_SLO_MS);
+		if(o instanceof Integer) {
+			return (Long) ((Integer)o).longValue(); 
+		} else {
+			return (Long) o;
+		}
+	}
+	
+	/**
+	 * 
+	 * @return whether collectors allow concurrent emits
+	 */
+	public boolean getDragonCollectorConcurrent() {
+		return (Boolean)get(DRAGON_COLLECTOR_CONCURRENT);
+	}
+	
+	/**
+	 * 
+	 * @return the largest number of keys held for combining per combined subscription
+	 */
+	public int getDragonCombinerMaxKeys() {
+		Object o=get(DRAGON_COMBINER_MAX_KEYS);
+		if(o instanceof Long) {
+			return ((Long)o).intValue();
+		} else {
+			return (Integer) o;
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the number of spins of an idle spout
+	 */
+	public int getDragonSpoutBackoffSpin() {
+		Object o=get(DRAGON_SPOUT_BACKOFF_SPIN);
+		if(o instanceof Long) {
+			return ((Long)o).intValue();
+		} else {
+			return (Integer) o;
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the number of yields of an idle spout
+	 */
+	public int getDragonSpoutBackoffYield() {
+		Object o=get(DRAGON_SPOUT_BACKOFF_YIELD);
+		if(o instanceof Long) {
+			return ((Long)o).intValue();
+		} else {
+			return (Integer) o;
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the maximum park time of an idle spout in ms
+	 */
+	public long getDragonSpoutBackoffParkMaxMS() {
+		Object o=get(DRAGON_SPOUT_BACKOFF_PARK_MAX_MS);
+		if(o instanceof Integer) {
+			return (Long) ((Integer)o).longValue(); 
+		} else {
+			return (Long) o;
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the maximum number of pending tuple trees per spout task
+	 */
+	public int getTopologyMaxSpoutPending() {
+		Object o=get(TOPOLOGY_MAX_SPOUT_PENDING);
+		if(o instanceof Long) {
+			return ((Long)o).intValue();
+		} else {
+			return (Integer) o;
+		}
+	}
+		/**
+	 * 
+	 * @return the time in seconds after which a pending tuple tree is expired
+	 */
+	public int getTopologyMessageTimeoutSecs() {
+		Object o=get(TOPOLOGY_MESSAGE_TIMEOUT_SECS);
+		if(o instanceof Long) {
+			return ((Long)o).intValue();
+		} else {
+			return (Integer) o;
+		}
+	}
+	
+
+	/**
+	 * 
+	 * @return the period in ms at which tick tuples are sent, or zero if
+	 * they are not sent
+	 */
+	public long getTopologyTickTupleFreqMs() {
+		Object o=get(TOPOLOGY_TICK_TUPLE_FREQ_MS);
+		long ms = o instanceof Integer ? ((Integer)o).longValue() : (Long) o;
+		if(ms==0 && containsKey(TOPOLOGY_TICK_TUPLE_FREQ_SECS)) {
+			ms = ((Number)get(TOPOLOGY_TICK_TUPLE_FREQ_SECS)).longValue()*1000L;
+		}
+		return ms;
+	}
+	
+	/**
+	 * 
+	 * @return the default share of a hot key grouped stream above which a key
+	 * is hot, or zero if hot keys are not detected
+	 */
+	public double getTopologyHotkeyThreshold() {
+		Object o=get(TOPOLOGY_HOTKEY_THRESHOLD);
+		if(o instanceof Double) {
+			return (Double) o;
+		} else {
+			return ((Number)o).doubleValue();
+		}
+	}
+	
+	/**
+	 * 
+	 * @return whether backpressure is enabled
+	 */
+	public boolean getDragonBackpressureEnabled() {
+		return (Boolean)get(DRAGON_BACKPRESSURE_ENABLED);
+	}
+	
+	/**
+	 * 
+	 * @return the high watermark as a fraction of buffer capacity
+	 */
+	public double getDragonBackpressureHighWatermark() {
+		Object o=get(DRAGON_BACKPRESSURE_HIGH_WATERMARK);
+		if(o instanceof Float) {
+			return ((Float)o).doubleValue();
+		} else {
+			return (Double) o;
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the low watermark as a fraction of buffer capacity
+	 */
+	public double getDragonBackpressureLowWatermark() {
+		Object o=get(DRAGON_BACKPRESSURE_LOW_WATERMARK);
+		if(o instanceof Float) {
+			return ((Float)o).doubleValue();
+		} else {
+			return (Double) o;
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the period in ms at which pressure is reported again to peers
+	 */
+	public long getDragonBackpressureRefreshMs() {
+		Object o=get(DRAGON_BACKPRESSURE_REFRESH_MS);
+		if(o instanceof Integer) {
+			return ((Integer)o).longValue();
+		} else {
+			return (Long) o;
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the period in ms at which input queue depths are reported to peers
+	 */
+	public long getDragonLoadReportPeriodMs() {
+		Object o=get(DRAGON_LOAD_REPORT_PERIOD_MS);
+		if(o instanceof Integer) {
+			return ((Integer)o).longValue();
+		} else {
+			return (Long) o;
+		}
+	}
+	
 	/**
 	 *  
 	 * @return the base directory.
@@ -504,6 +857,41 @@ public class Config extends HashMap<String, Object> {
 		return (Integer)get(DRAGON_LOCALCLUSTER_THREADS);
 	}
 	
+	/**
+	 * 
+	 * @return the largest size of the local cluster thread pool, where zero
+	 * means the number of available processors
+	 */
+	public int getDragonLocalclusterThreadsMax() {
+		return (Integer)get(DRAGON_LOCALCLUSTER_THREADS_MAX);
+	}
+	
+	/**
+	 * 
+	 * @return the number of cores that a local cluster may use, or zero for no limit
+	 */
+	public double getDragonLocalclusterCpuQuota() {
+		Object o=get(DRAGON_LOCALCLUSTER_CPU_QUOTA);
+		if(o instanceof Double) {
+			return (Double) o;
+		} else {
+			return ((Number)o).doubleValue();
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the weight of a local cluster when cores are in contention
+	 */
+	public double getDragonLocalclusterCpuWeight() {
+		Object o=get(DRAGON_LOCALCLUSTER_CPU_WEIGHT);
+		if(o instanceof Double) {
+			return (Double) o;
+		} else {
+			return ((Number)o).doubleValue();
+		}
+	}
+	
 	/**
 	 * 
 	 * @return the router input threads.
@@ -512,6 +900,15 @@ public class Config extends HashMap<String, Object> {
 		return (Integer)get(DRAGON_ROUTER_INPUT_THREADS);
 	}
 	
+	/**
+	 * 
+	 * @return the largest size of the router input thread pool, where zero
+	 * means the number of available processors
+	 */
+	public int getDragonRouterInputThreadsMax() {
+		return (Integer)get(DRAGON_ROUTER_INPUT_THREADS_MAX);
+	}
+	
 	/**
 	 * 
 	 * @return the router output threads.
@@ -520,6 +917,15 @@ public class Config extends HashMap<String, Object> {
 		return (Integer)get(DRAGON_ROUTER_OUTPUT_THREADS);
 	}
 	
+	/**
+	 * 
+	 * @return the largest size of the router output thread pool, where zero
+	 * means the number of available processors
+	 */
+	public int getDragonRouterOutputThreadsMax() {
+		return (Integer)get(DRAGON_ROUTER_OUTPUT_THREADS_MAX);
+	}
+	
 	/**
 	 * 
 	 * @return the router input buffer size.
@@ -21,6 +21,11 @@ public class Constants {
 	 */
 	public final static String SYSTEM_TICK_STREAM_ID="SYSTEM_TICK_STREAM_ID";
 	
+	/**
+	 * 
+	 */
+	public final static String SYSTEM_TIMER_STREAM_ID="SYSTEM_TIMER_STREAM_ID";
+	
 	/**
 	 * 
 	 */
@@ -3,6 +3,7 @@ package dragon;
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -30,6 +31,8 @@ import dragon.network.messages.service.getmetrics.GetMetricsSMsg;
 import dragon.network.messages.service.getmetrics.MetricsSMsg;
 import dragon.network.messages.service.getnodecontext.GetNodeContextSMsg;
 import dragon.network.messages.service.getnodecontext.NodeContextSMsg;
+import dragon.network.messages.service.getring.GetRingSMsg;
+import dragon.network.messages.service.getring.RingSMsg;
 import dragon.network.messages.service.getstatus.GetStatusSMsg;
 import dragon.network.messages.service.getstatus.StatusSMsg;
 import dragon.network.messages.service.halttopo.HaltTopoErrorSMsg;
@@ -47,6 +50,7 @@ import dragon.network.messages.service.uploadjar.UploadJarSMsg;
 import dragon.network.messages.service.progress.ProgressSMsg;
 import dragon.topology.DragonTopology;
 import dragon.topology.IEmbeddingAlgo;
+import dragon.utils.HotKeys;
 import dragon.utils.ReflectionUtils;
 import io.bretty.console.tree.PrintableTreeNode;
 import io.bretty.console.tree.TreePrinter;
@@ -213,6 +217,39 @@ public class DragonSubmitter {
 		comms.close();
 	}
 	
+	/**
+	 * Get the live hash ring of a consistent hash grouping of the given topology,
+	 * and the task that owns a key if one is given. The values of the key are
+	 * given as strings, which the daemon converts to the types that the
+	 * grouping's fields have in the tuples that it routes, or reports an error
+	 * if it can not.
+	 * @param conf
+	 * @param topologyId
+	 * @param argList the source component, stream and destination component,
+	 * followed by the values of the key if any
+	 * @throws ParseException
+	 */
+	public static void getOwner(Config conf,String topologyId,List<String> argList) throws ParseException {
+		if(argList.size()<3) {
+			throw new ParseException("required arguments: SOURCE STREAM DESTINATION [KEY...]");
+		}
+		initComms(conf);
+		List<Object> key=null;
+		if(argList.size()>3) {
+			key=new ArrayList<Object>(argList.subList(3, argList.size()));
+		}
+		System.out.println("getting ring...");
+		toServer(new GetRingSMsg(topologyId,argList.get(0),argList.get(1),argList.get(2),key));
+		RingSMsg m = (RingSMsg) fromServer();
+		System.out.println("ring version ["+m.version+"] over tasks "+Arrays.toString(m.ring.getTasks())+
+				" with ["+m.ring.getVirtualNodes()+"] virtual nodes");
+		if(key!=null) {
+			System.out.println("key "+key+" is owned by task ["+m.owner+"]");
+		}
+		toServer(new ServiceDoneSMsg());
+		comms.close();
+	}
+	
 	/**
 	 * Terminate the topology, which removes it from daemon completely. Will wait for
 	 * all existing data to be completely processed before terminating.
@@ -302,9 +339,16 @@ public class DragonSubmitter {
 					for(String cid : message.descComponents.get(descid).get(topologyId)) {
 						String name="["+cid+"]";
 						Sample metrics = message.descMetrics.get(descid).get(topologyId).get(cid);
-						name+=" emt:"+metrics.emitted+",exe:"+metrics.processed+",trf:"+metrics.transferred;
+						name+=" emt:"+metrics.emitted+",exe:"+metrics.processed+",trf:"+metrics.transferred+
+								",cpu:"+(long)metrics.cpuMs+"ms,thr:"+(long)metrics.cpuThrottledMs+"ms";
 						TreeNode component = new TreeNode(name);
 						machine.addChild(component);
+						// list hot keys
+						if(metrics.hotKeys!=null) {
+							for(HotKeys.HotKey hotKey : metrics.hotKeys) {
+								component.addChild(new TreeNode(hotKey.toString()));
+							}
+						}
 						// list errors
 						if(message.descErrors.get(descid).containsKey(topologyId)) {
 							if(message.descErrors.get(descid).get(topologyId).containsKey(cid)) {
@@ -5,12 +5,14 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import dragon.generated.GlobalStreamId;
 import dragon.grouping.AbstractGrouping;
 import dragon.network.DragonTopologyException;
 import dragon.network.Node;
@@ -20,12 +22,17 @@ import dragon.spout.SpoutOutputCollector;
 import dragon.task.InputCollector;
 import dragon.task.OutputCollector;
 import dragon.task.TopologyContext;
+import dragon.task.WorkerTopologyContext;
+import dragon.topology.Backpressure;
+import dragon.topology.HashRings;
 import dragon.topology.BoltDeclarer;
 import dragon.topology.DragonTopology;
 import dragon.topology.GroupingsSet;
 import dragon.topology.OutputFieldsDeclarer;
+import dragon.topology.RoutingTable;
 import dragon.topology.SpoutDeclarer;
 import dragon.topology.StreamMap;
+import dragon.topology.TaskLoad;
 import dragon.topology.base.Bolt;
 import dragon.topology.base.Component;
 import dragon.topology.base.Spout;
@@ -33,8 +40,12 @@ import dragon.tuple.Fields;
 import dragon.tuple.NetworkTask;
 import dragon.tuple.Tuple;
 import dragon.tuple.Values;
-import dragon.utils.CircularBlockingQueue;
+import dragon.utils.ExecutorGroup;
+import dragon.utils.IResizablePool;
 import dragon.utils.NetworkTaskBuffer;
+import dragon.utils.PoolTuner;
+import dragon.utils.TimingWheel;
+import dragon.utils.WorkStealingDeques;
 
 /**
  * LocalCluster manages the bolts and spouts for a given topology that are
@@ -90,11 +101,13 @@ public class LocalCluster {
 	private HashMap<String,HashMap<Integer,Spout>> spouts;
 	
 	/**
-	 * Queue of queues of NetworkTasks, i.e. the outputs of spouts and bolts,
-	 * that are waiting to be serviced. One reference to such a queue is placed
-	 * on outputsPending for each NetworkTask it contains.
+	 * Deques of queues of NetworkTasks, i.e. the outputs of spouts and bolts,
+	 * that are waiting to be serviced, one deque per network executor thread.
+	 * A queue is placed on outputsPending only when it is claimed, so there is
+	 * at most one reference to it at any time. Idle network executor threads
+	 * steal queues from the deques of the other threads.
 	 */
-	private CircularBlockingQueue<NetworkTaskBuffer>[] outputsPending;
+	private WorkStealingDeques<NetworkTaskBuffer> outputsPending;
 
 	/**
 	 * Map from component id to the conf for spouts, for only those instances
@@ -124,10 +137,23 @@ public class LocalCluster {
 	 * components to their destinations in this local cluster, or from the Router
 	 * (that are incoming from a remote daemon) to their destinations in this
 	 * local cluster. These threads never block when a destination buffer is full,
-	 * but rather continue to poll. Therefore the number of these threads can be as
-	 * little as one.
+	 * but rather park the queue on the destination's input collector until the
+	 * destination takes from its input buffer. Therefore the number of these threads
+	 * can be as little as one. The pool is resized at runtime by its tuner, and a
+	 * thread that is retired or replaced leaves once it has finished its queue.
 	 */
-	private ArrayList<Thread> networkExecutorThreads;
+	private CopyOnWriteArrayList<Thread> networkExecutorThreads;
+	
+	/**
+	 * for each index of the network executor pool, whether its thread has
+	 * retired, guarded by the list of network executor threads
+	 */
+	private boolean[] networkExecutorRetired;
+	
+	/**
+	 * resizes the pool of network executor threads
+	 */
+	private PoolTuner networkExecutorTuner;
 	
 	/**
 	 * Map from component reference to array list of component errors that the
@@ -228,32 +254,40 @@ public class LocalCluster {
 	 * local cluster.
 	 */
 	private DragonTopology dragonTopology;
-
+	
 	/**
-	 * A thread that sleeps for 1 second at a time, and causes the tickCounterThread
-	 * to increment counters etc., every second.
+	 * The routing table compiled from the topology, used by the collectors
+	 * to route tuples.
 	 */
-	private Thread tickThread;
+	private RoutingTable routingTable;
 	
 	/**
-	 * A thread that generates tick tuples for bolts as required by their conf.
+	 * The buffers of the topology that are under pressure, used to throttle
+	 * the spouts.
 	 */
-	private Thread tickCounterThread;
+	private Backpressure backpressure;
 	
 	/**
-	 * The number of ticks of the tick thread.
+	 * The input queue depths of the tasks of the topology, used by load
+	 * aware groupings.
 	 */
-	private long tickTime=0;
+	private TaskLoad taskLoad;
 	
 	/**
-	 * The number of ticks that the ticker counter thread has processed.
+	 * The hash rings of the consistent hash groupings of the topology, which
+	 * are kept the same on every daemon.
 	 */
-	private long tickCounterTime=0;
+	private HashRings hashRings;
 	
 	/**
-	 * The number of ticks that each bolt component has reached.
+	 * The executor threads of the topology, which share a CPU quota and weight.
+	 */
+	private ExecutorGroup executorGroup;
+
+	/**
+	 * The timers that send tick tuples to bolts as required by their conf.
 	 */
-	private HashMap<String,Integer> boltTickCount;
+	private ArrayList<TimingWheel.Timeout> tickTimers;
 	
 	/**
 	 * The fields of a tick tuple.
@@ -382,12 +416,18 @@ public class LocalCluster {
 	 * @throws DragonRequiresClonableException if the topology contains components that are not clonable
 	 * @throws DragonTopologyException 
 	 */
-	@SuppressWarnings("unchecked")
 	public void submitTopology(String topologyName, Config conf, DragonTopology dragonTopology, boolean start) throws DragonRequiresClonableException, DragonTopologyException {
 		this.topologyName=topologyName;
 		this.conf=conf;
 		this.dragonTopology=dragonTopology;
 		
+		/*
+		 * Compile the routing table, which must be done before the groupings are
+		 * prepared and the collectors are created.
+		 */
+		routingTable = new RoutingTable(dragonTopology, node==null ? null : node.getComms().getMyNodeDesc());
+		taskLoad = new TaskLoad(topologyName, dragonTopology, routingTable,
+				node==null ? null : node.getComms().getMyNodeDesc(), conf);
 		
 		/*
 		 * Prepare the groupings. This must be done before preparing/opening bolts/spouts, because
@@ -409,10 +449,12 @@ public class LocalCluster {
 				for(int i=0;i<boltDeclarer.getNumTasks();i++) {
 					taskIds.add(i);
 				}
+				WorkerTopologyContext context = new WorkerTopologyContext(dragonTopology,
+						node==null ? null : node.getComms().getMyNodeDesc(), routingTable, taskLoad, toComponentId);
 				for(String streamId : streams.keySet()) {
 					GroupingsSet groupings = dragonTopology.getGroupingsSet(fromComponentId, toComponentId, streamId);
 					for(AbstractGrouping grouping : groupings) {
-						grouping.prepare(null, null, taskIds);
+						grouping.prepare(context, new GlobalStreamId(fromComponentId,streamId), taskIds);
 					}
 				}
 			}
@@ -436,21 +478,30 @@ public class LocalCluster {
 				for(int i=0;i<boltDeclarer.getNumTasks();i++) {
 					taskIds.add(i);
 				}
+				WorkerTopologyContext context = new WorkerTopologyContext(dragonTopology,
+						node==null ? null : node.getComms().getMyNodeDesc(), routingTable, taskLoad, toComponentId);
 				for(String streamId : streams.keySet()) {
 					GroupingsSet groupings = dragonTopology.getGroupingsSet(fromComponentId, toComponentId, streamId);
 					for(AbstractGrouping grouping : groupings) {
-						grouping.prepare(null, null, taskIds);
+						grouping.prepare(context, new GlobalStreamId(fromComponentId,streamId), taskIds);
 					}
 				}
 			}
 			
 		}
 		
+		backpressure = new Backpressure(topologyName, dragonTopology, routingTable,
+				node==null ? null : node.getComms().getMyNodeDesc(), conf);
+		hashRings = new HashRings(topologyName, dragonTopology, routingTable,
+				node==null ? null : node.getComms().getMyNodeDesc());
+		executorGroup = new ExecutorGroup(topologyName, conf.getDragonLocalclusterCpuQuota(),
+				conf.getDragonLocalclusterCpuWeight());
+		
 		/*
 		 * Allocate an array of threads for the outputs pending queue. These threads wont
 		 * be created until the system is started.
 		 */
-		networkExecutorThreads = new ArrayList<Thread>();
+		networkExecutorThreads = new CopyOnWriteArrayList<Thread>();
 		
 		/*
 		 * If we are not starting the topology immediately then allocated holding arrays
@@ -506,6 +557,7 @@ public class LocalCluster {
 					SpoutOutputCollector collector = new SpoutOutputCollector(this,spout);
 					if(localtask) totalOutputsBufferSize+=collector.getTotalBufferSpace();
 					spout.setOutputCollector(collector);
+					if(localtask) backpressure.addSpout(spout);
 					if(localtask) {
 						if(start) {
 							try {
@@ -586,11 +638,12 @@ public class LocalCluster {
 			totalParallelismHint+=numAllocated;//Math.ceil((double)numAllocated*boltDeclarer.getParallelismHint()/boltDeclarer.getNumTasks());
 		}
 		
+		routingTable.bind(bolts);
+		
 		log.info("total outputs buffer size is "+totalOutputsBufferSize);
-		outputsPending = new CircularBlockingQueue[conf.getDragonLocalclusterThreads()];
-		for(int i=0;i<conf.getDragonLocalclusterThreads();i++) {
-			outputsPending[i]=new CircularBlockingQueue<NetworkTaskBuffer>(2*totalOutputsBufferSize);
-		}
+		outputsPending = new WorkStealingDeques<NetworkTaskBuffer>(conf.getDragonLocalclusterThreads(),
+				conf.getDragonLocalclusterThreadsMax()>0 ? conf.getDragonLocalclusterThreadsMax() :
+					Runtime.getRuntime().availableProcessors());
 		log.info("total inputs buffer size is "+totalInputsBufferSize);
 		
 		componentExecutorThreads = new ArrayList<Thread>();
@@ -601,6 +654,7 @@ public class LocalCluster {
 					public void run(){
 						log.info("starting up");
 						Component thisComponent=component;
+						final ExecutorGroup.Executor executor=executorGroup.register(component);
 						while(!isInterrupted()&&!component.isClosed()){
 							if(state==LocalCluster.State.HALTED) {
 								log.info("halted");
@@ -619,9 +673,11 @@ public class LocalCluster {
 								continue;
 							}
 	
+							executor.throttle();
 							thisComponent.run();
 							
 						}
+						executor.deregister();
 						log.info("shutting down");
 					}
 				};
@@ -636,6 +692,7 @@ public class LocalCluster {
 					public void run(){
 						log.info("starting up");
 						Component thisComponent=component;
+						final ExecutorGroup.Executor executor=executorGroup.register(component);
 						while(!isInterrupted()){
 							if(state==LocalCluster.State.HALTED) {
 								log.info("halted");
@@ -653,8 +710,10 @@ public class LocalCluster {
 								}
 								continue;
 							}
+							executor.throttle();
 							thisComponent.run();
 						}
+						executor.deregister();
 						log.info("shutting down");
 					}
 				};
@@ -667,99 +726,22 @@ public class LocalCluster {
 		
 		
 		
-		boltTickCount = new HashMap<String,Integer>();
+		tickTimers = new ArrayList<TimingWheel.Timeout>();
 		for(String boltId : bolts.keySet()) {
-			if(boltConfs.get(boltId).containsKey(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS)) {
-				boltTickCount.put(boltId, (Integer)boltConfs.get(boltId).get(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS));
+			long period=boltConfs.get(boltId).getTopologyTickTupleFreqMs();
+			if(period>0) {
+				tickTimers.add(TimingWheel.inst().schedule(period,period,()->{
+					issueTickTuple(boltId);
+				}));
 			}
 		}
-		
-		tickCounterThread = new Thread() {
-			public void run() {
-				this.setName("tick counter");
-				while(state!=LocalCluster.State.TERMINATING && !isInterrupted()) {
-					if(state==LocalCluster.State.HALTED) {
-						log.info(getName()+" halted");
-						try {
-							haltLock.lock();
-							try {
-								restartCondition.await();
-							} catch (InterruptedException e) {
-								log.info(getName()+" interrupted");
-								break;
-							}
-							log.info(getName()+" resuming");
-						} finally {
-							haltLock.unlock();
-						}
-					}
-					if(tickCounterTime==tickTime) {
-						synchronized(tickCounterThread){
-							try {
-								wait();
-							} catch (InterruptedException e) {
-								log.info("tick counter thread exiting");
-								break;
-							}
-						}
-					}
-					while(tickCounterTime<tickTime) {
-						for(String boltId:boltTickCount.keySet()) {
-							Integer count = boltTickCount.get(boltId);
-							count--;
-							if(count==0) {
-								issueTickTuple(boltId);
-								count=(Integer)boltConfs.get(boltId).get(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS);
-							}
-							boltTickCount.put(boltId, count);
-						}
-						tickCounterTime++;
-					}
-				}
-			}
-		};
-		tickCounterThread.setName("tick counter");
-		tickCounterThread.start();
-		
-		tickThread = new Thread() {
-			public void run() {
-				this.setName("tick");
-				while(state!=LocalCluster.State.TERMINATING && !isInterrupted()) {
-					if(state==LocalCluster.State.HALTED) {
-						log.info(getName()+" halted");
-						try {
-							haltLock.lock();
-							try {
-								restartCondition.await();
-							} catch (InterruptedException e) {
-								log.info(getName()+" interrupted");
-								break;
-							}
-							log.info(getName()+" resuming");
-						} finally {
-							haltLock.unlock();
-						}
-					}
-					try {
-						Thread.sleep(1000);
-					} catch (InterruptedException e) {
-						log.info("terminating tick thread");
-						break;
-					}
-					tickTime++;
-					synchronized(tickCounterThread) {
-						tickCounterThread.notify();
-					}
-				}
-			}
-		};
-		tickThread.setName("tick");
-		tickThread.start();
 
 
 		//totalParallelismHint=1;
 		
 		outputsScheduler();
+		taskLoad.start();
+		backpressure.start();
 		
 		
 		state=State.SUBMITTED;
@@ -822,14 +804,12 @@ public class LocalCluster {
 	 * @param boltId
 	 */
 	private void issueTickTuple(String boltId) {
-		Tuple tuple=new Tuple();
-		tuple.setValues(new Values("0"));
+		if(state==State.HALTED || state==State.TERMINATING) return;
+		Tuple tuple=new Tuple(tickFields,new Values("0"));
 		tuple.setSourceComponent(Constants.SYSTEM_COMPONENT_ID);
 		tuple.setSourceStreamId(Constants.SYSTEM_TICK_STREAM_ID);
 		for(Bolt bolt : bolts.get(boltId).values()) {
-			synchronized(bolt) {
-				bolt.setTickTuple(tuple);
-			}
+			bolt.getInputCollector().deliver(new Tuple[] {tuple});
 		}
 	}
 	
@@ -924,13 +904,7 @@ public class LocalCluster {
 				} catch (InterruptedException e) {
 					log.warn("threads may not have terminated");
 				}
-				
-				try {
-					tickThread.join();
-					tickCounterThread.join();
-				} catch (InterruptedException e) {
-					log.warn("interrupted while waiting for tick thread");
-				}
+				executorGroup.close();
 				
 				// the local cluster can now be garbage collected
 				synchronized(groupOperations) {
@@ -960,78 +934,268 @@ public class LocalCluster {
 	 * deliver tuples to the input queues of components.
 	 */
 	private void outputsScheduler(){
-		log.debug("starting the outputs scheduler with "+conf.getDragonLocalclusterThreads()+" threads");
-		for(int i=0;i<conf.getDragonLocalclusterThreads();i++) {
-			final int me=i;
-			networkExecutorThreads.add(new Thread() {
-				@Override
-				public void run(){
-					log.info("starting up");
-					HashSet<Integer> doneTaskIds=new HashSet<Integer>();
-					NetworkTaskBuffer queue;
-					while(!isInterrupted()) {
-						if(state==LocalCluster.State.HALTED) {
-							log.info("halted");
+		log.debug("starting the outputs scheduler with "+outputsPending.getWorkers()+" threads");
+		networkExecutorRetired=new boolean[outputsPending.getMaxWorkers()];
+		for(int i=0;i<outputsPending.getWorkers();i++) {
+			startNetworkExecutor(i);
+		}
+		networkExecutorTuner=new PoolTuner("netex "+topologyName,new NetworkExecutorPool(),
+				conf.getDragonLocalclusterThreads(),outputsPending.getMaxWorkers());
+	}
+	
+	/**
+	 * Start a network executor thread, that takes queues for the given worker
+	 * index, replacing any thread that had the index.
+	 * @param me the index of the worker
+	 */
+	private void startNetworkExecutor(final int me) {
+		final Thread thread=new Thread() {
+			@Override
+			public void run(){
+				log.info("starting up");
+				final ExecutorGroup.Executor executor=executorGroup.register(this);
+				HashSet<Integer> doneTaskIds=new HashSet<Integer>();
+				NetworkTaskBuffer queue;
+				long start;
+				while(!isInterrupted()) {
+					if(state==LocalCluster.State.HALTED) {
+						log.info("halted");
+						try {
+							haltLock.lock();
 							try {
-								haltLock.lock();
-								try {
-									restartCondition.await();
-								} catch (InterruptedException e) {
-									log.info("interrupted");
-									break;
-								}
-								log.info("resuming");
-							} finally {
-								haltLock.unlock();
+								restartCondition.await();
+							} catch (InterruptedException e) {
+								log.info("interrupted");
+								break;
 							}
-							continue;
-						}
-						
-						try {
-							queue = outputsPending[me].take();
-						} catch (InterruptedException e1) {
-							log.info("interrupted");
-							break;
+							log.info("resuming");
+						} finally {
+							haltLock.unlock();
 						}
-
+						continue;
+					}
+					
+					// a thread that has been replaced, or retired, takes no more work
+					if(networkExecutorThreads.get(me)!=this) break;
+					executor.throttle();
+					try {
+						queue = outputsPending.take(me);
+					} catch (InterruptedException e1) {
+						log.info("interrupted");
+						break;
+					}
+					if(queue==null) {
+						// retired, unless the pool has grown back over this index
+						if(retireNetworkExecutor(me)) break;
+						continue;
+					}
+					start=System.nanoTime();
+					outputsPending.waited(start-queue.getScheduledNanos());
+					while(true) {
 						NetworkTask networkTask = (NetworkTask) queue.peek();
-						while(networkTask!=null) {
-							final Tuple[] tuples = networkTask.getTuples();
-							final String name = networkTask.getComponentId();
-							doneTaskIds.clear();
-							for(Integer taskId : networkTask.getTaskIds()) {
-								if(bolts.get(name).get(taskId).getInputCollector().getQueue().offer(tuples)){
-									doneTaskIds.add(taskId);
-								} 
+						if(networkTask==null) {
+							/*
+							 * Release the queue and then check that nothing was put
+							 * on it in the mean time, which would otherwise not be
+							 * scheduled since we held the claim.
+							 */
+							queue.release();
+							if(queue.isEmpty() || !queue.claim()) break;
+							continue;
+						}
+						final Tuple[] tuples = networkTask.getTuples();
+						final String name = networkTask.getComponentId();
+						InputCollector blocked=null;
+						doneTaskIds.clear();
+						for(Integer taskId : networkTask.getTaskIds()) {
+							InputCollector inputCollector = bolts.get(name).get(taskId).getInputCollector();
+							if(inputCollector.offer(tuples)){
+								doneTaskIds.add(taskId);
+							} else if(blocked==null) {
+								blocked=inputCollector;
 							}
-							networkTask.getTaskIds().removeAll(doneTaskIds);
-							if(networkTask.getTaskIds().isEmpty()) {
-								queue.poll();
-								networkTask = (NetworkTask) queue.peek();
-							} else {
-								outputPending(queue);
+						}
+						networkTask.getTaskIds().removeAll(doneTaskIds);
+						if(networkTask.getTaskIds().isEmpty()) {
+							queue.poll();
+							/*
+							 * Yield a queue without a deadline, which remains
+							 * claimed, if another queue has one.
+							 */
+							if(networkTask.getDeadline()==0 && outputsPending.nextDeadline()!=0) {
+								outputResumed(queue);
 								break;
 							}
+						} else {
+							/*
+							 * The queue remains claimed while it is parked, it will
+							 * be rescheduled when the destination has space.
+							 */
+							blocked.park(queue,tuples);
+							break;
 						}
 					}
-					log.info("shutting down");
+					outputsPending.busy(me,System.nanoTime()-start);
 				}
-			});
-			networkExecutorThreads.get(i).setName("netex "+i);
-			networkExecutorThreads.get(i).start();
+				executor.deregister();
+				log.info("shutting down");
+			}
+		};
+		thread.setName("netex "+me);
+		if(me<networkExecutorThreads.size()) {
+			networkExecutorThreads.set(me, thread);
+		} else {
+			networkExecutorThreads.add(thread);
+		}
+		thread.start();
+	}
+	
+	/**
+	 * Retire the network executor thread of the given index, if the index is
+	 * no longer in the pool. The decision is made under the same lock as the
+	 * pool is resized with, so that a thread is either kept when the pool grows
+	 * back over its index or is known to have left.
+	 * @param me the index of the worker
+	 * @return true if the thread should leave
+	 */
+	private boolean retireNetworkExecutor(int me) {
+		synchronized(networkExecutorThreads) {
+			if(me<outputsPending.getWorkers()) return false;
+			networkExecutorRetired[me]=true;
+			return true;
+		}
+	}
+	
+	/**
+	 * The pool of network executor threads, as resized by its tuner.
+	 * @author aaron
+	 *
+	 */
+	private class NetworkExecutorPool implements IResizablePool {
+		
+		/* (non-Javadoc)
+		 * @see dragon.utils.IResizablePool#getPoolSize()
+		 */
+		@Override
+		public int getPoolSize() {
+			return outputsPending.getWorkers();
+		}
+		
+		/* (non-Javadoc)
+		 * @see dragon.utils.IResizablePool#setPoolSize(int)
+		 */
+		@Override
+		public synchronized void setPoolSize(int size) {
+			if(state!=State.RUNNING) return;
+			synchronized(networkExecutorThreads) {
+				final int workers=outputsPending.getWorkers();
+				// before the threads start, so that they do not find themselves retired
+				outputsPending.setWorkers(size);
+				for(int i=workers;i<outputsPending.getWorkers();i++) {
+					// a thread that has not yet left keeps its index
+					if(i<networkExecutorThreads.size() && !networkExecutorRetired[i]) continue;
+					networkExecutorRetired[i]=false;
+					startNetworkExecutor(i);
+				}
+			}
+		}
+		
+		/* (non-Javadoc)
+		 * @see dragon.utils.IResizablePool#getPoolBusyNanos()
+		 */
+		@Override
+		public long getPoolBusyNanos() {
+			return outputsPending.getBusyNanos();
+		}
+		
+		/* (non-Javadoc)
+		 * @see dragon.utils.IResizablePool#getPoolWaitNanos()
+		 */
+		@Override
+		public long getPoolWaitNanos() {
+			return outputsPending.getWaitNanos();
 		}
 		
+		/* (non-Javadoc)
+		 * @see dragon.utils.IResizablePool#getPoolTaken()
+		 */
+		@Override
+		public long getPoolTaken() {
+			return outputsPending.getTaken();
+		}
+		
+		/* (non-Javadoc)
+		 * @see dragon.utils.IResizablePool#getPoolBacklog()
+		 */
+		@Override
+		public int getPoolBacklog() {
+			return outputsPending.size();
+		}
 	}
 	
 	/**
-	 * Schedule a queue that has a new NetworkTask on it to be processed. There will
-	 * be one reference of each queue for each NetworkTask that is outstanding on it.
+	 * Schedule a queue that has a new NetworkTask on it to be processed. The queue
+	 * is only scheduled if it is not already scheduled, in which case the network
+	 * executor thread that holds it will process the new NetworkTask. Queues are
+	 * processed earliest deadline first, by the deadline at their head.
 	 * 
 	 * @param queue the reference of the queue to process
 	 */
 	public void outputPending(final NetworkTaskBuffer queue) {
-		// there is always enough space on this queue
-		outputsPending[queue.hashCode()%networkExecutorThreads.size()].offer(queue);
+		if(queue.claim()) {
+			queue.setScheduledNanos(System.nanoTime());
+			outputsPending.offer(queue,deadlineOf(queue));
+		}
+	}
+	
+	/**
+	 * Reschedule a queue that was parked, and is therefore still claimed, because
+	 * its destination was full.
+	 * 
+	 * @param queue the reference of the queue to process
+	 */
+	public void outputResumed(final NetworkTaskBuffer queue) {
+		queue.setScheduledNanos(System.nanoTime());
+		outputsPending.offer(queue,deadlineOf(queue));
+	}
+	
+	/**
+	 * 
+	 * @param queue
+	 * @return the deadline of the network task at the head of the queue, or
+	 * zero if it has none
+	 */
+	private long deadlineOf(final NetworkTaskBuffer queue) {
+		final NetworkTask head=queue.peek();
+		return head==null ? 0 : head.getDeadline();
+	}
+	
+	/**
+	 * 
+	 * @return the tuner of the network executor thread pool, or null if the
+	 * threads have not been allocated
+	 */
+	public PoolTuner getNetworkExecutorTuner() {
+		return networkExecutorTuner;
+	}
+	
+	/**
+	 * The utilization of the network executor threads since the last time this
+	 * method was called.
+	 * @return an array of utilizations in the range [0,1], one per thread, or null
+	 * if the threads have not been allocated
+	 */
+	public double[] getNetworkExecutorUtilization() {
+		if(outputsPending==null) return null;
+		return outputsPending.sampleUtilization();
+	}
+	
+	/**
+	 * 
+	 * @return the executor threads of the topology, which share a CPU quota and weight
+	 */
+	public ExecutorGroup getExecutorGroup() {
+		return executorGroup;
 	}
 	
 	/**
@@ -1057,6 +1221,38 @@ public class LocalCluster {
 	public DragonTopology getTopology() {
 		return dragonTopology;
 	}
+	
+	/**
+	 * 
+	 * @return the routing table compiled from the topology.
+	 */
+	public RoutingTable getRoutingTable() {
+		return routingTable;
+	}
+	
+	/**
+	 * 
+	 * @return the backpressure on the topology.
+	 */
+	public Backpressure getBackpressure() {
+		return backpressure;
+	}
+	
+	/**
+	 * 
+	 * @return the input queue depths of the tasks of the topology
+	 */
+	public TaskLoad getTaskLoad() {
+		return taskLoad;
+	}
+	
+	/**
+	 * 
+	 * @return the hash rings of the consistent hash groupings of the topology
+	 */
+	public HashRings getHashRings() {
+		return hashRings;
+	}
 
 	/**
 	 * Terminate the topology on this local cluster.
@@ -1141,6 +1337,7 @@ public class LocalCluster {
 		log.info("topology fault has occurred");
 		closeAll();
 		interruptAll();
+		executorGroup.close();
 		state=State.FAULT;
 		
 	}
@@ -1159,8 +1356,12 @@ public class LocalCluster {
 				networkExecutorThreads.get(i).interrupt();
 			}
 		}
-		tickThread.interrupt();
-		tickCounterThread.interrupt();
+		for(TimingWheel.Timeout timeout : tickTimers) {
+			timeout.cancel();
+		}
+		if(networkExecutorTuner!=null) networkExecutorTuner.cancel();
+		if(taskLoad!=null) taskLoad.cancel();
+		if(backpressure!=null) backpressure.cancel();
 	}
 	
 	/*
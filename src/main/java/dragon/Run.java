@@ -901,6 +901,12 @@ public class Run {
     			DragonSubmitter.getMetrics(conf,cmd.getOptionValue("topology"));
     			break;
             }
+            case "owner":{
+            	DragonSubmitter.node = conf.getLocalHost();
+    			checkOptionsTopologyCommand(cmd);
+    			DragonSubmitter.getOwner(conf,cmd.getOptionValue("topology"),argList);
+    			break;
+            }
             case "terminate":{
             	DragonSubmitter.node = conf.getLocalHost();
     			checkOptionsTopologyCommand(cmd);
@@ -53,9 +53,9 @@ public class ShuffleBolt extends BaseRichBolt {
 			System.exit(-1);
 		}
 		if(((Integer)tuple.getValueByField("number"))%2==0){
-			collector.emit("even",new Values(tuple.getFields().getValues()));
+			collector.emit("even",new Values(tuple.getValues()));
 		} else {
-			collector.emit("odd",new Values(tuple.getFields().getValues()));
+			collector.emit("odd",new Values(tuple.getValues()));
 		}
 	}
 	
@@ -61,7 +61,7 @@ public class ShuffleTextBolt extends BaseRichBolt {
 			System.out.println("getfields is null");
 			System.exit(-1);
 		}
-		if(tuple.getFields().getValues()==null) {
+		if(tuple.getValues()==null) {
 			System.out.println("getvalues is null");
 			System.exit(-1);
 		}
@@ -69,7 +69,7 @@ public class ShuffleTextBolt extends BaseRichBolt {
 			System.out.println("incorrect field");
 			System.exit(-1);
 		}
-		collector.emit("uuid",new Values(tuple.getFields().getValues()));
+		collector.emit("uuid",new Values(tuple.getValues()));
 		
 	}
 	
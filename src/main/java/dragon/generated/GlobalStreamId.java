@@ -4,4 +4,46 @@ import java.io.Serializable;
 
 public class GlobalStreamId implements Serializable {
 	private static final long serialVersionUID = -5074812156243296587L;
+	
+	/**
+	 * 
+	 */
+	private String componentId;
+	
+	/**
+	 * 
+	 */
+	private String streamId;
+	
+	/**
+	 * 
+	 */
+	public GlobalStreamId() {
+		
+	}
+	
+	/**
+	 * @param componentId the component that emits on the stream
+	 * @param streamId
+	 */
+	public GlobalStreamId(String componentId,String streamId) {
+		this.componentId=componentId;
+		this.streamId=streamId;
+	}
+	
+	/**
+	 * 
+	 * @return the component that emits on the stream
+	 */
+	public String get_componentId() {
+		return componentId;
+	}
+	
+	/**
+	 * 
+	 * @return
+	 */
+	public String get_streamId() {
+		return streamId;
+	}
 }
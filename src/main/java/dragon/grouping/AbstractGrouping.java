@@ -1,6 +1,7 @@
 package dragon.grouping;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.List;
 
 import dragon.generated.GlobalStreamId;
@@ -24,6 +25,16 @@ public  abstract class AbstractGrouping implements Serializable {
 	 */
 	public final void setSupportedFields(Fields fields) {
 		this.fields=fields;
+		fieldsSupported();
+	}
+	
+	/**
+	 * Called when the supported fields have been set, so that the grouping
+	 * can resolve anything it needs from them once, rather than per tuple.
+	 * By default does nothing.
+	 */
+	protected void fieldsSupported() {
+		
 	}
 	
 	/**
@@ -40,4 +51,18 @@ public  abstract class AbstractGrouping implements Serializable {
 	 * @param targetTasks
 	 */
 	public abstract void prepare(WorkerTopologyContext arg0, GlobalStreamId arg1, List<Integer> targetTasks);
+	
+	/**
+	 * Make an immutable single task list for each of the target tasks.
+	 * @param targetTasks
+	 * @return an array of single task lists, in the order of the target tasks
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected static List<Integer>[] singletons(List<Integer> targetTasks) {
+		List<Integer>[] singletons = new List[targetTasks.size()];
+		for(int i=0;i<singletons.length;i++) {
+			singletons[i]=Collections.singletonList(targetTasks.get(i));
+		}
+		return singletons;
+	}
 }
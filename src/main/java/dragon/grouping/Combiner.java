@@ -0,0 +1,105 @@
+package dragon.grouping;
+
+import java.io.Serializable;
+import java.util.List;
+
+import dragon.tuple.Fields;
+
+/**
+ * Combines the values of a field of the tuples that have the same key, on the
+ * emitting side of a fields grouped subscription. Tuples are held by the
+ * emitter for up to the tuple bundle linger time, during which the tuples of a
+ * key are combined into the first of them, and only the combined tuples are
+ * sent. The combination must therefore be associative and commutative, such
+ * as a sum or a count, and the subscriber receives partial aggregates.
+ * @author aaron
+ *
+ */
+public abstract class Combiner implements Serializable {
+	private static final long serialVersionUID = 2847591209761538122L;
+	
+	/**
+	 * 
+	 */
+	private final String[] keyFields;
+	
+	/**
+	 * 
+	 */
+	private final String valueField;
+	
+	/**
+	 * the index of each field of the key in the tuple's values, resolved when compiled
+	 */
+	private int[] keyIndices;
+	
+	/**
+	 * the index of the value field in the tuple's values, resolved when compiled
+	 */
+	private int valueIndex;
+	
+	/**
+	 * @param keyFields the fields of the key, which the subscription is grouped by
+	 * @param valueField the field whose values are combined
+	 */
+	public Combiner(Fields keyFields,String valueField) {
+		this.keyFields=keyFields.getFieldNames();
+		this.valueField=valueField;
+	}
+	
+	/**
+	 * Combine the values of two tuples that have the same key.
+	 * @param a
+	 * @param b
+	 * @return the combined value
+	 */
+	public abstract Object combine(Object a,Object b);
+	
+	/**
+	 * Compile the combiner against the fields of the stream.
+	 * @param fields the declared fields of the stream
+	 */
+	public void compile(Fields fields) {
+		keyIndices=FieldGrouping.indicesOf(fields,keyFields);
+		valueIndex=FieldGrouping.indicesOf(fields,new String[] {valueField})[0];
+		for(int index : keyIndices) {
+			if(index==valueIndex) {
+				throw new IllegalArgumentException("the combined field ["+valueField+"] can not be a field of the key");
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the fields of the key
+	 */
+	public Fields getKeyFields() {
+		return new Fields(keyFields);
+	}
+	
+	/**
+	 * 
+	 * @return the index of each field of the key in the tuple's values
+	 */
+	public int[] getKeyIndices() {
+		return keyIndices;
+	}
+	
+	/**
+	 * 
+	 * @return the index of the value field in the tuple's values
+	 */
+	public int getValueIndex() {
+		return valueIndex;
+	}
+	
+	/**
+	 * 
+	 * @param values the values of a tuple
+	 * @return the hash of the tuple's key
+	 */
+	public int keyHash(List<Object> values) {
+		return FieldGrouping.hash(values,keyIndices);
+	}
+
+}
@@ -0,0 +1,297 @@
+package dragon.grouping;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import dragon.generated.GlobalStreamId;
+import dragon.task.WorkerTopologyContext;
+import dragon.tuple.Fields;
+
+/**
+ * Groups tuples by the values of a subset of their fields over a consistent
+ * hash ring of the target tasks. The tasks that the keys are spread over can be
+ * changed while the topology runs, for instance to drain a task, and only the
+ * keys owned by the tasks that are added or removed move. A change of the
+ * tasks is made through {@link dragon.topology.HashRings}, which gives each
+ * ring a version and sends it to every daemon of the topology, where rings are
+ * only ever replaced by a later version. The owner of a key can be found with
+ * {@link #getOwner(List)}, through the service API, or by building a
+ * {@link HashRing} from the same tasks and number of virtual nodes.
+ * @author aaron
+ *
+ */
+public class ConsistentHashGrouping extends AbstractGrouping {
+	private static final long serialVersionUID = -1403812357410625393L;
+	
+	/**
+	 * the default number of points of each task on the ring
+	 */
+	public static final int DEFAULT_VIRTUAL_NODES=128;
+	
+	/**
+	 * 
+	 */
+	private final String[] fieldsSubset;
+	
+	/**
+	 * the index of each field of the subset in the tuple's values, resolved
+	 * when the supported fields are set
+	 */
+	private int[] fieldIndices;
+	
+	/**
+	 * the index of each value of a key, which is the key's own order
+	 */
+	private int[] keyIndices;
+	
+	/**
+	 * the types of the values of the grouping's fields, taken from the first
+	 * tuple that is routed, or null until then
+	 */
+	private volatile Class<?>[] keyTypes;
+	
+	/**
+	 * 
+	 */
+	private final int virtualNodes;
+	
+	/**
+	 * a single task list for each target task, indexed by task id
+	 */
+	private List<Integer>[] singleTasks;
+	
+	/**
+	 * 
+	 */
+	private List<Integer> targetTasks;
+	
+	/**
+	 * the ring of the tasks that keys are currently spread over
+	 */
+	private volatile HashRing ring;
+	
+	/**
+	 * the version of the ring, which is zero for the ring over all of the
+	 * target tasks
+	 */
+	private long version=-1;
+	
+	/**
+	 * the daemon that made the ring, which orders rings of the same version
+	 */
+	private String origin="";
+	
+	/**
+	 * @param fields
+	 */
+	public ConsistentHashGrouping(Fields fields) {
+		this(fields,DEFAULT_VIRTUAL_NODES);
+	}
+	
+	/**
+	 * @param fields
+	 * @param virtualNodes the number of points of each task on the ring, where
+	 * more points spread the keys more evenly
+	 */
+	public ConsistentHashGrouping(Fields fields,int virtualNodes) {
+		this.fieldsSubset=fields.getFieldNames();
+		this.virtualNodes=Math.max(virtualNodes,1);
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.grouping.AbstractGrouping#fieldsSupported()
+	 */
+	@Override
+	protected void fieldsSupported() {
+		fieldIndices=FieldGrouping.indicesOf(fields,fieldsSubset);
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.grouping.AbstractGrouping#chooseTasks(int, java.util.List)
+	 */
+	@Override
+	public List<Integer> chooseTasks(int taskId, List<Object> values) {
+		if(keyTypes==null) keyTypes=typesOf(values);
+		return singleTasks[ring.owner(FieldGrouping.hash(values,fieldIndices))];
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.grouping.AbstractGrouping#prepare(dragon.task.WorkerTopologyContext, dragon.generated.GlobalStreamId, java.util.List)
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
+		this.targetTasks=targetTasks;
+		int max=-1;
+		for(Integer taskId : targetTasks) max=Math.max(max, taskId);
+		singleTasks=new List[max+1];
+		final List<Integer>[] singletons=singletons(targetTasks);
+		for(int i=0;i<singletons.length;i++) {
+			singleTasks[targetTasks.get(i)]=singletons[i];
+		}
+		keyIndices=new int[fieldsSubset.length];
+		for(int i=0;i<keyIndices.length;i++) keyIndices[i]=i;
+		if(ring==null) setTasks(checkTasks(targetTasks),0,"");
+	}
+	
+	/**
+	 * 
+	 * @param taskIds the tasks to spread the keys over
+	 * @return the tasks, checked to be target tasks of the grouping
+	 */
+	public int[] checkTasks(Collection<Integer> taskIds) {
+		if(taskIds.isEmpty()) {
+			throw new IllegalArgumentException("the keys must be spread over at least one task");
+		}
+		final int[] tasks=new int[taskIds.size()];
+		int i=0;
+		for(Integer taskId : taskIds) {
+			if(taskId<0 || taskId>=singleTasks.length || singleTasks[taskId]==null) {
+				throw new IllegalArgumentException("task ["+taskId+"] is not one of the target tasks "+targetTasks);
+			}
+			tasks[i++]=taskId;
+		}
+		return tasks;
+	}
+	
+	/**
+	 * Spread the keys over the given tasks, moving only the keys of the tasks
+	 * that are added or removed, if the version is later than that of the
+	 * current ring. Tuples emitted from then on use the new ring.
+	 * @param tasks the tasks to spread the keys over, as checked by {@link #checkTasks(Collection)}
+	 * @param version
+	 * @param origin the daemon that made the ring, which orders rings of the
+	 * same version
+	 * @return true if the ring was replaced
+	 */
+	public synchronized boolean setTasks(int[] tasks,long version,String origin) {
+		if(version<this.version || (version==this.version && origin.compareTo(this.origin)<=0)) {
+			return false;
+		}
+		ring=new HashRing(tasks,virtualNodes);
+		this.version=version;
+		this.origin=origin;
+		return true;
+	}
+	
+	/**
+	 * 
+	 * @return the version of the current ring
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * 
+	 * @return the tasks that the keys are currently spread over
+	 */
+	public int[] getTasks() {
+		return ring.getTasks();
+	}
+	
+	/**
+	 * 
+	 * @return the ring of the tasks that the keys are currently spread over
+	 */
+	public HashRing getRing() {
+		return ring;
+	}
+	
+	/**
+	 * 
+	 * @param values the values of a tuple
+	 * @return the types of the values of the grouping's fields
+	 */
+	private Class<?>[] typesOf(List<Object> values) {
+		final Class<?>[] types=new Class<?>[fieldIndices.length];
+		for(int i=0;i<types.length;i++) {
+			final Object value=values.get(fieldIndices[i]);
+			types[i]=value==null ? null : value.getClass();
+		}
+		return types;
+	}
+	
+	/**
+	 * Find the owner of a key. Values given as strings, e.g. from the command
+	 * line, are converted to the types that the grouping's fields have in the
+	 * tuples that it routes, since the hash of a value depends on its type.
+	 * @param key the values of the grouping's fields, in order
+	 * @return the task that currently owns the key
+	 * @throws IllegalArgumentException if the key does not match the fields,
+	 * or a value is not of, and can not be converted to, the type of its field,
+	 * or a value is given as a string while the type of its field is not known
+	 * because no tuple has been routed
+	 */
+	public int getOwner(List<Object> key) {
+		if(key.size()!=keyIndices.length) {
+			throw new IllegalArgumentException("the key "+key+" does not match the fields "+
+					Arrays.toString(fieldsSubset));
+		}
+		final Class<?>[] types=keyTypes;
+		final Object[] typed=new Object[key.size()];
+		for(int i=0;i<typed.length;i++) {
+			final Object value=key.get(i);
+			final Class<?> type=types==null ? null : types[i];
+			if(type==null) {
+				if(value instanceof String) {
+					throw new IllegalArgumentException("the type of the field ["+fieldsSubset[i]+
+							"] is not known until a tuple has been routed, so the owner of the key "+
+							key+" can not be found");
+				}
+				typed[i]=value;
+			} else if(type.isInstance(value)) {
+				typed[i]=value;
+			} else if(value instanceof String) {
+				typed[i]=parse(type,(String)value,fieldsSubset[i]);
+			} else {
+				throw new IllegalArgumentException("the value ["+value+"] of type ["+value.getClass().getName()+
+						"] can not be given for the field ["+fieldsSubset[i]+"], which holds values of type ["+
+						type.getName()+"]");
+			}
+		}
+		return ring.owner(FieldGrouping.hash(Arrays.asList(typed),keyIndices));
+	}
+	
+	/**
+	 * 
+	 * @param type the type of the field's values
+	 * @param value the value as a string
+	 * @param field the name of the field
+	 * @return the value converted to the type
+	 * @throws IllegalArgumentException if the value can not be converted to the type
+	 */
+	private static Object parse(Class<?> type,String value,String field) {
+		try {
+			if(type==Integer.class) return Integer.valueOf(value);
+			if(type==Long.class) return Long.valueOf(value);
+			if(type==Short.class) return Short.valueOf(value);
+			if(type==Byte.class) return Byte.valueOf(value);
+			if(type==Double.class) return Double.valueOf(value);
+			if(type==Float.class) return Float.valueOf(value);
+			if(type==Boolean.class && (value.equals("true") || value.equals("false"))) {
+				return Boolean.valueOf(value);
+			}
+			if(type==Character.class && value.length()==1) return value.charAt(0);
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("the value ["+value+"] can not be given for the field ["+
+				field+"], which holds values of type ["+type.getName()+"]");
+	}
+	
+	/**
+	 * 
+	 * @param key the values of the grouping's fields, in order
+	 * @param ring
+	 * @return the task of the ring that owns the key
+	 * @see #getOwner(List)
+	 */
+	public static int getOwner(List<Object> key,HashRing ring) {
+		final int[] indices=new int[key.size()];
+		for(int i=0;i<indices.length;i++) indices[i]=i;
+		return ring.owner(FieldGrouping.hash(key,indices));
+	}
+
+}
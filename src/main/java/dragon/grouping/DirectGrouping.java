@@ -4,30 +4,65 @@ import java.util.List;
 
 import dragon.generated.GlobalStreamId;
 import dragon.task.WorkerTopologyContext;
+import dragon.topology.base.DragonEmitRuntimeException;
 
 /**
+ * Sends each tuple to the task that the emitter chose for it with
+ * <code>emitDirect</code>. The stream must be declared as a direct stream, and
+ * tuples on it can not be emitted otherwise. The single task list of each
+ * target task is made when prepared, so that choosing a task allocates nothing.
  * @author aaron
  *
  */
 public class DirectGrouping extends AbstractGrouping {
 	private static final long serialVersionUID = -4021927336869082984L;
-
+	
+	/**
+	 * a single task list for each target task, indexed by task id
+	 */
+	private List<Integer>[] singleTasks;
+	
+	/**
+	 * the component that the stream is sent to
+	 */
+	private String targetComponentId;
+	
 	/* (non-Javadoc)
 	 * @see dragon.grouping.AbstractGrouping#chooseTasks(int, java.util.List)
 	 */
 	@Override
 	public List<Integer> chooseTasks(int arg0, List<Object> values) {
-		// TODO Auto-generated method stub
-		return null;
+		throw new DragonEmitRuntimeException("tuples for ["+targetComponentId+
+				"] are direct grouped and must be emitted with emitDirect");
 	}
-
+	
+	/**
+	 * 
+	 * @param taskId the target task chosen by the emitter
+	 * @return the single task list of the target task
+	 */
+	public List<Integer> chooseTask(int taskId) {
+		if(taskId<0 || taskId>=singleTasks.length || singleTasks[taskId]==null) {
+			throw new DragonEmitRuntimeException("task ["+taskId+"] is not a task of ["+
+					targetComponentId+"], which has ["+singleTasks.length+"] tasks");
+		}
+		return singleTasks[taskId];
+	}
+	
 	/* (non-Javadoc)
 	 * @see dragon.grouping.AbstractGrouping#prepare(dragon.task.WorkerTopologyContext, dragon.generated.GlobalStreamId, java.util.List)
 	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
-	public void prepare(WorkerTopologyContext arg0, GlobalStreamId arg1, List<Integer> targetTasks) {
-		// TODO Auto-generated method stub
-		
+	public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
+		targetComponentId=context==null ? null : context.getTargetComponentId();
+		int max=-1;
+		for(Integer taskId : targetTasks) max=Math.max(max, taskId);
+		singleTasks=new List[max+1];
+		final List<Integer>[] singletons=singletons(targetTasks);
+		for(int i=0;i<singletons.length;i++) {
+			singleTasks[targetTasks.get(i)]=singletons[i];
+		}
 	}
 
 }
@@ -1,55 +1,332 @@
 package dragon.grouping;
 
 import java.util.List;
+import java.util.Objects;
 
 import dragon.generated.GlobalStreamId;
 import dragon.task.WorkerTopologyContext;
 import dragon.tuple.Fields;
 
 /**
+ * Groups tuples by the values of a subset of their fields. The key of a tuple
+ * is hashed into one of a fixed number of key groups, and the key groups are
+ * mapped onto the target tasks in contiguous ranges. A key therefore always
+ * belongs to the same key group, regardless of the number of target tasks, and
+ * a change in the number of tasks moves only whole key groups between tasks.
  * @author aaron
  *
  */
 public class FieldGrouping  extends AbstractGrouping  {
 	private static final long serialVersionUID = -7755313939232587197L;
 	
+	/**
+	 * the default number of key groups, which is the largest number of
+	 * target tasks that keys can be spread over evenly
+	 */
+	public static final int DEFAULT_KEY_GROUPS=128;
+	
+	/**
+	 * the hot key threshold that stands for the topology's
+	 * {@link dragon.Config#TOPOLOGY_HOTKEY_THRESHOLD}
+	 */
+	public static final double TOPOLOGY_HOTKEY_THRESHOLD=-1.0;
+	
+	/**
+	 * 
+	 */
+	private static final int C1=0xcc9e2d51;
+	
+	/**
+	 * 
+	 */
+	private static final int C2=0x1b873593;
+	
 	/**
 	 * 
 	 */
 	private List<Integer> targetTasks;
 	
+	/**
+	 * the single task list of each key group, so that none are allocated
+	 * when choosing
+	 */
+	private List<Integer>[] keyGroupTasks;
+	
+	/**
+	 * the single task list of each target task
+	 */
+	private List<Integer>[] singleTasks;
+	
+	/**
+	 * the index of the target task of each key group
+	 */
+	private int[] keyGroupIndex;
+	
 	/**
 	 * 
 	 */
 	private String[] fieldsSubset;
-
+	
+	/**
+	 * the index of each field of the subset in the tuple's values, resolved
+	 * when the supported fields are set
+	 */
+	private int[] fieldIndices;
+	
+	/**
+	 * the number of key groups requested
+	 */
+	private final int maxKeyGroups;
+	
+	/**
+	 * the number of key groups, at least the number of target tasks
+	 */
+	private int keyGroups;
+	
+	/**
+	 * the combiner of the tuples of this grouping, or null if they are not combined
+	 */
+	private final Combiner combiner;
+	
+	/**
+	 * the share of the stream above which the emitter splits a key over more
+	 * target tasks, where zero means that keys are never split
+	 */
+	private final double hotKeyThreshold;
+	
 	/**
 	 * @param fields
 	 */
 	public FieldGrouping(Fields fields) {
+		this(fields,DEFAULT_KEY_GROUPS);
+	}
+	
+	/**
+	 * @param fields
+	 * @param keyGroups the number of key groups, which should be at least the
+	 * largest number of target tasks that the grouping will be used with, and
+	 * must be the same wherever the grouping is used for the keys to agree
+	 */
+	public FieldGrouping(Fields fields,int keyGroups) {
+		this(fields,keyGroups,0);
+	}
+	
+	/**
+	 * Group by the given fields, where the emitter splits a key whose share of
+	 * the stream exceeds the threshold over more target tasks, which breaks the
+	 * affinity of the key to a single task.
+	 * @param fields
+	 * @param keyGroups the number of key groups
+	 * @param hotKeyThreshold the share of the stream above which a key is split,
+	 * or {@link #TOPOLOGY_HOTKEY_THRESHOLD} for the topology's threshold
+	 * @see #FieldGrouping(Fields, int)
+	 */
+	public FieldGrouping(Fields fields,int keyGroups,double hotKeyThreshold) {
 		this.fieldsSubset=fields.getFieldNames();
+		this.maxKeyGroups=Math.max(keyGroups,1);
+		this.combiner=null;
+		this.hotKeyThreshold=hotKeyThreshold;
 	}
-
+	
+	/**
+	 * Group by the key fields of a combiner, where the emitter combines the
+	 * tuples of each key before sending them.
+	 * @param combiner
+	 */
+	public FieldGrouping(Combiner combiner) {
+		this.fieldsSubset=combiner.getKeyFields().getFieldNames();
+		this.maxKeyGroups=DEFAULT_KEY_GROUPS;
+		this.combiner=combiner;
+		this.hotKeyThreshold=0;
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.grouping.AbstractGrouping#fieldsSupported()
+	 */
+	@Override
+	protected void fieldsSupported() {
+		fieldIndices=indicesOf(fields,fieldsSubset);
+	}
+	
+	/**
+	 * Resolve the indices of a subset of fields in the declared fields.
+	 * @param fields the declared fields
+	 * @param fieldsSubset the names of the subset
+	 * @return the index of each field of the subset
+	 */
+	static int[] indicesOf(Fields fields,String[] fieldsSubset) {
+		int[] indices=new int[fieldsSubset.length];
+		for(int i=0;i<fieldsSubset.length;i++) {
+			Integer index=fields.getFieldMap().get(fieldsSubset[i]);
+			if(index==null) {
+				throw new IllegalArgumentException("field ["+fieldsSubset[i]+
+						"] is not one of the declared fields "+fields.getFieldNamesAsString());
+			}
+			indices[i]=index;
+		}
+		return indices;
+	}
+	
 	/* (non-Javadoc)
 	 * @see dragon.grouping.AbstractGrouping#chooseTasks(int, java.util.List)
 	 */
 	@Override
 	public List<Integer> chooseTasks(int taskId, List<Object> values) {
-		int hash=0;
-		for(String fieldName : fieldsSubset) {
-			hash=hash ^ values.get(fields.getFieldMap().get(fieldName)).hashCode();
+		return keyGroupTasks[keyGroup(values)];
+	}
+	
+	/**
+	 * 
+	 * @param values the values of a tuple
+	 * @return the key group of the tuple's key
+	 */
+	public int keyGroup(List<Object> values) {
+		return (hash(values,fieldIndices)&0x7fffffff)%keyGroups;
+	}
+	
+	/**
+	 * 
+	 * @param values the values of a tuple
+	 * @return the hash of the tuple's key
+	 */
+	public int keyHash(List<Object> values) {
+		return hash(values,fieldIndices);
+	}
+	
+	/**
+	 * 
+	 * @param values the values of a tuple
+	 * @return the values of the tuple's key
+	 */
+	public Object[] key(List<Object> values) {
+		final Object[] key=new Object[fieldIndices.length];
+		for(int i=0;i<fieldIndices.length;i++) {
+			key[i]=values.get(fieldIndices[i]);
 		}
-		if(hash<0)hash=-hash;
-		hash=hash%targetTasks.size();
-		return(targetTasks.subList(hash,hash+1));
+		return key;
 	}
-
+	
+	/**
+	 * 
+	 * @param values the values of a tuple
+	 * @param key the values of a key
+	 * @return true if the tuple has the key
+	 */
+	public boolean isKey(List<Object> values,Object[] key) {
+		for(int i=0;i<fieldIndices.length;i++) {
+			if(!Objects.equals(values.get(fieldIndices[i]),key[i])) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * 
+	 * @param hash the hash of a key
+	 * @return the target task of the key
+	 */
+	public List<Integer> chooseTasks(int hash) {
+		return keyGroupTasks[(hash&0x7fffffff)%keyGroups];
+	}
+	
+	/**
+	 * Choose the target task of a key that is split over a number of tasks,
+	 * which are its own task and the tasks that follow it.
+	 * @param hash the hash of the key
+	 * @param fanout the number of tasks that the key is split over
+	 * @param turn a counter that is advanced for each tuple of the key
+	 * @return the target task for this turn
+	 */
+	public List<Integer> chooseTasks(int hash,int fanout,long turn) {
+		final int index=keyGroupIndex[(hash&0x7fffffff)%keyGroups];
+		return singleTasks[(int)((index+turn%fanout)%singleTasks.length)];
+	}
+	
+	/**
+	 * Hash the values at the given indices, in order, with the murmur3 mixing
+	 * functions, so that the order of the values matters and the bits of their
+	 * hash codes are spread over the whole hash.
+	 * @param values
+	 * @param indices
+	 * @return the hash
+	 */
+	public static int hash(List<Object> values,int[] indices) {
+		int h=0;
+		for(int index : indices) {
+			final Object value=values.get(index);
+			int k=value==null ? 0 : value.hashCode();
+			k*=C1;
+			k=Integer.rotateLeft(k,15);
+			k*=C2;
+			h^=k;
+			h=Integer.rotateLeft(h,13);
+			h=h*5+0xe6546b64;
+		}
+		h^=indices.length;
+		h^=h>>>16;
+		h*=0x85ebca6b;
+		h^=h>>>13;
+		h*=0xc2b2ae35;
+		h^=h>>>16;
+		return h;
+	}
+	
 	/* (non-Javadoc)
 	 * @see dragon.grouping.AbstractGrouping#prepare(dragon.task.WorkerTopologyContext, dragon.generated.GlobalStreamId, java.util.List)
 	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
 	public void prepare(WorkerTopologyContext arg0, GlobalStreamId arg1, List<Integer> targetTasks) {
 		this.targetTasks=targetTasks;
+		keyGroups=Math.max(maxKeyGroups,targetTasks.size());
+		singleTasks=singletons(targetTasks);
+		keyGroupTasks=new List[keyGroups];
+		keyGroupIndex=new int[keyGroups];
+		for(int i=0;i<keyGroups;i++) {
+			keyGroupIndex[i]=(int)((long)i*targetTasks.size()/keyGroups);
+			keyGroupTasks[i]=singleTasks[keyGroupIndex[i]];
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the number of key groups
+	 */
+	public int getKeyGroups() {
+		return keyGroups;
+	}
+	
+	/**
+	 * 
+	 * @param keyGroup
+	 * @return the target task of the key group
+	 */
+	public int getKeyGroupTask(int keyGroup) {
+		return keyGroupTasks[keyGroup].get(0);
+	}
+	
+	/**
+	 * 
+	 * @return the combiner of the tuples of this grouping, or null if they are not combined
+	 */
+	public Combiner getCombiner() {
+		return combiner;
+	}
+	
+	/**
+	 * 
+	 * @return the share of the stream above which a key is split over more
+	 * target tasks, zero if keys are never split, or {@link #TOPOLOGY_HOTKEY_THRESHOLD}
+	 */
+	public double getHotKeyThreshold() {
+		return hotKeyThreshold;
+	}
+	
+	/**
+	 * 
+	 * @return the target tasks
+	 */
+	public List<Integer> getTargetTasks() {
+		return targetTasks;
 	}
 
 }
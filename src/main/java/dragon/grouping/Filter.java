@@ -0,0 +1,162 @@
+package dragon.grouping;
+
+import java.io.Serializable;
+import java.util.List;
+
+import dragon.tuple.Fields;
+
+/**
+ * A predicate on the tuples of a stream, that a bolt subscribes with so that
+ * the emitter only sends it the tuples that it accepts. The filter is compiled
+ * against the fields of the stream when they are declared, so that it reads the
+ * values of a tuple by index rather than by name.
+ * @author aaron
+ *
+ */
+public abstract class Filter implements Serializable {
+	private static final long serialVersionUID = 4388702436806040515L;
+	
+	/**
+	 * A test on the value of a single field.
+	 */
+	public interface Test extends Serializable {
+		
+		/**
+		 * 
+		 * @param value
+		 * @return true if the value passes the test
+		 */
+		public boolean test(Object value);
+	}
+	
+	/**
+	 * Compile the filter against the fields of the stream. By default does nothing.
+	 * @param fields the declared fields of the stream
+	 */
+	public void compile(Fields fields) {
+	
+	}
+	
+	/**
+	 * 
+	 * @param values the values of a tuple
+	 * @return true if the tuple should be sent to the subscriber
+	 */
+	public abstract boolean accept(List<Object> values);
+	
+	/**
+	 * @param field the name of a field
+	 * @param test
+	 * @return a filter that accepts tuples whose value of the field passes the test
+	 */
+	public static Filter where(String field,Test test) {
+		return new FieldFilter(field,test);
+	}
+	
+	/**
+	 * @param other
+	 * @return a filter that accepts tuples that both filters accept
+	 */
+	public Filter and(Filter other) {
+		final Filter self=this;
+		return new Filter() {
+			private static final long serialVersionUID = -6030416713954640862L;
+			@Override
+			public void compile(Fields fields) {
+				self.compile(fields);
+				other.compile(fields);
+			}
+			@Override
+			public boolean accept(List<Object> values) {
+				return self.accept(values) && other.accept(values);
+			}
+		};
+	}
+	
+	/**
+	 * @param other
+	 * @return a filter that accepts tuples that either filter accepts
+	 */
+	public Filter or(Filter other) {
+		final Filter self=this;
+		return new Filter() {
+			private static final long serialVersionUID = 2250470744929866417L;
+			@Override
+			public void compile(Fields fields) {
+				self.compile(fields);
+				other.compile(fields);
+			}
+			@Override
+			public boolean accept(List<Object> values) {
+				return self.accept(values) || other.accept(values);
+			}
+		};
+	}
+	
+	/**
+	 * 
+	 * @return a filter that accepts the tuples that this filter rejects
+	 */
+	public Filter negate() {
+		final Filter self=this;
+		return new Filter() {
+			private static final long serialVersionUID = -3733880947390101190L;
+			@Override
+			public void compile(Fields fields) {
+				self.compile(fields);
+			}
+			@Override
+			public boolean accept(List<Object> values) {
+				return !self.accept(values);
+			}
+		};
+	}
+	
+	/**
+	 * A filter on the value of a single field, which is resolved to its index
+	 * when compiled.
+	 */
+	private static class FieldFilter extends Filter {
+		private static final long serialVersionUID = -1520932361709811442L;
+		
+		/**
+		 * 
+		 */
+		private final String field;
+		
+		/**
+		 * 
+		 */
+		private final Test test;
+		
+		/**
+		 * the index of the field in the tuple's values
+		 */
+		private int index=-1;
+		
+		/**
+		 * @param field
+		 * @param test
+		 */
+		FieldFilter(String field,Test test) {
+			this.field=field;
+			this.test=test;
+		}
+		
+		/* (non-Javadoc)
+		 * @see dragon.grouping.Filter#compile(dragon.tuple.Fields)
+		 */
+		@Override
+		public void compile(Fields fields) {
+			index=FieldGrouping.indicesOf(fields,new String[] {field})[0];
+		}
+		
+		/* (non-Javadoc)
+		 * @see dragon.grouping.Filter#accept(java.util.List)
+		 */
+		@Override
+		public boolean accept(List<Object> values) {
+			return test.test(values.get(index));
+		}
+	}
+}
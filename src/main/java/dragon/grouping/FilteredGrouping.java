@@ -0,0 +1,110 @@
+package dragon.grouping;
+
+import java.util.Collections;
+import java.util.List;
+
+import dragon.generated.GlobalStreamId;
+import dragon.task.WorkerTopologyContext;
+
+/**
+ * A grouping whose tuples are first passed through a filter. A tuple that the
+ * filter rejects has no target tasks, so the emitter drops it for this
+ * subscriber before it is bundled, rather than the subscriber discarding it
+ * after it has been queued and sent.
+ * @author aaron
+ *
+ */
+public class FilteredGrouping extends AbstractGrouping {
+	private static final long serialVersionUID = 6611236874271180143L;
+	
+	/**
+	 * the grouping of the tuples that the filter accepts
+	 */
+	private final AbstractGrouping grouping;
+	
+	/**
+	 * 
+	 */
+	private final Filter filter;
+	
+	/**
+	 * @param grouping the grouping of the tuples that the filter accepts
+	 * @param filter
+	 */
+	public FilteredGrouping(AbstractGrouping grouping,Filter filter) {
+		this.grouping=grouping;
+		this.filter=filter;
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.grouping.AbstractGrouping#fieldsSupported()
+	 */
+	@Override
+	protected void fieldsSupported() {
+		filter.compile(fields);
+		grouping.setSupportedFields(fields);
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.grouping.AbstractGrouping#chooseTasks(int, java.util.List)
+	 */
+	@Override
+	public List<Integer> chooseTasks(int taskId, List<Object> values) {
+		if(!filter.accept(values)) return Collections.emptyList();
+		return grouping.chooseTasks(taskId, values);
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.grouping.AbstractGrouping#prepare(dragon.task.WorkerTopologyContext, dragon.generated.GlobalStreamId, java.util.List)
+	 */
+	@Override
+	public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
+		grouping.prepare(context, stream, targetTasks);
+	}
+	
+	/**
+	 * 
+	 * @return the grouping of the tuples that the filter accepts
+	 */
+	public AbstractGrouping getGrouping() {
+		return grouping;
+	}
+	
+	/**
+	 * 
+	 * @return the filter
+	 */
+	public Filter getFilter() {
+		return filter;
+	}
+	
+	/**
+	 * 
+	 * @param grouping
+	 * @return the grouping that the given grouping passes the tuples that its
+	 * filters accept to, or the given grouping if it is not filtered
+	 */
+	public static AbstractGrouping unwrap(AbstractGrouping grouping) {
+		while(grouping instanceof FilteredGrouping) {
+			grouping=((FilteredGrouping)grouping).getGrouping();
+		}
+		return grouping;
+	}
+	
+	/**
+	 * 
+	 * @param grouping
+	 * @param values the values of a tuple
+	 * @return true if the filters of the given grouping, if it is filtered,
+	 * accept the tuple
+	 */
+	public static boolean accepts(AbstractGrouping grouping,List<Object> values) {
+		while(grouping instanceof FilteredGrouping) {
+			final FilteredGrouping filtered=(FilteredGrouping)grouping;
+			if(!filtered.getFilter().accept(values)) return false;
+			grouping=filtered.getGrouping();
+		}
+		return true;
+	}
+
+}
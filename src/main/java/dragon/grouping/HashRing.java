@@ -0,0 +1,111 @@
+package dragon.grouping;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A consistent hash ring over a set of tasks. Each task is placed on the ring
+ * at a number of points, its virtual nodes, and a hash belongs to the task of
+ * the first point at or after it. The points of a task depend only on its id,
+ * so adding or removing a task moves only the hashes of its own points, and
+ * anyone that builds a ring from the same tasks and number of virtual nodes
+ * finds the same owner for every hash.
+ * @author aaron
+ *
+ */
+public class HashRing implements Serializable {
+	private static final long serialVersionUID = 3085101773519386925L;
+	
+	/**
+	 * the tasks on the ring, in ascending order
+	 */
+	private final int[] tasks;
+	
+	/**
+	 * the number of points of each task
+	 */
+	private final int virtualNodes;
+	
+	/**
+	 * the points of the ring, in ascending order
+	 */
+	private final int[] points;
+	
+	/**
+	 * the task of each point
+	 */
+	private final int[] owners;
+	
+	/**
+	 * @param tasks the tasks on the ring, which must not be empty
+	 * @param virtualNodes the number of points of each task
+	 */
+	public HashRing(int[] tasks,int virtualNodes) {
+		if(tasks.length==0) {
+			throw new IllegalArgumentException("a hash ring must have at least one task");
+		}
+		this.tasks=tasks.clone();
+		Arrays.sort(this.tasks);
+		this.virtualNodes=Math.max(virtualNodes,1);
+		final int n=this.tasks.length*this.virtualNodes;
+		final long[] sorted=new long[n];
+		for(int t=0;t<this.tasks.length;t++) {
+			for(int v=0;v<this.virtualNodes;v++) {
+				// the point in the high bits and the task in the low bits,
+				// so that points that collide are ordered by task
+				sorted[t*this.virtualNodes+v]=((long)point(this.tasks[t],v)<<32)|(this.tasks[t]&0xffffffffL);
+			}
+		}
+		Arrays.sort(sorted);
+		points=new int[n];
+		owners=new int[n];
+		for(int i=0;i<n;i++) {
+			points[i]=(int)(sorted[i]>>32);
+			owners[i]=(int)sorted[i];
+		}
+	}
+	
+	/**
+	 * 
+	 * @param task
+	 * @param replica
+	 * @return the point of the given virtual node of the task
+	 */
+	private static int point(int task,int replica) {
+		int h=task*0x9e3779b9+replica;
+		h^=h>>>16;
+		h*=0x85ebca6b;
+		h^=h>>>13;
+		h*=0xc2b2ae35;
+		h^=h>>>16;
+		return h;
+	}
+	
+	/**
+	 * 
+	 * @param hash the hash of a key
+	 * @return the task that owns the hash
+	 */
+	public int owner(int hash) {
+		int i=Arrays.binarySearch(points,hash);
+		if(i<0) i=-i-1;
+		else while(i>0 && points[i-1]==hash) i--;
+		return owners[i==points.length ? 0 : i];
+	}
+	
+	/**
+	 * 
+	 * @return the tasks on the ring, in ascending order
+	 */
+	public int[] getTasks() {
+		return tasks.clone();
+	}
+	
+	/**
+	 * 
+	 * @return the number of points of each task
+	 */
+	public int getVirtualNodes() {
+		return virtualNodes;
+	}
+}
@@ -0,0 +1,70 @@
+package dragon.grouping;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import dragon.generated.GlobalStreamId;
+import dragon.task.WorkerTopologyContext;
+
+/**
+ * Shuffles tuples over the target tasks according to their load, by the power
+ * of two choices. Two target tasks are picked at random and the tuple goes to
+ * the one with the shorter input queue. The depth of a task on this node is
+ * read from its input queue, while the depth of a task on another node is the
+ * depth last reported by that node, so a slow task is avoided without any
+ * task being chosen by all emitters at once on stale depths.
+ * @author aaron
+ *
+ */
+public class LoadAwareShuffleGrouping extends AbstractGrouping {
+	private static final long serialVersionUID = 4046513092381659478L;
+	
+	/**
+	 * a single task list for each target task, so that none are allocated
+	 * when choosing
+	 */
+	private List<Integer>[] singleTasks;
+	
+	/**
+	 * 
+	 */
+	private int[] targetTasks;
+	
+	/**
+	 * 
+	 */
+	private transient WorkerTopologyContext context;
+	
+	/**
+	 * the index of the target component
+	 */
+	private int component;
+	
+	/* (non-Javadoc)
+	 * @see dragon.grouping.AbstractGrouping#chooseTasks(int, java.util.List)
+	 */
+	@Override
+	public List<Integer> chooseTasks(int taskId, List<Object> values) {
+		final int n=targetTasks.length;
+		if(n==1) return singleTasks[0];
+		final ThreadLocalRandom random=ThreadLocalRandom.current();
+		final int a=random.nextInt(n);
+		if(context==null) return singleTasks[a];
+		int b=random.nextInt(n-1);
+		if(b>=a) b++;
+		return context.getDepth(component,targetTasks[b])<context.getDepth(component,targetTasks[a]) ?
+				singleTasks[b] : singleTasks[a];
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.grouping.AbstractGrouping#prepare(dragon.task.WorkerTopologyContext, dragon.generated.GlobalStreamId, java.util.List)
+	 */
+	@Override
+	public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
+		this.context=context;
+		singleTasks=singletons(targetTasks);
+		this.targetTasks=targetTasks.stream().mapToInt(Integer::intValue).toArray();
+		if(context!=null) component=context.trackLoad();
+	}
+
+}
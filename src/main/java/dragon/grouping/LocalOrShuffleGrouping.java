@@ -0,0 +1,105 @@
+package dragon.grouping;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import dragon.generated.GlobalStreamId;
+import dragon.task.InputCollector;
+import dragon.task.WorkerTopologyContext;
+
+/**
+ * Shuffles tuples over the target tasks that are embedded on the same node as
+ * the emitter, so that they do not cross the network. Tuples are shuffled over
+ * the remote target tasks only when there are no local target tasks, or when
+ * the input lanes of all of the local target tasks are full.
+ * @author aaron
+ *
+ */
+public class LocalOrShuffleGrouping extends AbstractGrouping {
+	private static final long serialVersionUID = -2911417361237934187L;
+	
+	/**
+	 * a single task list for each target task, so that none are allocated
+	 * when choosing
+	 */
+	private List<Integer>[] singleTasks;
+	
+	/**
+	 * the indices of the target tasks that are on this node
+	 */
+	private int[] localTasks;
+	
+	/**
+	 * the indices of the target tasks that are on other nodes
+	 */
+	private int[] remoteTasks;
+	
+	/**
+	 * 
+	 */
+	private transient WorkerTopologyContext context;
+	
+	/**
+	 * the component that emits on the stream
+	 */
+	private String sourceComponentId;
+	
+	/**
+	 * 
+	 */
+	private int localIndex;
+	
+	/**
+	 * 
+	 */
+	private int remoteIndex;
+	
+	/* (non-Javadoc)
+	 * @see dragon.grouping.AbstractGrouping#chooseTasks(int, java.util.List)
+	 */
+	@Override
+	public List<Integer> chooseTasks(int taskId, List<Object> values) {
+		for(int i=0;i<localTasks.length;i++) {
+			localIndex=localIndex+1>=localTasks.length ? 0 : localIndex+1;
+			final int index=localTasks[localIndex];
+			if(remoteTasks.length==0 || !isFull(index,taskId)) return singleTasks[index];
+		}
+		remoteIndex=remoteIndex+1>=remoteTasks.length ? 0 : remoteIndex+1;
+		return singleTasks[remoteTasks[remoteIndex]];
+	}
+	
+	/**
+	 * 
+	 * @param index the index of a local target task
+	 * @param taskId the emitting task
+	 * @return true if the input lane of the target task for the emitting task is full
+	 */
+	private boolean isFull(int index,int taskId) {
+		final InputCollector input=context.getInput(singleTasks[index].get(0));
+		return input!=null && input.isFull(sourceComponentId,taskId);
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.grouping.AbstractGrouping#prepare(dragon.task.WorkerTopologyContext, dragon.generated.GlobalStreamId, java.util.List)
+	 */
+	@Override
+	public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
+		this.context=context;
+		sourceComponentId=stream==null ? null : stream.get_componentId();
+		singleTasks=singletons(targetTasks);
+		ArrayList<Integer> local=new ArrayList<Integer>();
+		ArrayList<Integer> remote=new ArrayList<Integer>();
+		for(int i=0;i<targetTasks.size();i++) {
+			if(context==null || context.isLocal(targetTasks.get(i))) {
+				local.add(i);
+			} else {
+				remote.add(i);
+			}
+		}
+		localTasks=local.stream().mapToInt(Integer::intValue).toArray();
+		remoteTasks=remote.stream().mapToInt(Integer::intValue).toArray();
+		localIndex=0;
+		remoteIndex=0;
+	}
+
+}
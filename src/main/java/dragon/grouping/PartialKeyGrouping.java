@@ -0,0 +1,100 @@
+package dragon.grouping;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import dragon.generated.GlobalStreamId;
+import dragon.task.WorkerTopologyContext;
+import dragon.tuple.Fields;
+
+/**
+ * Groups tuples by the values of a subset of their fields, where each key may
+ * go to either of two candidate tasks, chosen by two hashes of the key. Each
+ * tuple goes to the candidate that this node has sent fewer tuples to, so a hot
+ * key is split over two tasks rather than saturating one. A bolt that aggregates
+ * over the key therefore holds partial results, which should be combined by a
+ * bolt downstream of it that subscribes with a fields grouping on the key, such
+ * as a {@link dragon.topology.base.PartialMergeBolt}.
+ * @author aaron
+ *
+ */
+public class PartialKeyGrouping extends AbstractGrouping {
+	private static final long serialVersionUID = 5339710829107402287L;
+	
+	/**
+	 * 
+	 */
+	private List<Integer>[] singleTasks;
+	
+	/**
+	 * 
+	 */
+	private final String[] fieldsSubset;
+	
+	/**
+	 * the index of each field of the subset in the tuple's values, resolved
+	 * when the supported fields are set
+	 */
+	private int[] fieldIndices;
+	
+	/**
+	 * the number of tuples sent to each target task from this node
+	 */
+	private transient AtomicLongArray sent;
+	
+	/**
+	 * @param fields
+	 */
+	public PartialKeyGrouping(Fields fields) {
+		this.fieldsSubset=fields.getFieldNames();
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.grouping.AbstractGrouping#fieldsSupported()
+	 */
+	@Override
+	protected void fieldsSupported() {
+		fieldIndices=FieldGrouping.indicesOf(fields,fieldsSubset);
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.grouping.AbstractGrouping#chooseTasks(int, java.util.List)
+	 */
+	@Override
+	public List<Integer> chooseTasks(int taskId, List<Object> values) {
+		final int n=singleTasks.length;
+		if(n==1) return singleTasks[0];
+		final int hash=FieldGrouping.hash(values,fieldIndices);
+		final int first=(hash&0x7fffffff)%n;
+		int second=(rehash(hash)&0x7fffffff)%(n-1);
+		if(second>=first) second++;
+		final int chosen=sent.get(second)<sent.get(first) ? second : first;
+		sent.incrementAndGet(chosen);
+		return singleTasks[chosen];
+	}
+	
+	/**
+	 * A second hash of the key, independent of the first.
+	 * @param hash the first hash
+	 * @return
+	 */
+	private static int rehash(int hash) {
+		int h=hash^0x9e3779b9;
+		h^=h>>>16;
+		h*=0x85ebca6b;
+		h^=h>>>13;
+		h*=0xc2b2ae35;
+		h^=h>>>16;
+		return h;
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.grouping.AbstractGrouping#prepare(dragon.task.WorkerTopologyContext, dragon.generated.GlobalStreamId, java.util.List)
+	 */
+	@Override
+	public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
+		singleTasks=singletons(targetTasks);
+		sent=new AtomicLongArray(targetTasks.size());
+	}
+
+}
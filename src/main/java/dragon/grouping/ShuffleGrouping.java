@@ -18,6 +18,12 @@ public class ShuffleGrouping extends AbstractGrouping  {
 	 */
 	private List<Integer> targetTasks;
 	
+	/**
+	 * a single task list for each target task, so that none are allocated
+	 * when choosing
+	 */
+	private List<Integer>[] singleTasks;
+	
 	/**
 	 * 
 	 */
@@ -29,7 +35,7 @@ public class ShuffleGrouping extends AbstractGrouping  {
 	@Override
 	public List<Integer> chooseTasks(int arg0, List<Object> values) {
 		index=(index+1)%targetTasks.size();
-		return(targetTasks.subList(index,index+1));
+		return singleTasks[index];
 	}
 
 	/* (non-Javadoc)
@@ -39,6 +45,7 @@ public class ShuffleGrouping extends AbstractGrouping  {
 	public void prepare(WorkerTopologyContext arg0, GlobalStreamId arg1, List<Integer> targetTasks) {
 		index=0;
 		this.targetTasks=targetTasks;
+		singleTasks=singletons(targetTasks);
 	}
 
 }
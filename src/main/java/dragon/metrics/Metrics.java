@@ -16,7 +16,12 @@ import com.influxdb.client.write.Point;
 
 import dragon.Config;
 import dragon.LocalCluster;
+import dragon.network.Node;
 import dragon.network.NodeDescriptor;
+import dragon.network.Router;
+import dragon.utils.ExecutorGroup;
+import dragon.utils.HotKeys;
+import dragon.utils.PoolTuner;
 
 /**
  * Log metrics at a regular interval. Store metrics in memory and also
@@ -85,6 +90,26 @@ public class Metrics extends Thread {
 		}
 	}
 	
+	/**
+	 * Write the size of a thread pool and the number of times it has
+	 * been resized.
+	 * @param tuner the tuner of the pool, or null
+	 * @param topologyId the topology of the pool, or null if it belongs to the node
+	 */
+	private void writePool(PoolTuner tuner,String topologyId) {
+		if(tuner==null) return;
+		Point point = Point.measurement("poolSize").addTag("node", desc.toString())
+				.addTag("pool", tuner.getName())
+				.addField("value", tuner.getSize()).time(Instant.now().toEpochMilli(), WritePrecision.MS);
+		if(topologyId!=null) point.addTag("topology", topologyId);
+		writeApi.writePoint(conf.getInfluxDBBucket(), conf.getInfluxDBOrganization(), point);
+		point = Point.measurement("poolResizes").addTag("node", desc.toString())
+				.addTag("pool", tuner.getName())
+				.addField("value", tuner.getResizes()).time(Instant.now().toEpochMilli(), WritePrecision.MS);
+		if(topologyId!=null) point.addTag("topology", topologyId);
+		writeApi.writePoint(conf.getInfluxDBBucket(), conf.getInfluxDBOrganization(), point);
+	}
+	
 	/**
 	 * Compute the total accumulated time that the garbage collector
 	 * has been working for this JVM.
@@ -122,11 +147,40 @@ public class Metrics extends Thread {
 					point = Point.measurement("gcTime").addTag("node", desc.toString())
 							.addField("value", gcTime()).time(Instant.now().toEpochMilli(), WritePrecision.MS);
 					writeApi.writePoint(conf.getInfluxDBBucket(), conf.getInfluxDBOrganization(), point);
+					Router router = Node.inst()!=null ? Node.inst().getRouter() : null;
+					if(router!=null) {
+						writePool(router.getOutgoingTuner(),null);
+						writePool(router.getIncomingTuner(),null);
+					}
 				}
 				
 				for(String topologyId : localClusters.keySet()){
 					log.info("sampling topology ["+topologyId+"]");
 					LocalCluster localCluster = localClusters.get(topologyId);
+					ExecutorGroup executorGroup = localCluster.getExecutorGroup();
+					if(executorGroup!=null && writeApi!=null) {
+						point = Point.measurement("cpuUsedMs").addTag("node", desc.toString())
+								.addTag("topology", topologyId)
+								.addField("value", executorGroup.getCpuNanos()/1000000.0).time(Instant.now().toEpochMilli(), WritePrecision.MS);
+						writeApi.writePoint(conf.getInfluxDBBucket(), conf.getInfluxDBOrganization(), point);
+						point = Point.measurement("cpuThrottledMs").addTag("node", desc.toString())
+								.addTag("topology", topologyId)
+								.addField("value", executorGroup.getThrottledNanos()/1000000.0).time(Instant.now().toEpochMilli(), WritePrecision.MS);
+						writeApi.writePoint(conf.getInfluxDBBucket(), conf.getInfluxDBOrganization(), point);
+					}
+					if(writeApi!=null) writePool(localCluster.getNetworkExecutorTuner(),topologyId);
+					double[] utilization = localCluster.getNetworkExecutorUtilization();
+					if(utilization!=null) {
+						for(int i=0;i<utilization.length;i++) {
+							log.debug("netex "+i+" utilization ["+utilization[i]+"]");
+							if(writeApi!=null) {
+								point = Point.measurement("netexUtilization").addTag("node", desc.toString())
+										.addTag("topology", topologyId).addTag("thread", Integer.toString(i))
+										.addField("value", utilization[i]).time(Instant.now().toEpochMilli(), WritePrecision.MS);
+								writeApi.writePoint(conf.getInfluxDBBucket(), conf.getInfluxDBOrganization(), point);
+							}
+						}
+					}
 					for(String componentId : localCluster.getSpouts().keySet()){
 						for(Integer taskId : localCluster.getSpouts().get(componentId).keySet()){
 							Sample sample = new Sample(localCluster.getSpouts().get(componentId).get(taskId));
@@ -184,6 +238,46 @@ public class Metrics extends Thread {
 				.addTag("topology", topologyId).addTag("component", componentId).addTag("instance", taskId.toString())
 				.addField("value", sample.transferred).time(Instant.now().toEpochMilli(), WritePrecision.MS);
 		writeApi.writePoint(conf.getInfluxDBBucket(), conf.getInfluxDBOrganization(), point);
+		point = Point.measurement("bundleSize").addTag("node", desc.toString())
+				.addTag("topology", topologyId).addTag("component", componentId).addTag("instance", taskId.toString())
+				.addField("value", sample.bundleSize).time(Instant.now().toEpochMilli(), WritePrecision.MS);
+		writeApi.writePoint(conf.getInfluxDBBucket(), conf.getInfluxDBOrganization(), point);
+		point = Point.measurement("bundleLingerMs").addTag("node", desc.toString())
+				.addTag("topology", topologyId).addTag("component", componentId).addTag("instance", taskId.toString())
+				.addField("value", sample.bundleLingerMs).time(Instant.now().toEpochMilli(), WritePrecision.MS);
+		writeApi.writePoint(conf.getInfluxDBBucket(), conf.getInfluxDBOrganization(), point);
+		point = Point.measurement("bundleFillRatio").addTag("node", desc.toString())
+				.addTag("topology", topologyId).addTag("component", componentId).addTag("instance", taskId.toString())
+				.addField("value", sample.bundleFillRatio).time(Instant.now().toEpochMilli(), WritePrecision.MS);
+		writeApi.writePoint(conf.getInfluxDBBucket(), conf.getInfluxDBOrganization(), point);
+		point = Point.measurement("backpressureMs").addTag("node", desc.toString())
+				.addTag("topology", topologyId).addTag("component", componentId).addTag("instance", taskId.toString())
+				.addField("value", sample.backpressureMs).time(Instant.now().toEpochMilli(), WritePrecision.MS);
+		writeApi.writePoint(conf.getInfluxDBBucket(), conf.getInfluxDBOrganization(), point);
+		point = Point.measurement("deadlineMissed").addTag("node", desc.toString())
+				.addTag("topology", topologyId).addTag("component", componentId).addTag("instance", taskId.toString())
+				.addField("value", sample.deadlineMissed).time(Instant.now().toEpochMilli(), WritePrecision.MS);
+		writeApi.writePoint(conf.getInfluxDBBucket(), conf.getInfluxDBOrganization(), point);
+		for(String lane : sample.laneOccupancy.keySet()) {
+			point = Point.measurement("laneOccupancy").addTag("node", desc.toString())
+					.addTag("topology", topologyId).addTag("component", componentId).addTag("instance", taskId.toString())
+					.addTag("lane", lane)
+					.addField("value", sample.laneOccupancy.get(lane)).time(Instant.now().toEpochMilli(), WritePrecision.MS);
+			writeApi.writePoint(conf.getInfluxDBBucket(), conf.getInfluxDBOrganization(), point);
+		}
+		if(sample.hotKeys==null) return;
+		for(HotKeys.HotKey hotKey : sample.hotKeys) {
+			point = Point.measurement("hotKeyShare").addTag("node", desc.toString())
+					.addTag("topology", topologyId).addTag("component", componentId).addTag("instance", taskId.toString())
+					.addTag("stream", hotKey.streamId).addTag("dest", hotKey.destComponentId).addTag("key", hotKey.key)
+					.addField("value", hotKey.share).time(Instant.now().toEpochMilli(), WritePrecision.MS);
+			writeApi.writePoint(conf.getInfluxDBBucket(), conf.getInfluxDBOrganization(), point);
+			point = Point.measurement("hotKeyFanout").addTag("node", desc.toString())
+					.addTag("topology", topologyId).addTag("component", componentId).addTag("instance", taskId.toString())
+					.addTag("stream", hotKey.streamId).addTag("dest", hotKey.destComponentId).addTag("key", hotKey.key)
+					.addField("value", hotKey.fanout).time(Instant.now().toEpochMilli(), WritePrecision.MS);
+			writeApi.writePoint(conf.getInfluxDBBucket(), conf.getInfluxDBOrganization(), point);
+		}
 	}
 
 }
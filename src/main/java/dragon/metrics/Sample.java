@@ -1,10 +1,14 @@
 package dragon.metrics;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 
 import dragon.topology.base.Bolt;
 import dragon.topology.base.Spout;
 import dragon.utils.ComponentTaskBuffer;
+import dragon.utils.ExecutorGroup;
+import dragon.utils.HotKeys;
 import dragon.utils.Time;
 
 /**
@@ -45,12 +49,65 @@ public class Sample implements Serializable {
 	 */
 	public long transferred;
 	
+	/**
+	 * the bundle size chosen for the outputs, averaged over destinations and streams
+	 */
+	public double bundleSize;
+	
+	/**
+	 * the linger time in milliseconds chosen for the outputs, averaged over destinations and streams
+	 */
+	public double bundleLingerMs;
+	
+	/**
+	 * the fraction of bundle capacity that was filled when bundles were transmitted
+	 */
+	public double bundleFillRatio;
+	
+	/**
+	 * the total time in ms that a bolt's input was above its high watermark, or that
+	 * a spout was throttled by backpressure
+	 */
+	public double backpressureMs;
+	
+	/**
+	 * the number of tuples that a bolt executed after their deadline
+	 */
+	public long deadlineMissed;
+	
+	/**
+	 * the fraction of each input lane's capacity that is occupied, by lane name
+	 */
+	public LinkedHashMap<String,Double> laneOccupancy;
+	
+	/**
+	 * the CPU time in ms used by the thread of the component
+	 */
+	public double cpuMs;
+	
+	/**
+	 * the time in ms that the thread of the component was parked because the
+	 * topology was over its CPU limit
+	 */
+	public double cpuThrottledMs;
+	
+	/**
+	 * the hot keys that the component currently splits over more tasks
+	 */
+	public ArrayList<HotKeys.HotKey> hotKeys;
+	
+	/**
+	 * the number of tuple trees of a spout that did not complete within the
+	 * message timeout
+	 */
+	public long failed;
+	
 	/**
 	 * @param bolt
 	 */
 	public Sample(Bolt bolt){
 		timestamp = Time.currentTimeMillis();
-		inputQueueSize = bolt.getInputCollector().getQueue().size();
+		inputQueueSize = bolt.getInputCollector().size();
 		ComponentTaskBuffer ctb = bolt.getOutputCollector().getComponentTaskBuffer();
 		outputQueueSize=0;
 		for(String componentId:ctb.keySet()) {
@@ -61,7 +118,14 @@ public class Sample implements Serializable {
 		processed = bolt.getProcessed();
 		emitted = bolt.getEmitted();
 		transferred = bolt.getTransferred();
-		
+		bundleSize = bolt.getOutputCollector().getAverageBundleSize();
+		bundleLingerMs = bolt.getOutputCollector().getAverageLingerMS();
+		bundleFillRatio = bolt.getOutputCollector().getBundleFillRatio();
+		backpressureMs = bolt.getInputCollector().getBackpressureNanos()/1000000.0;
+		deadlineMissed = bolt.getDeadlineMissed();
+		laneOccupancy = bolt.getInputCollector().getLaneOccupancy();
+		hotKeys = bolt.getOutputCollector().getHotKeys();
+		cpu(bolt.getLocalCluster().getExecutorGroup().getExecutor(bolt));
 	}
 	
 	/**
@@ -80,6 +144,27 @@ public class Sample implements Serializable {
 		processed = 0;
 		emitted = spout.getEmitted();
 		transferred = spout.getTransferred();
+		bundleSize = spout.getOutputCollector().getAverageBundleSize();
+		bundleLingerMs = spout.getOutputCollector().getAverageLingerMS();
+		bundleFillRatio = spout.getOutputCollector().getBundleFillRatio();
+		backpressureMs = spout.getThrottledNanos()/1000000.0;
+		deadlineMissed = 0;
+		laneOccupancy = new LinkedHashMap<String,Double>();
+		hotKeys = spout.getOutputCollector().getHotKeys();
+		if(spout.getOutputCollector().getTracker()!=null) {
+			failed = spout.getOutputCollector().getTracker().getFailed();
+		}
+		cpu(spout.getLocalCluster().getExecutorGroup().getExecutor(spout));
+	}
+	
+	/**
+	 * @param executor the executor of the component's thread, or null if
+	 * it has not started
+	 */
+	private void cpu(ExecutorGroup.Executor executor) {
+		if(executor==null) return;
+		cpuMs = executor.getCpuNanos()/1000000.0;
+		cpuThrottledMs = executor.getThrottledNanos()/1000000.0;
 	}
 	
 	/**
@@ -102,6 +187,13 @@ public class Sample implements Serializable {
 		out+="processed="+processed+"\n";
 		out+="emitted="+emitted+"\n";
 		out+="transferred="+transferred+"\n";
+		out+="bundleSize="+bundleSize+"\n";
+		out+="bundleLingerMs="+bundleLingerMs+"\n";
+		out+="bundleFillRatio="+bundleFillRatio+"\n";
+		out+="backpressureMs="+backpressureMs+"\n";
+		out+="deadlineMissed="+deadlineMissed+"\n";
+		out+="hotKeys="+hotKeys+"\n";
+		out+="failed="+failed+"\n";
 		return out;
 	}
 	
@@ -545,8 +545,8 @@ public class Node {
 		lconf.putAll(this.conf);
 		lconf.putAll(conf);
 		cluster.submitTopology(topologyId, lconf, topology, start);
-		getRouter().submitTopology(topologyId, topology);
 		getLocalClusters().put(topologyId, cluster);
+		getRouter().submitTopology(topologyId, topology);
 	}
 
 	/**
@@ -921,6 +921,10 @@ public class Node {
 			}, (op,msg)->{
 				log.warn(msg);
 			});
+			// clear the pressure that the node reported
+			for(LocalCluster localCluster : localClusters.values()) {
+				if(localCluster.getBackpressure()!=null) localCluster.getBackpressure().removePeer(desc);
+			}
 			// trigger topology faults as required
 			for(String topologyId : localClusters.keySet()) {
 				if(localClusters.get(topologyId).getTopology().getReverseEmbedding().containsKey(desc)){
@@ -1,9 +1,11 @@
 package dragon.network;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -12,10 +14,13 @@ import dragon.Config;
 import dragon.LocalCluster;
 import dragon.network.comms.DragonCommsException;
 import dragon.network.comms.IComms;
+import dragon.topology.Backpressure;
 import dragon.topology.DragonTopology;
 import dragon.topology.base.DragonEmitRuntimeException;
 import dragon.tuple.NetworkTask;
+import dragon.utils.IResizablePool;
 import dragon.utils.NetworkTaskBuffer;
+import dragon.utils.PoolTuner;
 
 /**
  * The Router is responsible for taking NetworkTasks from the LocalCluster and duplicating
@@ -23,6 +28,8 @@ import dragon.utils.NetworkTaskBuffer;
  * of the NetworkTask is sent to each machine that requires it. When received from another
  * machine, the Router is responsible for making the NetworkTask available to the LocalCluster
  * which in turn copies the enclosed tuple to the relevant bolts receiving the tuple.
+ * Outgoing NetworkTasks are sent earliest deadline first, and in the order they were
+ * put otherwise.
  * 
  * @author aaron
  *
@@ -48,12 +55,57 @@ public class Router {
 	/**
 	 * 
 	 */
-	private final ArrayList<Thread> outgoingThreads;
+	private final CopyOnWriteArrayList<Thread> outgoingThreads;
 
 	/**
 	 * 
 	 */
-	private final ArrayList<Thread> incomingThreads;
+	private final CopyOnWriteArrayList<Thread> incomingThreads;
+	
+	/**
+	 * the number of outgoing threads that the pool currently has
+	 */
+	private volatile int outgoingSize;
+	
+	/**
+	 * the number of incoming threads that the pool currently has
+	 */
+	private volatile int incomingSize;
+	
+	/**
+	 * resizes the pool of outgoing threads
+	 */
+	private PoolTuner outgoingTuner;
+	
+	/**
+	 * resizes the pool of incoming threads
+	 */
+	private PoolTuner incomingTuner;
+	
+	/**
+	 * time that the outgoing threads have been busy, in total
+	 */
+	private final AtomicLong outgoingBusyNanos=new AtomicLong(0);
+	
+	/**
+	 * time that output queues have waited for an outgoing thread, in total
+	 */
+	private final AtomicLong outgoingWaitNanos=new AtomicLong(0);
+	
+	/**
+	 * the number of network tasks taken by the outgoing threads
+	 */
+	private final AtomicLong outgoingTaken=new AtomicLong(0);
+	
+	/**
+	 * time that the incoming threads have been busy, in total
+	 */
+	private final AtomicLong incomingBusyNanos=new AtomicLong(0);
+	
+	/**
+	 * the number of network tasks taken by the incoming threads
+	 */
+	private final AtomicLong incomingTaken=new AtomicLong(0);
 
 	/**
 	 * 
@@ -68,7 +120,7 @@ public class Router {
 	/**
 	 * 
 	 */
-	private boolean shouldTerminate=false;
+	private volatile boolean shouldTerminate=false;
 
 	/**
 	 * 
@@ -76,9 +128,37 @@ public class Router {
 	private final Config conf;
 
 	/**
-	 * 
+	 * An output queue that has a network task to send.
+	 * @author aaron
+	 *
 	 */
-	private final LinkedBlockingQueue<NetworkTaskBuffer> outputsPending;
+	private static class PendingOutput implements Comparable<PendingOutput> {
+		public final NetworkTaskBuffer buffer;
+		public final long deadline;
+		public final long sequence;
+		public final long time=System.nanoTime();
+		public PendingOutput(NetworkTaskBuffer buffer,long deadline,long sequence) {
+			this.buffer=buffer;
+			this.deadline=deadline==0 ? Long.MAX_VALUE : deadline;
+			this.sequence=sequence;
+		}
+		@Override
+		public int compareTo(PendingOutput other) {
+			int c=Long.compare(deadline,other.deadline);
+			return c!=0 ? c : Long.compare(sequence,other.sequence);
+		}
+	}
+	
+	/**
+	 * the output queues that have network tasks to send, ordered by the
+	 * deadline of the network task that was put
+	 */
+	private final PriorityBlockingQueue<PendingOutput> outputsPending;
+	
+	/**
+	 * the number of network tasks that have been put
+	 */
+	private final AtomicLong sequence=new AtomicLong(0);
 	
 	/**
 	 * 
@@ -97,13 +177,13 @@ public class Router {
 		this.conf=conf;
 		inputQueues = new TopologyQueueMap((Integer)conf.getDragonRouterInputBufferSize());
 		outputQueues = new TopologyQueueMap((Integer)conf.getDragonRouterOutputBufferSize());
-		outgoingThreads = new ArrayList<>();
-		incomingThreads = new ArrayList<>();
+		outgoingThreads = new CopyOnWriteArrayList<>();
+		incomingThreads = new CopyOnWriteArrayList<>();
 		context = Node.inst().getNodeProcessor().getAliveContext();
 		
 		// A circular blocking queue is not so applicable here because the input and output queues
 		// change in response to topologies being started and stopped.
-		outputsPending=new LinkedBlockingQueue<>();
+		outputsPending=new PriorityBlockingQueue<>();
 		
 		// Startup the threads
 		runExecutors();
@@ -113,6 +193,9 @@ public class Router {
 	 * terminate the router
 	 */
 	public void terminate() {
+		shouldTerminate=true;
+		if(outgoingTuner!=null) outgoingTuner.cancel();
+		if(incomingTuner!=null) incomingTuner.cancel();
 		for(Thread thread : outgoingThreads) thread.interrupt();
 		for(Thread thread : incomingThreads) thread.interrupt();
 		if(outputsPending.size()>0) log.error("there are still outputs pending");
@@ -123,106 +206,295 @@ public class Router {
 	 * 
 	 */
 	private void runExecutors() {
-		for(int i=0;i<(Integer)conf.getDragonRouterOutputThreads();i++) {
-			outgoingThreads.add(new Thread() {
-				@Override
-				public void run() {
-					log.info("starting up");
-					while(!shouldTerminate) {
+		outgoingSize=conf.getDragonRouterOutputThreads();
+		for(int i=0;i<outgoingSize;i++) {
+			startOutgoingThread(i);
+		}
+		incomingSize=conf.getDragonRouterInputThreads();
+		for(int i=0;i<incomingSize;i++) {
+			startIncomingThread(i);
+		}
+		outgoingTuner=new PoolTuner("router out",new OutgoingPool(),
+				conf.getDragonRouterOutputThreads(),conf.getDragonRouterOutputThreadsMax());
+		incomingTuner=new PoolTuner("router in",new IncomingPool(),
+				conf.getDragonRouterInputThreads(),conf.getDragonRouterInputThreadsMax());
+	}
+	
+	/**
+	 * Start an outgoing thread with the given index, replacing any thread
+	 * that had the index. The thread leaves when the pool is shrunk below
+	 * its index or when it is replaced.
+	 * @param me the index of the thread
+	 */
+	private void startOutgoingThread(final int me) {
+		final Thread thread=new Thread() {
+			@Override
+			public void run() {
+				log.info("starting up");
+				while(!shouldTerminate && me<outgoingSize && outgoingThreads.get(me)==this) {
+					try {
+						PendingOutput pending = outputsPending.poll(PoolTuner.PERIOD_MS,TimeUnit.MILLISECONDS);
+						if(pending==null) continue;
+						final long start=System.nanoTime();
+						outgoingWaitNanos.addAndGet(start-pending.time);
+						outgoingTaken.incrementAndGet();
+						/*
+						 * each entry sends the task at the head of its queue, so tasks
+						 * on the same queue are still sent in order
+						 */
+						NetworkTaskBuffer buffer = pending.buffer;
+						HashMap<NodeDescriptor,HashSet<Integer>> destinations = new HashMap<>();
+						buffer.bufferLock.lock();
+						NetworkTask task = buffer.poll();
 						try {
-							NetworkTaskBuffer buffer = outputsPending.take();
-							HashMap<NodeDescriptor,HashSet<Integer>> destinations = new HashMap<>();
-							buffer.bufferLock.lock();
-							NetworkTask task = buffer.poll();
-							try {
-								if(task!=null){
-									HashSet<Integer> taskIds=task.getTaskIds();
-									/*
-									 * the following will fail with a null pointer exception
-									 * if the topology was abruptly removed just recently by
-									 * another thread, e.g. purged by the user
-									 */
-									HashMap<Integer,NodeDescriptor> taskMap = localClusters
-											.get(task.getTopologyId())
-											.getTopology()
-											.getEmbedding()
-											.get(task.getComponentId());
-									destinations.clear();
-									/*
-									 * Work out which task ids go to which machines.
-									 */
-									for(Integer taskId : taskIds) {
-										NodeDescriptor desc = taskMap.get(taskId);
-										if(!destinations.containsKey(desc)) {
-											destinations.put(desc,new HashSet<Integer>());
-										}
-										HashSet<Integer> tasks = destinations.get(desc);
-										tasks.add(taskId);
+							if(task!=null){
+								HashSet<Integer> taskIds=task.getTaskIds();
+								/*
+								 * the following will fail with a null pointer exception
+								 * if the topology was abruptly removed just recently by
+								 * another thread, e.g. purged by the user
+								 */
+								HashMap<Integer,NodeDescriptor> taskMap = localClusters
+										.get(task.getTopologyId())
+										.getTopology()
+										.getEmbedding()
+										.get(task.getComponentId());
+								destinations.clear();
+								/*
+								 * Work out which task ids go to which machines.
+								 */
+								for(Integer taskId : taskIds) {
+									NodeDescriptor desc = taskMap.get(taskId);
+									if(!destinations.containsKey(desc)) {
+										destinations.put(desc,new HashSet<Integer>());
 									}
-									for(NodeDescriptor desc : destinations.keySet()) {
-										task.init(task.getTuples(),
-												destinations.get(desc),
-												task.getComponentId(),
-												task.getTopologyId());
-										try {
-											if(context.containsKey(desc.toString())) {
-												comms.sendNetworkTask(desc, task);
-											} else {
-												// the receiver has recently faulted
-												log.error("dopping network task since receiver ["+desc+"] is no longer alive");
-											}
-										} catch (DragonCommsException e) {
-											log.error("failed to send network task to ["+desc+"]");
-											Node.inst().nodeFault(desc);
+									HashSet<Integer> tasks = destinations.get(desc);
+									tasks.add(taskId);
+								}
+								for(NodeDescriptor desc : destinations.keySet()) {
+									task.init(task.getTuples(),
+											destinations.get(desc),
+											task.getComponentId(),
+											task.getTopologyId());
+									try {
+										if(context.containsKey(desc.toString())) {
+											comms.sendNetworkTask(desc, task);
+										} else {
+											// the receiver has recently faulted
+											log.error("dopping network task since receiver ["+desc+"] is no longer alive");
 										}
+									} catch (DragonCommsException e) {
+										log.error("failed to send network task to ["+desc+"]");
+										Node.inst().nodeFault(desc);
 									}
 								}
-							} catch(NullPointerException e){
-								log.error("topology ["+task.getTopologyId()+"] no longer exists, dropping network task");
-							} finally {
-								buffer.bufferLock.unlock();
 							}
-						} catch (InterruptedException e) {
-							log.info("interrupted while taking from queue");
+						} catch(NullPointerException e){
+							log.error("topology ["+task.getTopologyId()+"] no longer exists, dropping network task");
+						} finally {
+							buffer.bufferLock.unlock();
+							outgoingBusyNanos.addAndGet(System.nanoTime()-start);
 						}
+					} catch (InterruptedException e) {
+						log.info("interrupted while taking from queue");
 					}
-					log.info("shutting down");
 				}
-			});
-			outgoingThreads.get(i).setName("router out "+i);
-			outgoingThreads.get(i).start();
+				log.info("shutting down");
+			}
+		};
+		thread.setName("router out "+me);
+		if(me<outgoingThreads.size()) {
+			outgoingThreads.set(me, thread);
+		} else {
+			outgoingThreads.add(thread);
 		}
-		for(int i=0;i<(Integer)conf.getDragonRouterInputThreads();i++) {
-			incomingThreads.add(new Thread() {
-				@Override
-				public void run() {
-					log.info("starting up");
-					while(!shouldTerminate) {
-						NetworkTask task;
-						try {
-							task = comms.receiveNetworkTask();
-						} catch (InterruptedException e1) {
-							log.info("interrupted");
-							break;
-						}
-						try {
-							final NetworkTaskBuffer ntb = inputQueues.getBuffer(task);
-							final String topologyId = task.getTopologyId();
-							ntb.put(task);
-							if(ntb.size()==1) localClusters.get(topologyId).outputPending(ntb);
-						} catch(NullPointerException e) {
-							log.error("received a network task for a non-existant topology ["+task.getTopologyId()+"]");
-						} catch(InterruptedException e) {
-							log.info("interrupted");
-							break;
-						}
+		thread.start();
+	}
+	
+	/**
+	 * Start an incoming thread with the given index, replacing any thread
+	 * that had the index. The thread leaves when the pool is shrunk below
+	 * its index or when it is replaced.
+	 * @param me the index of the thread
+	 */
+	private void startIncomingThread(final int me) {
+		final Thread thread=new Thread() {
+			@Override
+			public void run() {
+				log.info("starting up");
+				while(!shouldTerminate && me<incomingSize && incomingThreads.get(me)==this) {
+					NetworkTask task;
+					try {
+						task = comms.receiveNetworkTask(PoolTuner.PERIOD_MS,TimeUnit.MILLISECONDS);
+					} catch (InterruptedException e1) {
+						log.info("interrupted");
+						break;
 					}
-					log.info("shutting down");
+					if(task==null) continue;
+					final long start=System.nanoTime();
+					try {
+						final NetworkTaskBuffer ntb = inputQueues.getBuffer(task);
+						final String topologyId = task.getTopologyId();
+						ntb.put(task);
+						if(ntb.size()==1) localClusters.get(topologyId).outputPending(ntb);
+					} catch(NullPointerException e) {
+						log.error("received a network task for a non-existant topology ["+task.getTopologyId()+"]");
+					} catch(InterruptedException e) {
+						log.info("interrupted");
+						break;
+					}
+					incomingBusyNanos.addAndGet(System.nanoTime()-start);
+					incomingTaken.incrementAndGet();
 				}
-			});
-			incomingThreads.get(i).setName("router in "+i);
-			incomingThreads.get(i).start();
+				log.info("shutting down");
+			}
+		};
+		thread.setName("router in "+me);
+		if(me<incomingThreads.size()) {
+			incomingThreads.set(me, thread);
+		} else {
+			incomingThreads.add(thread);
+		}
+		thread.start();
+	}
+	
+	/**
+	 * The pool of outgoing threads, as resized by its tuner.
+	 * @author aaron
+	 *
+	 */
+	private class OutgoingPool implements IResizablePool {
+		
+		/* (non-Javadoc)
+		 * @see dragon.utils.IResizablePool#getPoolSize()
+		 */
+		@Override
+		public int getPoolSize() {
+			return outgoingSize;
+		}
+		
+		/* (non-Javadoc)
+		 * @see dragon.utils.IResizablePool#setPoolSize(int)
+		 */
+		@Override
+		public synchronized void setPoolSize(int size) {
+			if(shouldTerminate) return;
+			final int current=outgoingSize;
+			outgoingSize=size;
+			for(int i=current;i<size;i++) {
+				startOutgoingThread(i);
+			}
+		}
+		
+		/* (non-Javadoc)
+		 * @see dragon.utils.IResizablePool#getPoolBusyNanos()
+		 */
+		@Override
+		public long getPoolBusyNanos() {
+			return outgoingBusyNanos.get();
+		}
+		
+		/* (non-Javadoc)
+		 * @see dragon.utils.IResizablePool#getPoolWaitNanos()
+		 */
+		@Override
+		public long getPoolWaitNanos() {
+			return outgoingWaitNanos.get();
+		}
+		
+		/* (non-Javadoc)
+		 * @see dragon.utils.IResizablePool#getPoolTaken()
+		 */
+		@Override
+		public long getPoolTaken() {
+			return outgoingTaken.get();
+		}
+		
+		/* (non-Javadoc)
+		 * @see dragon.utils.IResizablePool#getPoolBacklog()
+		 */
+		@Override
+		public int getPoolBacklog() {
+			return outputsPending.size();
+		}
+	}
+	
+	/**
+	 * The pool of incoming threads, as resized by its tuner. The time that
+	 * network tasks wait to be taken is not measured.
+	 * @author aaron
+	 *
+	 */
+	private class IncomingPool implements IResizablePool {
+		
+		/* (non-Javadoc)
+		 * @see dragon.utils.IResizablePool#getPoolSize()
+		 */
+		@Override
+		public int getPoolSize() {
+			return incomingSize;
+		}
+		
+		/* (non-Javadoc)
+		 * @see dragon.utils.IResizablePool#setPoolSize(int)
+		 */
+		@Override
+		public synchronized void setPoolSize(int size) {
+			if(shouldTerminate) return;
+			final int current=incomingSize;
+			incomingSize=size;
+			for(int i=current;i<size;i++) {
+				startIncomingThread(i);
+			}
+		}
+		
+		/* (non-Javadoc)
+		 * @see dragon.utils.IResizablePool#getPoolBusyNanos()
+		 */
+		@Override
+		public long getPoolBusyNanos() {
+			return incomingBusyNanos.get();
+		}
+		
+		/* (non-Javadoc)
+		 * @see dragon.utils.IResizablePool#getPoolWaitNanos()
+		 */
+		@Override
+		public long getPoolWaitNanos() {
+			return 0;
+		}
+		
+		/* (non-Javadoc)
+		 * @see dragon.utils.IResizablePool#getPoolTaken()
+		 */
+		@Override
+		public long getPoolTaken() {
+			return incomingTaken.get();
 		}
+		
+		/* (non-Javadoc)
+		 * @see dragon.utils.IResizablePool#getPoolBacklog()
+		 */
+		@Override
+		public int getPoolBacklog() {
+			return comms.getNetworkTaskBacklog();
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the tuner of the outgoing thread pool
+	 */
+	public PoolTuner getOutgoingTuner() {
+		return outgoingTuner;
+	}
+	
+	/**
+	 * 
+	 * @return the tuner of the incoming thread pool
+	 */
+	public PoolTuner getIncomingTuner() {
+		return incomingTuner;
 	}
 
 	/**
@@ -230,6 +502,7 @@ public class Router {
 	 * @param topology
 	 */
 	public void submitTopology(String topologyName, DragonTopology topology) {
+		final Backpressure backpressure = localClusters.get(topologyName).getBackpressure();
 		for(NodeDescriptor desc : topology.getReverseEmbedding().keySet()) {
 			if(!desc.equals(comms.getMyNodeDesc())) {
 				for(String componentId : topology.getReverseEmbedding().get(desc).keySet()) {
@@ -238,6 +511,9 @@ public class Router {
 						for(String streamId : topology.getBoltMap().get(componentId).groupings.get(listened).keySet()) {
 							log.debug("preparing output queue ["+topologyName+","+componentId+","+streamId+"]");
 							outputQueues.prepare(topologyName,componentId,streamId);
+							outputQueues.get(topologyName).get(componentId).get(streamId)
+								.setWatermark(backpressure.newWatermark(componentId,
+										(Integer)conf.getDragonRouterOutputBufferSize()));
 						}
 					}
 				}
@@ -248,6 +524,9 @@ public class Router {
 						for(String streamId : topology.getBoltMap().get(componentId).groupings.get(listened).keySet()) {
 							log.debug("preparing input queue ["+topologyName+","+componentId+","+streamId+"]");
 							inputQueues.prepare(topologyName,componentId,streamId);
+							inputQueues.get(topologyName).get(componentId).get(streamId)
+								.setWatermark(backpressure.newRemoteWatermark(componentId,
+										(Integer)conf.getDragonRouterInputBufferSize()));
 						}
 					}
 				}
@@ -300,7 +579,7 @@ public class Router {
 		try {
 			final NetworkTaskBuffer ntb = outputQueues.getBuffer(task);
 			ntb.put(task);
-			outputsPending.put(ntb);
+			outputsPending.put(new PendingOutput(ntb,task.getDeadline(),sequence.getAndIncrement()));
 		} catch (NullPointerException e) {
 			/* Probably the topology queue no longer exists, which might
 			 * happen if the topology is being purged rather than gracefully
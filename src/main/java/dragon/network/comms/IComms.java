@@ -1,6 +1,7 @@
 package dragon.network.comms;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 import dragon.network.NodeDescriptor;
 import dragon.network.messages.node.NodeMessage;
@@ -112,4 +113,20 @@ public interface IComms {
 	 * @throws InterruptedException if interrupted while waiting for a network task.
 	 */
 	public NetworkTask receiveNetworkTask() throws InterruptedException;
+	
+	/**
+	 * Blocking call to receive a network task, waiting up to the given time.
+	 * @param timeout
+	 * @param unit
+	 * @return the network task, or null if none was available in time.
+	 * @throws InterruptedException if interrupted while waiting for a network task.
+	 */
+	public NetworkTask receiveNetworkTask(long timeout,TimeUnit unit) throws InterruptedException;
+	
+	/**
+	 * 
+	 * @return the number of network tasks that have been received and are
+	 * waiting to be taken.
+	 */
+	public int getNetworkTaskBacklog();
 }
@@ -11,6 +11,7 @@ import java.net.Socket;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -673,4 +674,23 @@ public class TcpComms implements IComms {
 	public NetworkTask receiveNetworkTask() throws InterruptedException {
 		return incomingTaskQueue.take();
 	}
+	
+	/**
+	 * Blocking call to receive a network task, waiting up to the given time.
+	 * @param timeout
+	 * @param unit
+	 * @return a network task, or null if none was available in time
+	 * @throws InterruptedException if interrupted while waiting for a network task
+	 */
+	public NetworkTask receiveNetworkTask(long timeout,TimeUnit unit) throws InterruptedException {
+		return incomingTaskQueue.poll(timeout, unit);
+	}
+	
+	/**
+	 * 
+	 * @return the number of network tasks received and waiting to be taken
+	 */
+	public int getNetworkTaskBacklog() {
+		return incomingTaskQueue.size();
+	}
 }
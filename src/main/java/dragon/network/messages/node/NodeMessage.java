@@ -64,7 +64,10 @@ public class NodeMessage extends Message {
 		TERMINATE_NODE,
 		NODE_FAULT, 
 		TOPOLOGY_FAULT,
-		TOPOLOGY_ID, RIP
+		TOPOLOGY_ID, RIP,
+		BACKPRESSURE,
+		LOAD,
+		RING
 	}
 	
 	/**
@@ -0,0 +1,62 @@
+package dragon.network.messages.node.backpressure;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import dragon.LocalCluster;
+import dragon.network.Node;
+import dragon.network.messages.node.NodeMessage;
+
+/**
+ * Reports that a buffer on the sender, that receives tuples for a component
+ * from other nodes, has come under pressure or that the pressure has cleared.
+ * @author aaron
+ *
+ */
+public class BackpressureNMsg extends NodeMessage {
+	private static final long serialVersionUID = -4893059912771513170L;
+	private final static Logger log = LogManager.getLogger(BackpressureNMsg.class);
+	
+	/**
+	 * 
+	 */
+	final public String topologyId;
+	
+	/**
+	 * 
+	 */
+	final public String componentId;
+	
+	/**
+	 * true if the buffer came under pressure, false if the pressure cleared
+	 */
+	final public boolean pressure;
+	
+	/**
+	 * 
+	 * @param topologyId
+	 * @param componentId
+	 * @param pressure
+	 */
+	public BackpressureNMsg(String topologyId,String componentId,boolean pressure) {
+		super(NodeMessage.NodeMessageType.BACKPRESSURE);
+		this.topologyId=topologyId;
+		this.componentId=componentId;
+		this.pressure=pressure;
+	}
+	
+	/**
+	 * 
+	 */
+	@Override
+	public void process() {
+		final Node node = Node.inst();
+		LocalCluster localCluster = node.getLocalClusters().get(topologyId);
+		if(localCluster==null) {
+			log.warn("backpressure reported for a non-existant topology ["+topologyId+"]");
+			return;
+		}
+		localCluster.getBackpressure().remote(getSender(),componentId,pressure);
+	}
+
+}
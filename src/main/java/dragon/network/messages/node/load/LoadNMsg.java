@@ -0,0 +1,58 @@
+package dragon.network.messages.node.load;
+
+import java.util.HashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import dragon.LocalCluster;
+import dragon.network.Node;
+import dragon.network.messages.node.NodeMessage;
+
+/**
+ * Reports the input queue depths of the sender's tasks, of the components
+ * that load aware groupings target.
+ * @author aaron
+ *
+ */
+public class LoadNMsg extends NodeMessage {
+	private static final long serialVersionUID = 2307713384735496129L;
+	private final static Logger log = LogManager.getLogger(LoadNMsg.class);
+	
+	/**
+	 * 
+	 */
+	final public String topologyId;
+	
+	/**
+	 * the depths of the sender's tasks by component id, where tasks that
+	 * are not on the sender have a negative depth
+	 */
+	final public HashMap<String,int[]> depths;
+	
+	/**
+	 * 
+	 * @param topologyId
+	 * @param depths
+	 */
+	public LoadNMsg(String topologyId,HashMap<String,int[]> depths) {
+		super(NodeMessage.NodeMessageType.LOAD);
+		this.topologyId=topologyId;
+		this.depths=depths;
+	}
+	
+	/**
+	 * 
+	 */
+	@Override
+	public void process() {
+		final Node node = Node.inst();
+		LocalCluster localCluster = node.getLocalClusters().get(topologyId);
+		if(localCluster==null) {
+			log.warn("load reported for a non-existant topology ["+topologyId+"]");
+			return;
+		}
+		localCluster.getTaskLoad().remote(depths);
+	}
+
+}
@@ -0,0 +1,92 @@
+package dragon.network.messages.node.ring;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import dragon.LocalCluster;
+import dragon.network.Node;
+import dragon.network.messages.node.NodeMessage;
+
+/**
+ * Sends a change of the tasks that the hash ring of a consistent hash grouping
+ * spreads keys over, which the receiver applies if it is later than the ring
+ * it has.
+ * @author aaron
+ *
+ */
+public class RingNMsg extends NodeMessage {
+	private static final long serialVersionUID = 6182934751230587411L;
+	private final static Logger log = LogManager.getLogger(RingNMsg.class);
+	
+	/**
+	 * 
+	 */
+	final public String topologyId;
+	
+	/**
+	 * 
+	 */
+	final public String sourceComponentId;
+	
+	/**
+	 * 
+	 */
+	final public String streamId;
+	
+	/**
+	 * 
+	 */
+	final public String destComponentId;
+	
+	/**
+	 * the tasks that the keys are spread over
+	 */
+	final public int[] tasks;
+	
+	/**
+	 * 
+	 */
+	final public long version;
+	
+	/**
+	 * the daemon that made the ring
+	 */
+	final public String origin;
+	
+	/**
+	 * 
+	 * @param topologyId
+	 * @param sourceComponentId
+	 * @param streamId
+	 * @param destComponentId
+	 * @param tasks
+	 * @param version
+	 * @param origin
+	 */
+	public RingNMsg(String topologyId,String sourceComponentId,String streamId,String destComponentId,
+			int[] tasks,long version,String origin) {
+		super(NodeMessage.NodeMessageType.RING);
+		this.topologyId=topologyId;
+		this.sourceComponentId=sourceComponentId;
+		this.streamId=streamId;
+		this.destComponentId=destComponentId;
+		this.tasks=tasks;
+		this.version=version;
+		this.origin=origin;
+	}
+	
+	/**
+	 * 
+	 */
+	@Override
+	public void process() {
+		final Node node = Node.inst();
+		LocalCluster localCluster = node.getLocalClusters().get(topologyId);
+		if(localCluster==null) {
+			log.warn("ring sent for a non-existant topology ["+topologyId+"]");
+			return;
+		}
+		localCluster.getHashRings().remote(sourceComponentId,streamId,destComponentId,tasks,version,origin);
+	}
+
+}
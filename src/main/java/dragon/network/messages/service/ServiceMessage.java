@@ -58,7 +58,10 @@ public class ServiceMessage extends Message {
 		DEALLOCATE_PARTITION_ERROR,
 		PARTITION_DEALLOCATED,
 		PROGRESS,
-		TOPOLOGY_ID
+		TOPOLOGY_ID,
+		GET_RING,
+		RING,
+		GET_RING_ERROR
 	}
 	
 	/**
@@ -0,0 +1,20 @@
+package dragon.network.messages.service.getring;
+
+import dragon.network.messages.service.ServiceErrorMessage;
+import dragon.network.messages.service.ServiceMessage;
+
+/**
+ * @author aaron
+ *
+ */
+public class GetRingErrorSMsg extends ServiceErrorMessage {
+	private static final long serialVersionUID = -2710395823651849076L;
+	
+	/**
+	 * @param error
+	 */
+	public GetRingErrorSMsg(String error) {
+		super(ServiceMessage.ServiceMessageType.GET_RING_ERROR,error);
+	}
+	
+}
@@ -0,0 +1,101 @@
+package dragon.network.messages.service.getring;
+
+import java.util.List;
+
+import dragon.LocalCluster;
+import dragon.grouping.ConsistentHashGrouping;
+import dragon.grouping.HashRing;
+import dragon.network.Node;
+import dragon.network.messages.service.ServiceMessage;
+
+/**
+ * Get the live hash ring of a consistent hash grouping on this daemon, and
+ * optionally the task that owns a key.
+ * 
+ * @author aaron
+ *
+ */
+public class GetRingSMsg extends ServiceMessage {
+	private static final long serialVersionUID = -6873026147102398512L;
+	
+	/**
+	 * 
+	 */
+	public final String topologyId;
+	
+	/**
+	 * 
+	 */
+	public final String sourceComponentId;
+	
+	/**
+	 * 
+	 */
+	public final String streamId;
+	
+	/**
+	 * 
+	 */
+	public final String destComponentId;
+	
+	/**
+	 * the values of the grouping's fields, in order, or null
+	 */
+	public final List<Object> key;
+	
+	/**
+	 * @param topologyId
+	 * @param sourceComponentId
+	 * @param streamId
+	 * @param destComponentId
+	 * @param key the values of the grouping's fields, in order, or null to
+	 * get only the ring
+	 */
+	public GetRingSMsg(String topologyId,String sourceComponentId,String streamId,
+			String destComponentId,List<Object> key) {
+		super(ServiceMessage.ServiceMessageType.GET_RING);
+		this.topologyId=topologyId;
+		this.sourceComponentId=sourceComponentId;
+		this.streamId=streamId;
+		this.destComponentId=destComponentId;
+		this.key=key;
+	}
+	
+	/**
+	 *
+	 */
+	@Override
+	public void process() {
+		final Node node = Node.inst();
+		final LocalCluster localCluster = node.getLocalClusters().get(topologyId);
+		if(localCluster==null) {
+			client(new GetRingErrorSMsg("topology ["+topologyId+"] does not exist on this daemon"));
+			return;
+		}
+		final ConsistentHashGrouping grouping = localCluster.getHashRings()
+				.getGrouping(sourceComponentId, streamId, destComponentId);
+		if(grouping==null) {
+			client(new GetRingErrorSMsg("there is no consistent hash grouping from ["+
+					sourceComponentId+"] on stream ["+streamId+"] to ["+destComponentId+"]"));
+			return;
+		}
+		final HashRing ring;
+		final long version;
+		int owner=-1;
+		// the ring is only replaced while holding the grouping's lock
+		synchronized(grouping) {
+			ring = grouping.getRing();
+			version = grouping.getVersion();
+			if(key!=null) {
+				try {
+					owner=grouping.getOwner(key);
+				} catch (IllegalArgumentException e) {
+					client(new GetRingErrorSMsg(e.getMessage()));
+					return;
+				}
+			}
+		}
+		client(new RingSMsg(ring,version,owner));
+	}
+
+}
@@ -0,0 +1,40 @@
+package dragon.network.messages.service.getring;
+
+import dragon.grouping.HashRing;
+import dragon.network.messages.service.ServiceMessage;
+
+/**
+ * @author aaron
+ *
+ */
+public class RingSMsg extends ServiceMessage {
+	private static final long serialVersionUID = 4410958236015923376L;
+	
+	/**
+	 * the live ring
+	 */
+	public final HashRing ring;
+	
+	/**
+	 * the version of the ring
+	 */
+	public final long version;
+	
+	/**
+	 * the task that owns the key, or -1 if no key was given
+	 */
+	public final int owner;
+	
+	/**
+	 * @param ring
+	 * @param version
+	 * @param owner
+	 */
+	public RingSMsg(HashRing ring,long version,int owner) {
+		super(ServiceMessage.ServiceMessageType.RING);
+		this.ring=ring;
+		this.version=version;
+		this.owner=owner;
+	}
+
+}
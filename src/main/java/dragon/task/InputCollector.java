@@ -1,51 +1,403 @@
 package dragon.task;
 
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import org.jctools.queues.MpscArrayQueue;
 
 import dragon.LocalCluster;
+import dragon.topology.BoltDeclarer;
+import dragon.topology.DragonTopology;
 import dragon.topology.base.Bolt;
 import dragon.tuple.Tuple;
-import dragon.utils.CircularBlockingQueue;
+import dragon.utils.NetworkTaskBuffer;
+import dragon.utils.TimingWheel;
+import dragon.utils.Watermark;
 
 /**
+ * The input of a bolt, which is split into lanes. There is a priority lane
+ * for system tuples that are not ordered with respect to the data, such as
+ * tick tuples, and one lane per upstream task. The priority lane is always
+ * drained first and the upstream lanes are drained round robin, one bundle
+ * at a time, so that a busy upstream task can not starve the others.
+ * Bundles that have a deadline, from latency critical streams, are drained
+ * before the others in order of the deadline at the head of each lane.
+ * Barriers such as terminate tuples stay in the lane of the upstream task
+ * that sent them, behind that task's data. The input buffer size bounds the
+ * input as a whole, so it is divided evenly over the lanes, each of which
+ * holds at least {@link #MIN_LANE_CAPACITY} bundles.
  * @author aaron
  *
  */
 public class InputCollector {
 	/**
-	 * 
+	 * the name of the priority lane
+	 */
+	public static final String PRIORITY_LANE="priority";
+	
+	/**
+	 * the least number of bundles that a lane holds
 	 */
-	private final CircularBlockingQueue<Tuple[]> inputQueue;
+	public static final int MIN_LANE_CAPACITY=2;
 	
 	/**
 	 * 
 	 */
-	@SuppressWarnings("unused")
 	private final LocalCluster localCluster;
 	
 	/**
 	 * 
 	 */
-	@SuppressWarnings("unused")
 	private final Bolt bolt;
 	
+	/**
+	 * the capacity of each lane
+	 */
+	private final int capacity;
+	
+	/**
+	 * the lane for system tuples
+	 */
+	private final MpscArrayQueue<Tuple[]> priorityLane;
+	
+	/**
+	 * one lane per upstream task, and a last lane for any other sources
+	 */
+	private final MpscArrayQueue<Tuple[]>[] lanes;
+	
+	/**
+	 * the names of the lanes, being the upstream component and task
+	 */
+	private final String[] laneNames;
+	
+	/**
+	 * the index of the first lane of each upstream component
+	 */
+	private final HashMap<String,Integer> laneOffsets;
+	
+	/**
+	 * watermarks on the size of each lane, or null if backpressure
+	 * is not enabled
+	 */
+	private final Watermark[] watermarks;
+	
+	/**
+	 * the next lane to drain
+	 */
+	private int cursor=0;
+	
+	/**
+	 * the number of bundles over all lanes
+	 */
+	private final AtomicInteger available=new AtomicInteger(0);
+	
+	/**
+	 * the number of bundles over the upstream lanes that have a deadline
+	 */
+	private final AtomicInteger urgent=new AtomicInteger(0);
+	
+	/**
+	 * the bolt's thread while it waits for input
+	 */
+	private volatile Thread waiter;
+	
+	/**
+	 * set when the bolt should stop waiting for input, e.g. because a bundle
+	 * that it emitted on another thread expires earlier
+	 */
+	private volatile boolean woken;
+	
+	/**
+	 * Buffers that could not be delivered because the input queue was full.
+	 * They are rescheduled when the bolt takes from the input queue.
+	 */
+	private final ConcurrentLinkedQueue<NetworkTaskBuffer> parked;
+	
 	/**
 	 * @param localCluster
 	 * @param bolt
 	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public InputCollector(LocalCluster localCluster,Bolt bolt){
-		inputQueue=new CircularBlockingQueue<Tuple[]>(localCluster.getConf().getDragonInputBufferSize());
 		this.localCluster = localCluster;
 		this.bolt=bolt;
-		
+		laneOffsets=new HashMap<String,Integer>();
+		final DragonTopology topology=localCluster.getTopology();
+		final BoltDeclarer boltDeclarer=topology.getBoltMap().get(bolt.getComponentId());
+		final ArrayList<String> names=new ArrayList<String>();
+		for(String componentId : boltDeclarer.groupings.keySet()) {
+			laneOffsets.put(componentId, names.size());
+			int numTasks=topology.getSpoutMap().containsKey(componentId) ?
+					topology.getSpoutMap().get(componentId).getNumTasks() :
+					topology.getBoltMap().get(componentId).getNumTasks();
+			for(int i=0;i<numTasks;i++) names.add(componentId+":"+i);
+		}
+		names.add("other");
+		final int numLanes=names.size();
+		// the priority lane shares the input buffer size with the other lanes
+		capacity=Math.max(MIN_LANE_CAPACITY,localCluster.getConf().getDragonInputBufferSize()/(numLanes+1));
+		priorityLane=new MpscArrayQueue<Tuple[]>(capacity);
+		lanes=new MpscArrayQueue[numLanes];
+		laneNames=names.toArray(new String[numLanes]);
+		watermarks=new Watermark[numLanes];
+		for(int i=0;i<numLanes;i++) {
+			lanes[i]=new MpscArrayQueue<Tuple[]>(capacity);
+			watermarks[i]=localCluster.getBackpressure().newWatermark(bolt.getComponentId(),capacity);
+		}
+		parked=new ConcurrentLinkedQueue<NetworkTaskBuffer>();
+	}
+	
+	/**
+	 * 
+	 * @param tuples
+	 * @return the lane for the tuples, according to their source
+	 */
+	private int laneOf(Tuple[] tuples) {
+		final Tuple tuple=tuples[0];
+		final Integer offset=laneOffsets.get(tuple.getSourceComponent());
+		if(offset==null || tuple.getSourceTaskId()==null) return lanes.length-1;
+		return offset+tuple.getSourceTaskId();
+	}
+	
+	/**
+	 * 
+	 * @param componentId the upstream component
+	 * @param taskId the upstream task
+	 * @return true if the lane of the upstream task is full
+	 */
+	public boolean isFull(String componentId,int taskId) {
+		final Integer offset=laneOffsets.get(componentId);
+		final int lane=offset==null ? lanes.length-1 : offset+taskId;
+		return lanes[lane].size()>=capacity;
+	}
+	
+	/**
+	 * Wake the bolt if it is waiting for input.
+	 */
+	private void signal() {
+		final Thread w=waiter;
+		if(w!=null) LockSupport.unpark(w);
+	}
+	
+	/**
+	 * Make the bolt stop waiting for input, so that it returns from
+	 * {@link #poll(long, TimeUnit)} without tuples.
+	 */
+	public void wake() {
+		woken=true;
+		signal();
+	}
+	
+	/**
+	 * Offer tuples to the lane of their source, without waiting.
+	 * @param tuples
+	 * @return true if the tuples were placed on the lane
+	 */
+	public boolean offer(Tuple[] tuples) {
+		final int lane=laneOf(tuples);
+		if(lanes[lane].size()>=capacity || !lanes[lane].offer(tuples)) return false;
+		if(tuples[0].getDeadline()!=0) urgent.incrementAndGet();
+		available.incrementAndGet();
+		if(watermarks[lane]!=null) watermarks[lane].update(lanes[lane].size());
+		signal();
+		return true;
+	}
+	
+	/**
+	 * Offer system tuples to the priority lane, without waiting.
+	 * @param tuples
+	 * @return true if the tuples were placed on the priority lane
+	 */
+	public boolean offerPriority(Tuple[] tuples) {
+		if(priorityLane.size()>=capacity || !priorityLane.offer(tuples)) return false;
+		available.incrementAndGet();
+		signal();
+		return true;
+	}
+	
+	/**
+	 * Deliver system tuples to the priority lane, retrying on each tick of
+	 * the timing wheel while the lane is full, unless the bolt has closed.
+	 * @param tuples
+	 */
+	public void deliver(Tuple[] tuples) {
+		if(bolt.isClosed() || offerPriority(tuples)) return;
+		TimingWheel.inst().schedule(1,()->{
+			deliver(tuples);
+		});
+	}
+	
+	/**
+	 * 
+	 * @return the next bundle of tuples, from the priority lane if possible,
+	 * then from the upstream lane with the earliest deadline at its head, and
+	 * otherwise from the next upstream lane that is not empty, or null if all
+	 * lanes are empty
+	 */
+	private Tuple[] next() {
+		if(available.get()==0) return null;
+		Tuple[] tuples=priorityLane.poll();
+		if(tuples!=null) {
+			available.decrementAndGet();
+			return tuples;
+		}
+		if(urgent.get()>0) {
+			final int lane=earliest();
+			if(lane>=0) return take(lane);
+		}
+		for(int i=0;i<lanes.length;i++) {
+			final int lane=cursor;
+			cursor=cursor+1==lanes.length ? 0 : cursor+1;
+			tuples=take(lane);
+			if(tuples!=null) return tuples;
+		}
+		return null;
+	}
+	
+	/**
+	 * 
+	 * @return the upstream lane with the earliest deadline at its head, or -1
+	 * if no lane has a deadline at its head
+	 */
+	private int earliest() {
+		int earliest=-1;
+		long deadline=0;
+		for(int i=0;i<lanes.length;i++) {
+			final Tuple[] tuples=lanes[i].peek();
+			if(tuples==null) continue;
+			final long d=tuples[0].getDeadline();
+			if(d!=0 && (earliest<0 || d<deadline)) {
+				earliest=i;
+				deadline=d;
+			}
+		}
+		return earliest;
+	}
+	
+	/**
+	 * 
+	 * @param lane
+	 * @return the bundle at the head of the upstream lane, or null if it is empty
+	 */
+	private Tuple[] take(int lane) {
+		final Tuple[] tuples=lanes[lane].poll();
+		if(tuples==null) return null;
+		available.decrementAndGet();
+		if(tuples[0].getDeadline()!=0) urgent.decrementAndGet();
+		if(watermarks[lane]!=null) watermarks[lane].update(lanes[lane].size());
+		return tuples;
+	}
+	
+	/**
+	 * Take the next bundle of tuples, waiting up to the given time if there
+	 * are none. Called only by the bolt's thread.
+	 * @param timeout
+	 * @param unit
+	 * @return the tuples, or null if the time elapsed
+	 * @throws InterruptedException
+	 */
+	public Tuple[] poll(long timeout,TimeUnit unit) throws InterruptedException {
+		Tuple[] tuples=next();
+		if(tuples==null) {
+			final long deadline=System.nanoTime()+unit.toNanos(timeout);
+			waiter=Thread.currentThread();
+			try {
+				while((tuples=next())==null) {
+					long remaining=deadline-System.nanoTime();
+					if(remaining<=0) break;
+					if(woken) {
+						woken=false;
+						break;
+					}
+					LockSupport.parkNanos(this,remaining);
+					if(Thread.interrupted()) throw new InterruptedException();
+				}
+			} finally {
+				waiter=null;
+			}
+		}
+		relieve();
+		/*
+		 * there may now be space for network tasks that were parked
+		 * waiting on this bolt
+		 */
+		if(tuples!=null) unpark();
+		return tuples;
+	}
+	
+	/**
+	 * Check the lanes that are under pressure against their watermarks. A
+	 * sender may report a stale size after the last take from its lane, which
+	 * would otherwise leave the lane under pressure until the sender sends again,
+	 * and it may be throttled by that very pressure.
+	 */
+	private void relieve() {
+		for(int i=0;i<lanes.length;i++) {
+			if(watermarks[i]!=null && watermarks[i].isAbove()) watermarks[i].update(lanes[i].size());
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the number of bundles over all lanes
+	 */
+	public int size() {
+		return available.get();
+	}
+	
+	/**
+	 * 
+	 * @return the fraction of each lane's capacity that is occupied, by lane name
+	 */
+	public LinkedHashMap<String,Double> getLaneOccupancy() {
+		LinkedHashMap<String,Double> occupancy=new LinkedHashMap<String,Double>();
+		occupancy.put(PRIORITY_LANE, (double)priorityLane.size()/capacity);
+		for(int i=0;i<lanes.length;i++) {
+			occupancy.put(laneNames[i], (double)lanes[i].size()/capacity);
+		}
+		return occupancy;
+	}
+	
+	/**
+	 * 
+	 * @return the total time in nanoseconds that the lanes have been above
+	 * their high watermark, summed over the lanes
+	 */
+	public long getBackpressureNanos() {
+		long nanos=0;
+		for(Watermark watermark : watermarks) {
+			if(watermark!=null) nanos+=watermark.getNanos();
+		}
+		return nanos;
+	}
+	
+	/**
+	 * Park a buffer, that is still claimed by the caller, until the lane
+	 * for the tuples has space. If space became available while parking then
+	 * the buffer is rescheduled immediately.
+	 * @param buffer
+	 * @param tuples the tuples that could not be offered
+	 */
+	public void park(NetworkTaskBuffer buffer,Tuple[] tuples) {
+		parked.offer(buffer);
+		if(lanes[laneOf(tuples)].size()<capacity && parked.remove(buffer)) {
+			localCluster.outputResumed(buffer);
+		}
 	}
 	
 	/**
-	 * @return
+	 * Reschedule all parked buffers, called after taking from the input queue.
 	 */
-	public CircularBlockingQueue<Tuple[]> getQueue(){
-		return inputQueue;
+	public void unpark() {
+		if(parked.isEmpty()) return;
+		NetworkTaskBuffer buffer;
+		while((buffer=parked.poll())!=null) {
+			localCluster.outputResumed(buffer);
+		}
 	}
 }
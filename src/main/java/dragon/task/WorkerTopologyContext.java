@@ -2,10 +2,126 @@ package dragon.task;
 
 import java.io.Serializable;
 
+import dragon.network.NodeDescriptor;
+import dragon.topology.ComponentEmbedding;
+import dragon.topology.DragonTopology;
+import dragon.topology.RoutingTable;
+import dragon.topology.TaskLoad;
+
 /**
+ * The context in which a grouping is prepared on a local cluster, which tells
+ * the grouping where the tasks of the component that it targets are embedded.
  * @author aaron
  *
  */
 public class WorkerTopologyContext implements Serializable {
 	private static final long serialVersionUID = 7394201910935277705L;
+	
+	/**
+	 * 
+	 */
+	private final transient DragonTopology topology;
+	
+	/**
+	 * the descriptor of this node, or null if running in local mode
+	 */
+	private final NodeDescriptor desc;
+	
+	/**
+	 * 
+	 */
+	private final transient RoutingTable routingTable;
+	
+	/**
+	 * 
+	 */
+	private final transient TaskLoad taskLoad;
+	
+	/**
+	 * the component that the grouping targets
+	 */
+	private final String targetComponentId;
+	
+	/**
+	 * @param topology
+	 * @param desc the descriptor of this node, or null if running in local mode
+	 * @param routingTable
+	 * @param taskLoad
+	 * @param targetComponentId the component that the grouping targets
+	 */
+	public WorkerTopologyContext(DragonTopology topology,NodeDescriptor desc,
+			RoutingTable routingTable,TaskLoad taskLoad,String targetComponentId) {
+		this.topology=topology;
+		this.desc=desc;
+		this.routingTable=routingTable;
+		this.taskLoad=taskLoad;
+		this.targetComponentId=targetComponentId;
+	}
+	
+	/**
+	 * 
+	 * @return the descriptor of this node, or null if running in local mode
+	 */
+	public NodeDescriptor getThisNode() {
+		return desc;
+	}
+	
+	/**
+	 * 
+	 * @return the embedding of the topology, or null if running in local mode
+	 */
+	public ComponentEmbedding getEmbedding() {
+		return topology.getEmbedding();
+	}
+	
+	/**
+	 * 
+	 * @return the component that the grouping targets
+	 */
+	public String getTargetComponentId() {
+		return targetComponentId;
+	}
+	
+	/**
+	 * 
+	 * @param taskId a task of the target component
+	 * @return true if the task is embedded on this node
+	 */
+	public boolean isLocal(int taskId) {
+		final ComponentEmbedding embedding=getEmbedding();
+		if(embedding==null || desc==null) return true;
+		return desc.equals(embedding.get(targetComponentId).get(taskId));
+	}
+	
+	/**
+	 * The input collector of a task of the target component, which is only
+	 * available once the bolts have been allocated.
+	 * @param taskId a task of the target component
+	 * @return the input collector of the task, or null if the task is not
+	 * on this node or has not been allocated yet
+	 */
+	public InputCollector getInput(int taskId) {
+		return routingTable.getInput(routingTable.getComponentIndex(targetComponentId), taskId);
+	}
+	
+	/**
+	 * Track the input queue depths of the tasks of the target component, so
+	 * that they are reported by the nodes that the tasks are on.
+	 * @return the index of the target component, for {@link #getDepth(int, int)}
+	 */
+	public int trackLoad() {
+		taskLoad.track(targetComponentId);
+		return routingTable.getComponentIndex(targetComponentId);
+	}
+	
+	/**
+	 * 
+	 * @param component the index of the target component
+	 * @param taskId a task of the target component
+	 * @return the recent depth of the task's input queue
+	 * @see #trackLoad()
+	 */
+	public int getDepth(int component,int taskId) {
+		return taskLoad.getDepth(component, taskId);
+	}
 }
@@ -0,0 +1,384 @@
+package dragon.topology;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import dragon.Config;
+import dragon.network.Node;
+import dragon.network.NodeDescriptor;
+import dragon.network.comms.DragonCommsException;
+import dragon.network.messages.node.backpressure.BackpressureNMsg;
+import dragon.network.operations.Ops;
+import dragon.topology.base.Spout;
+import dragon.utils.TimingWheel;
+import dragon.utils.Watermark;
+
+/**
+ * Tracks the buffers of a topology on this local cluster that are above their
+ * high watermark, along with those reported by peers, and throttles the spouts
+ * that are upstream of them. A spout is throttled while any component that
+ * is downstream of it has a buffer under pressure. While a buffer that receives
+ * tuples from peers is under pressure, the pressure is reported to the peers
+ * again periodically, and a peer's report that is not refreshed in time
+ * expires, as do all of a peer's reports when the peer is removed.
+ * @author aaron
+ *
+ */
+public class Backpressure {
+	private final static Logger log = LogManager.getLogger(Backpressure.class);
+	
+	/**
+	 * 
+	 */
+	private final String topologyId;
+	
+	/**
+	 * 
+	 */
+	private final DragonTopology topology;
+	
+	/**
+	 * 
+	 */
+	private final RoutingTable routingTable;
+	
+	/**
+	 * the descriptor of this node, or null if running in local mode
+	 */
+	private final NodeDescriptor desc;
+	
+	/**
+	 * 
+	 */
+	private final boolean enabled;
+	
+	/**
+	 * the high watermark as a fraction of buffer capacity
+	 */
+	private final double high;
+	
+	/**
+	 * the low watermark as a fraction of buffer capacity
+	 */
+	private final double low;
+	
+	/**
+	 * for each component, the number of its buffers that are under pressure
+	 */
+	private final AtomicIntegerArray pressure;
+	
+	/**
+	 * for each component, the components that are downstream of it
+	 */
+	private final int[][] downstream;
+	
+	/**
+	 * for each component, the local spouts that are upstream of it
+	 */
+	private final ArrayList<CopyOnWriteArrayList<Spout>> upstreamSpouts;
+	
+	/**
+	 * the period in ms at which pressure is reported again, or zero if it is not
+	 */
+	private final long refresh;
+	
+	/**
+	 * for each component id, the number of buffers that receive tuples from
+	 * peers that are under pressure
+	 */
+	private final HashMap<String,Integer> reporting;
+	
+	/**
+	 * for each peer, the components that it has reported as under pressure
+	 * and the time in ms of the last report
+	 */
+	private final HashMap<NodeDescriptor,HashMap<String,Long>> remote;
+	
+	/**
+	 * 
+	 */
+	private TimingWheel.Timeout timeout;
+	
+	/**
+	 * @param topologyId
+	 * @param topology
+	 * @param routingTable
+	 * @param desc the descriptor of this node, or null if running in local mode
+	 * @param conf
+	 */
+	public Backpressure(String topologyId,DragonTopology topology,RoutingTable routingTable,
+			NodeDescriptor desc,Config conf) {
+		this.topologyId=topologyId;
+		this.topology=topology;
+		this.routingTable=routingTable;
+		this.desc=desc;
+		enabled=conf.getDragonBackpressureEnabled();
+		high=conf.getDragonBackpressureHighWatermark();
+		low=conf.getDragonBackpressureLowWatermark();
+		refresh=conf.getDragonBackpressureRefreshMs();
+		int n=routingTable.getNumComponents();
+		pressure=new AtomicIntegerArray(n);
+		downstream=new int[n][];
+		upstreamSpouts=new ArrayList<CopyOnWriteArrayList<Spout>>();
+		for(int i=0;i<n;i++) {
+			upstreamSpouts.add(new CopyOnWriteArrayList<Spout>());
+			// depth first search of the components reachable from i
+			boolean[] reached=new boolean[n];
+			ArrayList<Integer> stack=new ArrayList<Integer>();
+			ArrayList<Integer> found=new ArrayList<Integer>();
+			stack.add(i);
+			while(!stack.isEmpty()) {
+				int c=stack.remove(stack.size()-1);
+				for(Route route : routingTable.getRoutes(c)) {
+					if(!reached[route.destIndex]) {
+						reached[route.destIndex]=true;
+						found.add(route.destIndex);
+						stack.add(route.destIndex);
+					}
+				}
+			}
+			downstream[i]=new int[found.size()];
+			for(int j=0;j<found.size();j++) downstream[i][j]=found.get(j);
+		}
+		reporting=new HashMap<String,Integer>();
+		remote=new HashMap<NodeDescriptor,HashMap<String,Long>>();
+	}
+	
+	/**
+	 * Start reporting pressure again periodically and expiring the reports
+	 * of peers that are not refreshed, if there are peers.
+	 */
+	public synchronized void start() {
+		if(!enabled || desc==null || refresh<=0 || timeout!=null) return;
+		timeout=TimingWheel.inst().schedule(refresh,refresh,this::refresh);
+	}
+	
+	/**
+	 * Stop reporting.
+	 */
+	public synchronized void cancel() {
+		if(timeout!=null) timeout.cancel();
+	}
+	
+	/**
+	 * 
+	 * @return true if backpressure is enabled
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Create a watermark for a buffer that holds tuples for a component, which
+	 * throttles the spouts upstream of the component while it is under pressure.
+	 * @param componentId the component that the buffer holds tuples for
+	 * @param capacity the capacity of the buffer
+	 * @return the watermark, or null if backpressure is not enabled
+	 */
+	public Watermark newWatermark(String componentId,int capacity) {
+		if(!enabled) return null;
+		final int c=routingTable.getComponentIndex(componentId);
+		return new Watermark(capacity,high,low,(on)->{
+			if(on) {
+				congested(c);
+			} else {
+				relieved(c);
+			}
+		});
+	}
+	
+	/**
+	 * Create a watermark for a buffer that receives tuples from peers for a
+	 * component, which reports the pressure to the peers.
+	 * @param componentId the component that the buffer holds tuples for
+	 * @param capacity the capacity of the buffer
+	 * @return the watermark, or null if backpressure is not enabled
+	 */
+	public Watermark newRemoteWatermark(String componentId,int capacity) {
+		if(!enabled) return null;
+		return new Watermark(capacity,high,low,(on)->{
+			boolean changed;
+			synchronized(reporting) {
+				int count=reporting.getOrDefault(componentId,0)+(on ? 1 : -1);
+				changed = on ? count==1 : count==0;
+				if(count>0) {
+					reporting.put(componentId, count);
+				} else {
+					reporting.remove(componentId);
+				}
+			}
+			if(changed) report(componentId,on);
+		});
+	}
+	
+	/**
+	 * Register a spout to be woken when the pressure on the components downstream
+	 * of it clears.
+	 * @param spout
+	 */
+	public void addSpout(Spout spout) {
+		int s=routingTable.getComponentIndex(spout.getComponentId());
+		for(int c : downstream[s]) {
+			upstreamSpouts.get(c).add(spout);
+		}
+	}
+	
+	/**
+	 * 
+	 * @param component the index of the spout
+	 * @return true if a component downstream of the spout is under pressure
+	 */
+	public boolean isThrottled(int component) {
+		for(int c : downstream[component]) {
+			if(pressure.get(c)>0) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * 
+	 * @param component
+	 * @return true if the component has buffers that are under pressure
+	 */
+	public boolean isUnderPressure(int component) {
+		return pressure.get(component)>0;
+	}
+	
+	/**
+	 * A buffer for the component has come under pressure.
+	 * @param component
+	 */
+	private void congested(int component) {
+		pressure.incrementAndGet(component);
+	}
+	
+	/**
+	 * A buffer for the component is no longer under pressure, so wake the
+	 * spouts upstream of the component.
+	 * @param component
+	 */
+	private void relieved(int component) {
+		if(pressure.decrementAndGet(component)==0) {
+			for(Spout spout : upstreamSpouts.get(component)) {
+				spout.wake();
+			}
+		}
+	}
+	
+	/**
+	 * Report to peers that a buffer for the component has come under pressure, or
+	 * that the pressure has cleared.
+	 * @param componentId
+	 * @param on
+	 */
+	private void report(String componentId,boolean on) {
+		if(desc==null) return;
+		final Node node = Node.inst();
+		Ops.inst().newOp((op)->{
+			for(NodeDescriptor peer : topology.getReverseEmbedding().keySet()) {
+				if(peer.equals(desc)) continue;
+				try {
+					node.getComms().sendNodeMsg(peer, new BackpressureNMsg(topologyId,componentId,on));
+				} catch (DragonCommsException e) {
+					log.error("could not report backpressure to ["+peer+"]");
+				}
+			}
+		}, (op)->{
+			op.success();
+		}, (op)->{
+			log.debug("reported backpressure ["+on+"] on ["+componentId+"]");
+		}, (op,error)->{
+			log.warn(error);
+		});
+	}
+	
+	/**
+	 * Report again the components whose buffers that receive tuples from peers
+	 * are under pressure, and expire the reports of peers that have not been
+	 * refreshed for three periods.
+	 */
+	private void refresh() {
+		final ArrayList<String> componentIds;
+		synchronized(reporting) {
+			componentIds=new ArrayList<String>(reporting.keySet());
+		}
+		for(String componentId : componentIds) {
+			report(componentId,true);
+		}
+		final long expired=System.currentTimeMillis()-3*refresh;
+		final ArrayList<String> relieved=new ArrayList<String>();
+		synchronized(remote) {
+			for(Map.Entry<NodeDescriptor,HashMap<String,Long>> reports : remote.entrySet()) {
+				Iterator<Map.Entry<String,Long>> it=reports.getValue().entrySet().iterator();
+				while(it.hasNext()) {
+					Map.Entry<String,Long> report=it.next();
+					if(report.getValue()-expired<0) {
+						log.warn("pressure on ["+report.getKey()+"] reported by ["+reports.getKey()+
+								"] has not been refreshed, expiring it");
+						relieved.add(report.getKey());
+						it.remove();
+					}
+				}
+			}
+		}
+		for(String componentId : relieved) {
+			relieved(routingTable.getComponentIndex(componentId));
+		}
+	}
+	
+	/**
+	 * A peer has reported that its buffers for the component have come under
+	 * pressure, or that the pressure has cleared.
+	 * @param peer
+	 * @param componentId
+	 * @param on
+	 */
+	public void remote(NodeDescriptor peer,String componentId,boolean on) {
+		if(!enabled) return;
+		final int c=routingTable.getComponentIndex(componentId);
+		boolean changed;
+		synchronized(remote) {
+			HashMap<String,Long> reports=remote.get(peer);
+			if(on) {
+				if(reports==null) {
+					reports=new HashMap<String,Long>();
+					remote.put(peer, reports);
+				}
+				changed = reports.put(componentId, System.currentTimeMillis())==null;
+			} else {
+				changed = reports!=null && reports.remove(componentId)!=null;
+			}
+		}
+		if(changed) {
+			if(on) {
+				congested(c);
+			} else {
+				relieved(c);
+			}
+		}
+	}
+	
+	/**
+	 * Clear the pressure that a peer has reported, when it has faulted or
+	 * has been removed.
+	 * @param peer
+	 */
+	public void removePeer(NodeDescriptor peer) {
+		final HashMap<String,Long> reports;
+		synchronized(remote) {
+			reports=remote.remove(peer);
+		}
+		if(reports==null) return;
+		for(String componentId : reports.keySet()) {
+			log.info("clearing pressure on ["+componentId+"] reported by ["+peer+"]");
+			relieved(routingTable.getComponentIndex(componentId));
+		}
+	}
+}
@@ -8,8 +8,15 @@ import org.apache.logging.log4j.Logger;
 import dragon.Constants;
 import dragon.grouping.AbstractGrouping;
 import dragon.grouping.AllGrouping;
+import dragon.grouping.Combiner;
+import dragon.grouping.ConsistentHashGrouping;
 import dragon.grouping.DirectGrouping;
 import dragon.grouping.FieldGrouping;
+import dragon.grouping.Filter;
+import dragon.grouping.FilteredGrouping;
+import dragon.grouping.LoadAwareShuffleGrouping;
+import dragon.grouping.LocalOrShuffleGrouping;
+import dragon.grouping.PartialKeyGrouping;
 import dragon.grouping.ShuffleGrouping;
 import dragon.topology.base.Bolt;
 import dragon.tuple.Fields;
@@ -37,6 +44,19 @@ public class BoltDeclarer extends Declarer {
 	 */
 	public HashMap<String,StreamMap> groupings;
 	
+	/**
+	 * the names of the fields that this bolt consumes of the streams that it
+	 * listens to, by component and stream, where a stream that is not listed
+	 * is consumed in full
+	 */
+	private HashMap<String,HashMap<String,String[]>> projections;
+	
+	/**
+	 * the combiners of the streams that this bolt listens to, by component
+	 * and stream
+	 */
+	private HashMap<String,HashMap<String,Combiner>> combiners;
+	
 	/**
 	 * @return
 	 */
@@ -53,12 +73,32 @@ public class BoltDeclarer extends Declarer {
 		return this;
 	}
 	
+	/* (non-Javadoc)
+	 * @see dragon.topology.Declarer#setDeadline(long)
+	 */
+	@Override
+	public BoltDeclarer setDeadline(long deadline) {
+		super.setDeadline(deadline);
+		return this;
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.topology.Declarer#setDeadline(java.lang.String, long)
+	 */
+	@Override
+	public BoltDeclarer setDeadline(String streamId,long deadline) {
+		super.setDeadline(streamId,deadline);
+		return this;
+	}
+	
 	/**
 	 * @param parallelismHint
 	 */
 	public BoltDeclarer(int parallelismHint) {
 		super(parallelismHint);
 		groupings=new HashMap<String,StreamMap>();
+		projections=new HashMap<String,HashMap<String,String[]>>();
+		combiners=new HashMap<String,HashMap<String,Combiner>>();
 	}
 	
 	/**
@@ -68,6 +108,8 @@ public class BoltDeclarer extends Declarer {
 	public BoltDeclarer(Bolt bolt, int parallelismHint) {
 		super(parallelismHint);
 		groupings=new HashMap<String,StreamMap>();
+		projections=new HashMap<String,HashMap<String,String[]>>();
+		combiners=new HashMap<String,HashMap<String,Combiner>>();
 		this.bolt=bolt;
 	}
 	
@@ -97,6 +139,45 @@ public class BoltDeclarer extends Declarer {
 		hs.add(grouping);
 	}
 	
+	/**
+	 * Declare the fields that this bolt reads from the default stream of a
+	 * component, so that the emitter sends only those fields and this bolt
+	 * sees tuples with just those fields.
+	 * @param componentId
+	 * @param fields
+	 * @return
+	 */
+	public BoltDeclarer consumes(String componentId, Fields fields) {
+		return consumes(componentId,Constants.DEFAULT_STREAM,fields);
+	}
+	
+	/**
+	 * @param componentId
+	 * @param streamId
+	 * @param fields
+	 * @return
+	 * @see #consumes(String, Fields)
+	 */
+	public BoltDeclarer consumes(String componentId, String streamId, Fields fields) {
+		if(!projections.containsKey(componentId)) {
+			projections.put(componentId, new HashMap<String,String[]>());
+		}
+		projections.get(componentId).put(streamId, fields.getFieldNames());
+		return this;
+	}
+	
+	/**
+	 * 
+	 * @param componentId
+	 * @param streamId
+	 * @return the names of the fields that this bolt consumes of the stream,
+	 * or null if it consumes all of them
+	 */
+	public String[] getProjection(String componentId, String streamId) {
+		if(!projections.containsKey(componentId)) return null;
+		return projections.get(componentId).get(streamId);
+	}
+	
 	/**
 	 * @param componentId
 	 * @return
@@ -116,6 +197,75 @@ public class BoltDeclarer extends Declarer {
 		return this;
 	}
 	
+	/**
+	 * Shuffle the tuples that the filter accepts, where the filter is evaluated
+	 * by the emitter so that rejected tuples are never sent.
+	 * @param componentId
+	 * @param filter
+	 * @return
+	 */
+	public BoltDeclarer shuffleGrouping(String componentId, Filter filter) {
+		put(componentId,new FilteredGrouping(new ShuffleGrouping(),filter));
+		return this;
+	}
+	
+	/**
+	 * @param componentId
+	 * @param streamId
+	 * @param filter
+	 * @return
+	 * @see #shuffleGrouping(String, Filter)
+	 */
+	public BoltDeclarer shuffleGrouping(String componentId, String streamId, Filter filter) {
+		put(componentId,streamId,new FilteredGrouping(new ShuffleGrouping(),filter));
+		return this;
+	}
+	
+	/**
+	 * Shuffle over the tasks of this bolt that are on the same node as the
+	 * emitter, falling back to the other tasks when there are none or when
+	 * their inputs are full.
+	 * @param componentId
+	 * @return
+	 */
+	public BoltDeclarer localOrShuffleGrouping(String componentId) {
+		put(componentId,new LocalOrShuffleGrouping());
+		return this;
+	}
+	
+	/**
+	 * @param componentId
+	 * @param streamId
+	 * @return
+	 * @see #localOrShuffleGrouping(String)
+	 */
+	public BoltDeclarer localOrShuffleGrouping(String componentId, String streamId) {
+		put(componentId,streamId,new LocalOrShuffleGrouping());
+		return this;
+	}
+	
+	/**
+	 * Shuffle over the tasks of this bolt by the power of two choices, sending
+	 * each tuple to the less loaded of two random tasks.
+	 * @param componentId
+	 * @return
+	 */
+	public BoltDeclarer loadAwareShuffleGrouping(String componentId) {
+		put(componentId,new LoadAwareShuffleGrouping());
+		return this;
+	}
+	
+	/**
+	 * @param componentId
+	 * @param streamId
+	 * @return
+	 * @see #loadAwareShuffleGrouping(String)
+	 */
+	public BoltDeclarer loadAwareShuffleGrouping(String componentId, String streamId) {
+		put(componentId,streamId,new LoadAwareShuffleGrouping());
+		return this;
+	}
+	
 	/**
 	 * @param componentId
 	 * @return
@@ -135,6 +285,30 @@ public class BoltDeclarer extends Declarer {
 		return this;
 	}
 	
+	/**
+	 * Send all of the tuples that the filter accepts to every task, where the
+	 * filter is evaluated by the emitter so that rejected tuples are never sent.
+	 * @param componentId
+	 * @param filter
+	 * @return
+	 */
+	public BoltDeclarer allGrouping(String componentId, Filter filter) {
+		put(componentId,new FilteredGrouping(new AllGrouping(),filter));
+		return this;
+	}
+	
+	/**
+	 * @param componentId
+	 * @param streamId
+	 * @param filter
+	 * @return
+	 * @see #allGrouping(String, Filter)
+	 */
+	public BoltDeclarer allGrouping(String componentId, String streamId, Filter filter) {
+		put(componentId,streamId,new FilteredGrouping(new AllGrouping(),filter));
+		return this;
+	}
+	
 	/**
 	 * @param componentId
 	 * @param fields
@@ -156,6 +330,188 @@ public class BoltDeclarer extends Declarer {
 		return this;
 	}
 	
+	/**
+	 * Group by the key fields of the combiner, where the emitter combines the
+	 * tuples of each key over the tuple bundle linger time and sends only the
+	 * combined tuples, so this bolt receives partial aggregates.
+	 * @param componentId
+	 * @param combiner
+	 * @return
+	 */
+	public BoltDeclarer fieldsGrouping(String componentId, Combiner combiner) {
+		return fieldsGrouping(componentId,Constants.DEFAULT_STREAM,combiner);
+	}
+	
+	/**
+	 * @param componentId
+	 * @param streamId
+	 * @param combiner
+	 * @return
+	 * @see #fieldsGrouping(String, Combiner)
+	 */
+	public BoltDeclarer fieldsGrouping(String componentId, String streamId, Combiner combiner) {
+		put(componentId,streamId,new FieldGrouping(combiner));
+		if(!combiners.containsKey(componentId)) {
+			combiners.put(componentId, new HashMap<String,Combiner>());
+		}
+		combiners.get(componentId).put(streamId, combiner);
+		return this;
+	}
+	
+	/**
+	 * 
+	 * @param componentId
+	 * @param streamId
+	 * @return the combiner of the stream, or null if its tuples are not combined
+	 */
+	public Combiner getCombiner(String componentId, String streamId) {
+		if(!combiners.containsKey(componentId)) return null;
+		return combiners.get(componentId).get(streamId);
+	}
+	
+	/**
+	 * @param componentId
+	 * @param streamId
+	 * @param fields
+	 * @param keyGroups the number of key groups that keys are hashed into, which
+	 * should be at least the largest number of tasks the bolt will have
+	 * @return
+	 */
+	public BoltDeclarer fieldsGrouping(String componentId, String streamId, Fields fields, int keyGroups) {
+		put(componentId,streamId,new FieldGrouping(fields,keyGroups));
+		return this;
+	}
+	
+	/**
+	 * Group the tuples that the filter accepts by the given fields, where the
+	 * filter is evaluated by the emitter so that rejected tuples are never sent.
+	 * @param componentId
+	 * @param fields
+	 * @param filter
+	 * @return
+	 */
+	public BoltDeclarer fieldsGrouping(String componentId, Fields fields, Filter filter) {
+		put(componentId,new FilteredGrouping(new FieldGrouping(fields),filter));
+		return this;
+	}
+	
+	/**
+	 * @param componentId
+	 * @param streamId
+	 * @param fields
+	 * @param filter
+	 * @return
+	 * @see #fieldsGrouping(String, Fields, Filter)
+	 */
+	public BoltDeclarer fieldsGrouping(String componentId, String streamId, Fields fields, Filter filter) {
+		put(componentId,streamId,new FilteredGrouping(new FieldGrouping(fields),filter));
+		return this;
+	}
+	
+	/**
+	 * Group by the given fields over a consistent hash ring of the tasks of this
+	 * bolt, so that changing the tasks the keys are spread over at runtime
+	 * moves only the keys of the tasks that are added or removed.
+	 * @param componentId
+	 * @param fields
+	 * @return
+	 * @see HashRings#setTasks(String, String, String, java.util.Collection)
+	 */
+	public BoltDeclarer consistentHashGrouping(String componentId, Fields fields) {
+		put(componentId,new ConsistentHashGrouping(fields));
+		return this;
+	}
+	
+	/**
+	 * @param componentId
+	 * @param streamId
+	 * @param fields
+	 * @return
+	 * @see #consistentHashGrouping(String, Fields)
+	 */
+	public BoltDeclarer consistentHashGrouping(String componentId, String streamId, Fields fields) {
+		put(componentId,streamId,new ConsistentHashGrouping(fields));
+		return this;
+	}
+	
+	/**
+	 * @param componentId
+	 * @param streamId
+	 * @param fields
+	 * @param virtualNodes the number of points of each task on the ring
+	 * @return
+	 * @see #consistentHashGrouping(String, Fields)
+	 */
+	public BoltDeclarer consistentHashGrouping(String componentId, String streamId, Fields fields, int virtualNodes) {
+		put(componentId,streamId,new ConsistentHashGrouping(fields,virtualNodes));
+		return this;
+	}
+	
+	/**
+	 * Group by the given fields, where each key is split over two tasks of this
+	 * bolt by load, so that hot keys do not saturate a single task. The partial
+	 * results of each key should be merged downstream, for instance by a
+	 * {@link dragon.topology.base.PartialMergeBolt}.
+	 * @param componentId
+	 * @param fields
+	 * @return
+	 */
+	public BoltDeclarer partialKeyGrouping(String componentId, Fields fields) {
+		put(componentId,new PartialKeyGrouping(fields));
+		return this;
+	}
+	
+	/**
+	 * @param componentId
+	 * @param streamId
+	 * @param fields
+	 * @return
+	 * @see #partialKeyGrouping(String, Fields)
+	 */
+	public BoltDeclarer partialKeyGrouping(String componentId, String streamId, Fields fields) {
+		put(componentId,streamId,new PartialKeyGrouping(fields));
+		return this;
+	}
+
+	/**
+	 * Group by the given fields, where the emitter samples the keys and splits a
+	 * key whose share of the stream exceeds the topology's
+	 * {@link dragon.Config#TOPOLOGY_HOTKEY_THRESHOLD} over enough tasks of this
+	 * bolt to even out their load. This breaks the affinity of a hot key to a
+	 * single task, so the partial results of each key should be merged
+	 * downstream, for instance by a {@link dragon.topology.base.PartialMergeBolt}.
+	 * @param componentId
+	 * @param fields
+	 * @return
+	 */
+	public BoltDeclarer hotKeyGrouping(String componentId, Fields fields) {
+		return hotKeyGrouping(componentId,Constants.DEFAULT_STREAM,fields,FieldGrouping.TOPOLOGY_HOTKEY_THRESHOLD);
+	}
+	
+	/**
+	 * @param componentId
+	 * @param streamId
+	 * @param fields
+	 * @return
+	 * @see #hotKeyGrouping(String, Fields)
+	 */
+	public BoltDeclarer hotKeyGrouping(String componentId, String streamId, Fields fields) {
+		return hotKeyGrouping(componentId,streamId,fields,FieldGrouping.TOPOLOGY_HOTKEY_THRESHOLD);
+	}
+	
+	/**
+	 * @param componentId
+	 * @param streamId
+	 * @param fields
+	 * @param threshold the share of the stream above which a key is split
+	 * @return
+	 * @see #hotKeyGrouping(String, Fields)
+	 */
+	public BoltDeclarer hotKeyGrouping(String componentId, String streamId, Fields fields, double threshold) {
+		put(componentId,streamId,new FieldGrouping(fields,FieldGrouping.DEFAULT_KEY_GROUPS,threshold));
+		return this;
+	}
+
 	/**
 	 * @param componentId
 	 * @param customStreamGrouping
@@ -177,6 +533,21 @@ public class BoltDeclarer extends Declarer {
 		return this;
 	}
 	
+	/**
+	 * Apply a custom grouping to the tuples that the filter accepts, where the
+	 * filter is evaluated by the emitter so that rejected tuples are never sent.
+	 * @param componentId
+	 * @param streamId
+	 * @param customStreamGrouping
+	 * @param filter
+	 * @return
+	 */
+	public BoltDeclarer customGrouping(String componentId, String streamId, AbstractGrouping customStreamGrouping,
+			Filter filter) {
+		put(componentId,streamId,new FilteredGrouping(customStreamGrouping,filter));
+		return this;
+	}
+	
 	/**
 	 * @param componentId
 	 * @return
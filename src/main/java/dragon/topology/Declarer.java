@@ -1,6 +1,7 @@
 package dragon.topology;
 
 import java.io.Serializable;
+import java.util.HashMap;
 
 /**
  * @author aaron
@@ -19,6 +20,18 @@ public class Declarer implements Serializable {
 	 */
 	private int parallelismHint;
 	
+	/**
+	 * the deadline in ms of tuples emitted by the component, or zero if
+	 * the component is not latency critical
+	 */
+	private long deadline=0;
+	
+	/**
+	 * deadlines in ms of particular streams of the component, that override
+	 * the deadline of the component
+	 */
+	private HashMap<String,Long> streamDeadlines;
+	
 	/**
 	 * @param parallelismHint
 	 */
@@ -36,6 +49,46 @@ public class Declarer implements Serializable {
 		return this;
 	}
 	
+	/**
+	 * Declare the component as latency critical. Each tuple that it emits
+	 * must be executed within the given time of being emitted, as must the
+	 * tuples that are emitted while executing it, and the node gives such
+	 * tuples earliest deadline first treatment.
+	 * @param deadline the deadline in ms
+	 * @return
+	 */
+	public Declarer setDeadline(long deadline) {
+		this.deadline=deadline;
+		return this;
+	}
+	
+	/**
+	 * Declare a stream of the component as latency critical.
+	 * @param streamId
+	 * @param deadline the deadline in ms
+	 * @return
+	 * @see #setDeadline(long)
+	 */
+	public Declarer setDeadline(String streamId,long deadline) {
+		if(streamDeadlines==null) streamDeadlines=new HashMap<String,Long>();
+		streamDeadlines.put(streamId, deadline);
+		return this;
+	}
+	
+	/**
+	 * 
+	 * @param streamId
+	 * @return the deadline in ms of tuples emitted on the stream, or zero
+	 * if the stream is not latency critical
+	 */
+	public long getDeadline(String streamId) {
+		if(streamDeadlines!=null) {
+			Long d=streamDeadlines.get(streamId);
+			if(d!=null) return d;
+		}
+		return deadline;
+	}
+	
 	/**
 	 * @return
 	 */
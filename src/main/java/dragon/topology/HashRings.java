@@ -0,0 +1,213 @@
+package dragon.topology;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import dragon.grouping.AbstractGrouping;
+import dragon.grouping.ConsistentHashGrouping;
+import dragon.grouping.HashRing;
+import dragon.network.Node;
+import dragon.network.NodeDescriptor;
+import dragon.network.comms.DragonCommsException;
+import dragon.network.messages.node.ring.RingNMsg;
+import dragon.network.operations.Ops;
+
+/**
+ * The hash rings of the consistent hash groupings of a topology on this local
+ * cluster. A change of the tasks that a ring spreads keys over is given a
+ * version that is later than any this local cluster has seen, and is sent to
+ * the peers. Every daemon applies a ring only if its version is later than
+ * that of the ring it has, ordering rings of the same version by the daemon
+ * that made them, so the daemons agree on the ring regardless of the order
+ * in which changes arrive.
+ * @author aaron
+ *
+ */
+public class HashRings {
+	private final static Logger log = LogManager.getLogger(HashRings.class);
+	
+	/**
+	 * 
+	 */
+	private final String topologyId;
+	
+	/**
+	 * 
+	 */
+	private final DragonTopology topology;
+	
+	/**
+	 * 
+	 */
+	private final RoutingTable routingTable;
+	
+	/**
+	 * the descriptor of this node, or null if running in local mode
+	 */
+	private final NodeDescriptor desc;
+	
+	/**
+	 * the latest version of any ring that this local cluster has seen
+	 */
+	private long clock=0;
+	
+	/**
+	 * @param topologyId
+	 * @param topology
+	 * @param routingTable
+	 * @param desc the descriptor of this node, or null if running in local mode
+	 */
+	public HashRings(String topologyId,DragonTopology topology,RoutingTable routingTable,
+			NodeDescriptor desc) {
+		this.topologyId=topologyId;
+		this.topology=topology;
+		this.routingTable=routingTable;
+		this.desc=desc;
+	}
+	
+	/**
+	 * 
+	 * @param sourceComponentId
+	 * @param streamId
+	 * @param destComponentId
+	 * @return the consistent hash groupings of the stream from the source
+	 * component to the destination component, which may be empty
+	 */
+	private List<ConsistentHashGrouping> groupings(String sourceComponentId,String streamId,
+			String destComponentId) {
+		final List<ConsistentHashGrouping> groupings=new ArrayList<ConsistentHashGrouping>();
+		if(!topology.getSpoutMap().containsKey(sourceComponentId) &&
+				!topology.getBoltMap().containsKey(sourceComponentId)) return groupings;
+		for(AbstractGrouping grouping : routingTable.getGroupings(sourceComponentId, streamId, destComponentId)) {
+			if(grouping instanceof ConsistentHashGrouping) groupings.add((ConsistentHashGrouping)grouping);
+		}
+		return groupings;
+	}
+	
+	/**
+	 * Spread the keys of the stream from the source component to the destination
+	 * component over the given tasks, on this local cluster and on the peers.
+	 * @param sourceComponentId
+	 * @param streamId
+	 * @param destComponentId
+	 * @param taskIds the tasks to spread the keys over, which must be tasks
+	 * of the destination component
+	 * @return the version of the ring
+	 */
+	public long setTasks(String sourceComponentId,String streamId,String destComponentId,
+			Collection<Integer> taskIds) {
+		final List<ConsistentHashGrouping> groupings=groupings(sourceComponentId,streamId,destComponentId);
+		if(groupings.isEmpty()) {
+			throw new IllegalArgumentException("there is no consistent hash grouping from ["+
+					sourceComponentId+"] on stream ["+streamId+"] to ["+destComponentId+"] on this daemon");
+		}
+		final int[] tasks=groupings.get(0).checkTasks(taskIds);
+		final long version;
+		synchronized(this) {
+			version=++clock;
+		}
+		final String origin=desc==null ? "" : desc.toString();
+		apply(sourceComponentId,streamId,destComponentId,tasks,version,origin);
+		report(sourceComponentId,streamId,destComponentId,tasks,version,origin);
+		return version;
+	}
+	
+	/**
+	 * A peer has changed the tasks of a ring.
+	 * @param sourceComponentId
+	 * @param streamId
+	 * @param destComponentId
+	 * @param tasks
+	 * @param version
+	 * @param origin the daemon that made the ring
+	 */
+	public void remote(String sourceComponentId,String streamId,String destComponentId,
+			int[] tasks,long version,String origin) {
+		synchronized(this) {
+			clock=Math.max(clock,version);
+		}
+		apply(sourceComponentId,streamId,destComponentId,tasks,version,origin);
+	}
+	
+	/**
+	 * Replace the ring of the groupings, if the version is later than theirs.
+	 * @param sourceComponentId
+	 * @param streamId
+	 * @param destComponentId
+	 * @param tasks
+	 * @param version
+	 * @param origin
+	 */
+	private void apply(String sourceComponentId,String streamId,String destComponentId,
+			int[] tasks,long version,String origin) {
+		for(ConsistentHashGrouping grouping : groupings(sourceComponentId,streamId,destComponentId)) {
+			if(grouping.setTasks(tasks, version, origin)) {
+				log.info("ring from ["+sourceComponentId+"] on stream ["+streamId+"] to ["+
+						destComponentId+"] is now version ["+version+"]");
+			}
+		}
+	}
+	
+	/**
+	 * Send a ring to the peers.
+	 * @param sourceComponentId
+	 * @param streamId
+	 * @param destComponentId
+	 * @param tasks
+	 * @param version
+	 * @param origin
+	 */
+	private void report(String sourceComponentId,String streamId,String destComponentId,
+			int[] tasks,long version,String origin) {
+		if(desc==null) return;
+		final Node node = Node.inst();
+		Ops.inst().newOp((op)->{
+			for(NodeDescriptor peer : topology.getReverseEmbedding().keySet()) {
+				if(peer.equals(desc)) continue;
+				try {
+					node.getComms().sendNodeMsg(peer, new RingNMsg(topologyId,sourceComponentId,
+							streamId,destComponentId,tasks,version,origin));
+				} catch (DragonCommsException e) {
+					log.error("could not send ring to ["+peer+"]");
+				}
+			}
+		}, (op)->{
+			op.success();
+		}, (op)->{
+			log.debug("sent ring version ["+version+"] to peers");
+		}, (op,error)->{
+			log.warn(error);
+		});
+	}
+	
+	/**
+	 * 
+	 * @param sourceComponentId
+	 * @param streamId
+	 * @param destComponentId
+	 * @return the consistent hash grouping of the stream from the source
+	 * component to the destination component, or null if there is none
+	 */
+	public ConsistentHashGrouping getGrouping(String sourceComponentId,String streamId,
+			String destComponentId) {
+		final List<ConsistentHashGrouping> groupings=groupings(sourceComponentId,streamId,destComponentId);
+		return groupings.isEmpty() ? null : groupings.get(0);
+	}
+	
+	/**
+	 * 
+	 * @param sourceComponentId
+	 * @param streamId
+	 * @param destComponentId
+	 * @return the live ring of the stream from the source component to the
+	 * destination component, or null if it has no consistent hash grouping
+	 */
+	public HashRing getRing(String sourceComponentId,String streamId,String destComponentId) {
+		final ConsistentHashGrouping grouping=getGrouping(sourceComponentId,streamId,destComponentId);
+		return grouping==null ? null : grouping.getRing();
+	}
+}
@@ -4,6 +4,8 @@ import java.util.HashMap;
 
 import dragon.Constants;
 import dragon.LocalCluster;
+import dragon.grouping.AbstractGrouping;
+import dragon.grouping.DirectGrouping;
 import dragon.tuple.Fields;
 
 /**
@@ -52,6 +54,29 @@ public class OutputFieldsDeclarer {
 		}
 	}
 	
+	/**
+	 * Check that the stream is direct grouped by all of its subscribers if it
+	 * is declared direct, and by none of them otherwise.
+	 * @param streamId
+	 * @param direct
+	 */
+	private void checkDirect(String streamId, boolean direct) {
+		if(streamId.equals(Constants.SYSTEM_STREAM_ID)) return;
+		final DestComponentMap destComponentMap=localCluster.getTopology().getDestComponentMap(componentId);
+		if(destComponentMap==null) return;
+		for(String component2Id : destComponentMap.keySet()) {
+			final GroupingsSet groupingSet=destComponentMap.get(component2Id).get(streamId);
+			if(groupingSet==null) continue;
+			for(AbstractGrouping grouping : groupingSet) {
+				if((grouping instanceof DirectGrouping)!=direct) {
+					throw new IllegalArgumentException("["+component2Id+"] subscribes to stream ["+
+							streamId+"] of ["+componentId+"] with "+(direct ? "a grouping that is not direct" :
+							"a direct grouping")+", but the stream is "+(direct ? "" : "not ")+"declared direct");
+				}
+			}
+		}
+	}
+	
 	/**
 	 * @param fields
 	 */
@@ -64,11 +89,7 @@ public class OutputFieldsDeclarer {
 	 * @param fields
 	 */
 	public void declare(boolean direct,Fields fields) {
-		//if(direct==false){
-			declare(Constants.DEFAULT_STREAM,fields);
-		//} else {
-			directStreamFields.put(Constants.DEFAULT_STREAM,fields);
-		//}
+		declareStream(Constants.DEFAULT_STREAM,direct,fields);
 	}
 	
 	/**
@@ -76,6 +97,7 @@ public class OutputFieldsDeclarer {
 	 * @param fields
 	 */
 	public void declare(String streamId,Fields fields) {
+		checkDirect(streamId,false);
 		streamFields.put(streamId, fields);
 		setFieldsForGrouping(streamId, fields);
 	}
@@ -97,6 +119,7 @@ public class OutputFieldsDeclarer {
 		if(!direct){
 			declare(streamId,fields);
 		} else {
+			checkDirect(streamId,true);
 			directStreamFields.put(streamId, fields);
 		}
 	}
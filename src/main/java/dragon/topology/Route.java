@@ -0,0 +1,109 @@
+package dragon.topology;
+
+import dragon.grouping.AbstractGrouping;
+import dragon.grouping.Combiner;
+import dragon.grouping.FieldGrouping;
+
+/**
+ * A compiled route from a source component, on a given stream, to a destination
+ * component. Each route of a source component has its own slot number, that
+ * the source uses to index its output queues and tuple bundles directly.
+ * @author aaron
+ *
+ */
+public class Route {
+	
+	/**
+	 * the slot number of this route, unique over the routes of the source component
+	 */
+	public final int slot;
+	
+	/**
+	 * the index of the destination component in the routing table
+	 */
+	public final int destIndex;
+	
+	/**
+	 * the destination component id
+	 */
+	public final String destComponentId;
+	
+	/**
+	 * the stream id
+	 */
+	public final String streamId;
+	
+	/**
+	 * the number of tasks of the destination component
+	 */
+	public final int numTasks;
+	
+	/**
+	 * the groupings for this stream to the destination component
+	 */
+	public final AbstractGrouping[] groupings;
+	
+	/**
+	 * the groupings of the system stream to the destination component
+	 */
+	public final AbstractGrouping[] systemGroupings;
+	
+	/**
+	 * for each task of the destination component, whether it is on this
+	 * local cluster
+	 */
+	public final boolean[] local;
+	
+	/**
+	 * the names of the fields of the stream that the destination component
+	 * consumes, or null if it consumes all of them
+	 */
+	public final String[] projection;
+	
+	/**
+	 * the combiner of the tuples sent to the destination component, or null
+	 * if they are not combined
+	 */
+	public final Combiner combiner;
+	
+	/**
+	 * the index of the fields grouping whose tuples the combiner combines, or
+	 * -1 if they are not combined
+	 */
+	public final int combinedGrouping;
+	
+	/**
+	 * @param slot
+	 * @param destIndex
+	 * @param destComponentId
+	 * @param streamId
+	 * @param groupings
+	 * @param systemGroupings
+	 * @param local
+	 * @param projection the names of the fields that the destination component
+	 * consumes, or null if it consumes all of them
+	 * @param combiner the combiner of the tuples, or null if they are not combined
+	 */
+	public Route(int slot,int destIndex,String destComponentId,String streamId,
+			AbstractGrouping[] groupings,AbstractGrouping[] systemGroupings,boolean[] local,
+			String[] projection,Combiner combiner) {
+		this.slot=slot;
+		this.destIndex=destIndex;
+		this.destComponentId=destComponentId;
+		this.streamId=streamId;
+		this.numTasks=local.length;
+		this.groupings=groupings;
+		this.systemGroupings=systemGroupings;
+		this.local=local;
+		this.projection=projection;
+		int combined=-1;
+		for(int g=0;g<groupings.length && combiner!=null;g++) {
+			if(groupings[g] instanceof FieldGrouping && ((FieldGrouping)groupings[g]).getCombiner()!=null) {
+				combined=g;
+				break;
+			}
+		}
+		this.combiner=combined<0 ? null : combiner;
+		this.combinedGrouping=combined;
+	}
+}
@@ -0,0 +1,213 @@
+package dragon.topology;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import dragon.Constants;
+import dragon.grouping.AbstractGrouping;
+import dragon.network.NodeDescriptor;
+import dragon.task.InputCollector;
+import dragon.topology.base.Bolt;
+
+/**
+ * A routing table compiled from a {@link DragonTopology} when it is submitted.
+ * Components are given dense integer indices and the routes out of each
+ * component, per stream, are held in arrays, so that emitting a tuple needs
+ * no lookups in maps of strings. The table also records which tasks are on
+ * this local cluster and, once the bolts have been allocated, the input
+ * collectors of the local tasks.
+ * @author aaron
+ *
+ */
+public class RoutingTable {
+	
+	/**
+	 * returned for streams that have no subscribers
+	 */
+	private static final Route[] NO_ROUTES = new Route[0];
+	
+	/**
+	 * component id to component index
+	 */
+	private final HashMap<String,Integer> componentIndex;
+	
+	/**
+	 * component index to component id
+	 */
+	private final String[] componentIds;
+	
+	/**
+	 * for each component and task, whether the task is on this local cluster
+	 */
+	private final boolean[][] local;
+	
+	/**
+	 * for each component and task, the input collector of the task if it
+	 * is a local bolt
+	 */
+	private final InputCollector[][] inputs;
+	
+	/**
+	 * for each source component, the routes of each stream
+	 */
+	private final ArrayList<HashMap<String,Route[]>> streamRoutes;
+	
+	/**
+	 * for each source component, all of its routes indexed by slot
+	 */
+	private final Route[][] routes;
+	
+	/**
+	 * @param topology the topology to compile
+	 * @param desc the descriptor of this node, or null if running in local mode
+	 */
+	public RoutingTable(DragonTopology topology, NodeDescriptor desc) {
+		componentIndex = new HashMap<String,Integer>();
+		ArrayList<String> ids = new ArrayList<String>(topology.getSpoutMap().keySet());
+		ids.addAll(topology.getBoltMap().keySet());
+		componentIds = ids.toArray(new String[0]);
+		local = new boolean[componentIds.length][];
+		inputs = new InputCollector[componentIds.length][];
+		for(int i=0;i<componentIds.length;i++) {
+			String componentId = componentIds[i];
+			componentIndex.put(componentId, i);
+			int numTasks = topology.getSpoutMap().containsKey(componentId) ?
+					topology.getSpoutMap().get(componentId).getNumTasks() :
+					topology.getBoltMap().get(componentId).getNumTasks();
+			local[i] = new boolean[numTasks];
+			inputs[i] = new InputCollector[numTasks];
+			for(int t=0;t<numTasks;t++) {
+				local[i][t] = topology.getReverseEmbedding()==null ||
+						topology.getReverseEmbedding().contains(desc,componentId,t);
+			}
+		}
+		streamRoutes = new ArrayList<HashMap<String,Route[]>>();
+		routes = new Route[componentIds.length][];
+		for(int i=0;i<componentIds.length;i++) {
+			HashMap<String,ArrayList<Route>> byStream = new HashMap<String,ArrayList<Route>>();
+			ArrayList<Route> slots = new ArrayList<Route>();
+			DestComponentMap destComponentMap = topology.getDestComponentMap(componentIds[i]);
+			if(destComponentMap!=null) {
+				for(String destId : destComponentMap.keySet()) {
+					StreamMap streamMap = destComponentMap.get(destId);
+					int destIndex = componentIndex.get(destId);
+					AbstractGrouping[] systemGroupings = streamMap.containsKey(Constants.SYSTEM_STREAM_ID) ?
+							streamMap.get(Constants.SYSTEM_STREAM_ID).toArray(new AbstractGrouping[0]) :
+							new AbstractGrouping[0];
+					for(String streamId : streamMap.keySet()) {
+						Route route = new Route(slots.size(),destIndex,destId,streamId,
+								streamMap.get(streamId).toArray(new AbstractGrouping[0]),
+								systemGroupings,local[destIndex],
+								topology.getBoltMap().get(destId).getProjection(componentIds[i], streamId),
+								topology.getBoltMap().get(destId).getCombiner(componentIds[i], streamId));
+						slots.add(route);
+						if(!byStream.containsKey(streamId)) {
+							byStream.put(streamId, new ArrayList<Route>());
+						}
+						byStream.get(streamId).add(route);
+					}
+				}
+			}
+			routes[i] = slots.toArray(NO_ROUTES);
+			HashMap<String,Route[]> compiled = new HashMap<String,Route[]>();
+			for(String streamId : byStream.keySet()) {
+				compiled.put(streamId, byStream.get(streamId).toArray(NO_ROUTES));
+			}
+			streamRoutes.add(compiled);
+		}
+	}
+	
+	/**
+	 * Record the input collectors of the bolts that are on this local cluster.
+	 * @param bolts the bolts allocated on this local cluster
+	 */
+	public void bind(HashMap<String,HashMap<Integer,Bolt>> bolts) {
+		for(String boltId : bolts.keySet()) {
+			int i = componentIndex.get(boltId);
+			for(Integer taskId : bolts.get(boltId).keySet()) {
+				inputs[i][taskId] = bolts.get(boltId).get(taskId).getInputCollector();
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @param componentId
+	 * @return the index of the component
+	 */
+	public int getComponentIndex(String componentId) {
+		return componentIndex.get(componentId);
+	}
+	
+	/**
+	 * 
+	 * @param index
+	 * @return the id of the component with the given index
+	 */
+	public String getComponentId(int index) {
+		return componentIds[index];
+	}
+	
+	/**
+	 * 
+	 * @return the number of components
+	 */
+	public int getNumComponents() {
+		return componentIds.length;
+	}
+	
+	/**
+	 * 
+	 * @param source the index of the source component
+	 * @return all routes out of the source component, indexed by slot
+	 */
+	public Route[] getRoutes(int source) {
+		return routes[source];
+	}
+	
+	/**
+	 * 
+	 * @param source the index of the source component
+	 * @param streamId
+	 * @return the routes out of the source component on the stream, which may be empty
+	 */
+	public Route[] getRoutes(int source, String streamId) {
+		Route[] r = streamRoutes.get(source).get(streamId);
+		return r==null ? NO_ROUTES : r;
+	}
+	
+	/**
+	 * 
+	 * @param sourceComponentId
+	 * @param streamId
+	 * @param destComponentId
+	 * @return the groupings that this local cluster uses for the stream from
+	 * the source component to the destination component, which may be empty
+	 */
+	public AbstractGrouping[] getGroupings(String sourceComponentId, String streamId, String destComponentId) {
+		for(Route route : getRoutes(getComponentIndex(sourceComponentId), streamId)) {
+			if(route.destComponentId.equals(destComponentId)) return route.groupings;
+		}
+		return new AbstractGrouping[0];
+	}
+	
+	/**
+	 * 
+	 * @param component
+	 * @param taskId
+	 * @return true if the task is on this local cluster
+	 */
+	public boolean isLocal(int component, int taskId) {
+		return local[component][taskId];
+	}
+	
+	/**
+	 * 
+	 * @param component
+	 * @param taskId
+	 * @return the input collector of the local bolt task, or null if the task is not local
+	 */
+	public InputCollector getInput(int component, int taskId) {
+		return inputs[component][taskId];
+	}
+}
@@ -45,4 +45,31 @@ public class SpoutDeclarer extends Declarer {
 		return spout;
 	}
 	
+	/* (non-Javadoc)
+	 * @see dragon.topology.Declarer#setNumTasks(int)
+	 */
+	@Override
+	public SpoutDeclarer setNumTasks(int numTasks) {
+		super.setNumTasks(numTasks);
+		return this;
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.topology.Declarer#setDeadline(long)
+	 */
+	@Override
+	public SpoutDeclarer setDeadline(long deadline) {
+		super.setDeadline(deadline);
+		return this;
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.topology.Declarer#setDeadline(java.lang.String, long)
+	 */
+	@Override
+	public SpoutDeclarer setDeadline(String streamId,long deadline) {
+		super.setDeadline(streamId,deadline);
+		return this;
+	}
+	
 }
@@ -0,0 +1,203 @@
+package dragon.topology;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import dragon.Config;
+import dragon.network.Node;
+import dragon.network.NodeDescriptor;
+import dragon.network.comms.DragonCommsException;
+import dragon.network.messages.node.load.LoadNMsg;
+import dragon.network.operations.Ops;
+import dragon.task.InputCollector;
+import dragon.utils.TimingWheel;
+
+/**
+ * The input queue depths of the tasks of a topology, for load aware groupings.
+ * The depth of a task on this local cluster is read from its input collector,
+ * while the depth of a task on another node is the last depth reported by
+ * that node. The depths of the local tasks of the components that load aware
+ * groupings target are reported to the peers periodically, when they change.
+ * @author aaron
+ *
+ */
+public class TaskLoad {
+	private final static Logger log = LogManager.getLogger(TaskLoad.class);
+	
+	/**
+	 * 
+	 */
+	private final String topologyId;
+	
+	/**
+	 * 
+	 */
+	private final DragonTopology topology;
+	
+	/**
+	 * 
+	 */
+	private final RoutingTable routingTable;
+	
+	/**
+	 * the descriptor of this node, or null if running in local mode
+	 */
+	private final NodeDescriptor desc;
+	
+	/**
+	 * 
+	 */
+	private final long period;
+	
+	/**
+	 * for each component, the depths last reported by peers for its tasks
+	 */
+	private final AtomicIntegerArray[] reported;
+	
+	/**
+	 * for each component, whether a load aware grouping targets it
+	 */
+	private final boolean[] tracked;
+	
+	/**
+	 * the depths of the local tasks in the last report, by component id
+	 */
+	private HashMap<String,int[]> lastReport;
+	
+	/**
+	 * 
+	 */
+	private TimingWheel.Timeout timeout;
+	
+	/**
+	 * @param topologyId
+	 * @param topology
+	 * @param routingTable
+	 * @param desc the descriptor of this node, or null if running in local mode
+	 * @param conf
+	 */
+	public TaskLoad(String topologyId,DragonTopology topology,RoutingTable routingTable,
+			NodeDescriptor desc,Config conf) {
+		this.topologyId=topologyId;
+		this.topology=topology;
+		this.routingTable=routingTable;
+		this.desc=desc;
+		period=conf.getDragonLoadReportPeriodMs();
+		int n=routingTable.getNumComponents();
+		reported=new AtomicIntegerArray[n];
+		tracked=new boolean[n];
+		lastReport=new HashMap<String,int[]>();
+	}
+	
+	/**
+	 * Track the depths of the tasks of a component, which a load aware
+	 * grouping targets.
+	 * @param componentId
+	 */
+	public synchronized void track(String componentId) {
+		final int c=routingTable.getComponentIndex(componentId);
+		if(tracked[c]) return;
+		int numTasks=topology.getBoltMap().get(componentId).getNumTasks();
+		reported[c]=new AtomicIntegerArray(numTasks);
+		tracked[c]=true;
+	}
+	
+	/**
+	 * Start reporting the depths of local tasks to peers, if any component
+	 * is tracked and there are peers.
+	 */
+	public synchronized void start() {
+		if(desc==null || period<=0 || timeout!=null) return;
+		boolean any=false;
+		for(boolean t : tracked) any|=t;
+		if(!any) return;
+		timeout=TimingWheel.inst().schedule(period,period,this::report);
+	}
+	
+	/**
+	 * Stop reporting.
+	 */
+	public synchronized void cancel() {
+		if(timeout!=null) timeout.cancel();
+	}
+	
+	/**
+	 * 
+	 * @param component the index of a tracked component
+	 * @param taskId
+	 * @return the depth of the task's input queue, in bundles of tuples
+	 */
+	public int getDepth(int component,int taskId) {
+		final InputCollector input=routingTable.getInput(component, taskId);
+		if(input!=null) return input.size();
+		return reported[component].get(taskId);
+	}
+	
+	/**
+	 * Report the depths of the local tasks of the tracked components to
+	 * the peers, if they have changed since the last report.
+	 */
+	private void report() {
+		final HashMap<String,int[]> depths=new HashMap<String,int[]>();
+		for(int c=0;c<tracked.length;c++) {
+			if(!tracked[c]) continue;
+			final int[] d=new int[reported[c].length()];
+			boolean local=false;
+			for(int t=0;t<d.length;t++) {
+				final InputCollector input=routingTable.getInput(c, t);
+				if(input==null) {
+					d[t]=-1;
+				} else {
+					d[t]=input.size();
+					local=true;
+				}
+			}
+			if(local) depths.put(routingTable.getComponentId(c), d);
+		}
+		if(depths.isEmpty()) return;
+		boolean changed=depths.size()!=lastReport.size();
+		for(String componentId : depths.keySet()) {
+			if(changed) break;
+			changed=!Arrays.equals(depths.get(componentId), lastReport.get(componentId));
+		}
+		if(!changed) return;
+		lastReport=depths;
+		final Node node = Node.inst();
+		Ops.inst().newOp((op)->{
+			for(NodeDescriptor peer : topology.getReverseEmbedding().keySet()) {
+				if(peer.equals(desc)) continue;
+				try {
+					node.getComms().sendNodeMsg(peer, new LoadNMsg(topologyId,depths));
+				} catch (DragonCommsException e) {
+					log.error("could not report load to ["+peer+"]");
+				}
+			}
+		}, (op)->{
+			op.success();
+		}, (op)->{
+			log.debug("reported load of ["+depths.keySet()+"]");
+		}, (op,error)->{
+			log.warn(error);
+		});
+	}
+	
+	/**
+	 * A peer has reported the depths of its tasks.
+	 * @param depths the depths of the peer's tasks by component id, where
+	 * tasks that are not on the peer have a negative depth
+	 */
+	public void remote(HashMap<String,int[]> depths) {
+		for(String componentId : depths.keySet()) {
+			final int c=routingTable.getComponentIndex(componentId);
+			if(!tracked[c]) continue;
+			final int[] d=depths.get(componentId);
+			for(int t=0;t<d.length && t<reported[c].length();t++) {
+				if(d[t]>=0) reported[c].set(t, d[t]);
+			}
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package dragon.topology.base;
+
+/**
+ * Chooses the size and linger time of tuple bundles for a single destination
+ * component and stream, from the observed arrival rate of tuples and a latency
+ * target. When tuples arrive slowly the bundles are small and are transmitted
+ * almost immediately, while under load the bundles grow, up to the maximum
+ * bundle size, as long as they can be filled within the latency target.
+ * @author aaron
+ *
+ */
+public class AdaptiveBundler {
+
+	/**
+	 * weight given to the most recent inter-arrival time
+	 */
+	private static final double ALPHA=0.125;
+
+	/**
+	 * the largest bundle that will be chosen
+	 */
+	private final int maxSize;
+
+	/**
+	 * the most time in nanoseconds that a bundle may linger, being the
+	 * smaller of the maximum linger time and the latency target
+	 */
+	private final long budgetNanos;
+
+	/**
+	 * the time of the last arrival
+	 */
+	private long lastArrival;
+
+	/**
+	 * moving average of the time between arrivals, in nanoseconds
+	 */
+	private double interArrivalNanos;
+
+	/**
+	 * the expire time given to the most recent bundle
+	 */
+	private long lastExpire;
+
+	/**
+	 * the currently chosen bundle size
+	 */
+	private int size;
+
+	/**
+	 * the currently chosen linger time in nanoseconds
+	 */
+	private long lingerNanos;
+
+	/**
+	 * @param maxSize the largest bundle size to use
+	 * @param maxLingerNanos the longest linger time to use
+	 * @param sloNanos the latency target
+	 */
+	public AdaptiveBundler(int maxSize,long maxLingerNanos,long sloNanos) {
+		this.maxSize=maxSize;
+		budgetNanos=Math.max(1,Math.min(maxLingerNanos,sloNanos));
+		lastArrival=System.nanoTime()-budgetNanos;
+		lastExpire=lastArrival;
+		interArrivalNanos=budgetNanos;
+		size=1;
+		lingerNanos=0;
+	}
+
+	/**
+	 * Record the arrival of a tuple and update the bundle size and linger time.
+	 * @param now the time of arrival, from {@link System#nanoTime()}
+	 * @param bundles the number of bundles that the arrivals are spread over
+	 */
+	public void arrival(long now,int bundles) {
+		long delta=now-lastArrival;
+		lastArrival=now;
+		if(delta>=budgetNanos) {
+			// idle, so the past rate is no longer relevant
+			interArrivalNanos=delta;
+		} else {
+			interArrivalNanos+=ALPHA*(delta-interArrivalNanos);
+		}
+		double perBundle=Math.max(interArrivalNanos,1.0)*Math.max(bundles,1);
+		size=(int)Math.max(1,Math.min(maxSize,budgetNanos/perBundle));
+		lingerNanos=size==1?0:(long)Math.min(budgetNanos,size*perBundle);
+	}
+
+	/**
+	 * The expire time for a new bundle. Expire times never decrease, so
+	 * that bundles to the same destination and stream expire in the order
+	 * they were created.
+	 * @param now the current time, from {@link System#nanoTime()}
+	 * @return the expire time
+	 */
+	public long expireTime(long now) {
+		lastExpire=Math.max(lastExpire,now+lingerNanos);
+		return lastExpire;
+	}
+
+	/**
+	 *
+	 * @return the currently chosen bundle size
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 *
+	 * @return the currently chosen linger time in nanoseconds
+	 */
+	public long getLingerNanos() {
+		return lingerNanos;
+	}
+}
@@ -1,19 +1,26 @@
 package dragon.topology.base;
 
-import java.time.Instant;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import dragon.Constants;
 import dragon.LocalCluster;
 import dragon.task.InputCollector;
 import dragon.task.OutputCollector;
 import dragon.task.TopologyContext;
 import dragon.topology.OutputFieldsDeclarer;
+import dragon.tuple.CompletionTracker;
+import dragon.tuple.Fields;
 import dragon.tuple.Tuple;
+import dragon.tuple.Values;
+import dragon.utils.TimingWheel;
 
 /**
  * @author aaron
@@ -28,15 +35,30 @@ public class Bolt extends Component {
 	private static final Logger log = LogManager.getLogger(Bolt.class);
 	
 	/**
-	 * 
+	 * The fields of a timer tuple.
 	 */
-	private Tuple tickTuple=null;
+	private static final Fields timerFields=new Fields("timer","callback");
 	
 	/**
 	 * 
 	 */
 	private long processed=0;
 	
+	/**
+	 * the number of tuples that were executed after their deadline
+	 */
+	private long deadlineMissed=0;
+	
+	/**
+	 * true if the bolt overrides {@link #executeBatch(Tuple[], int)}
+	 */
+	private boolean batched;
+	
+	/**
+	 * the index of the bolt in the routing table, once it is needed
+	 */
+	private int componentIndex=-1;
+	
 	/**
 	 * 
 	 */
@@ -48,11 +70,14 @@ public class Bolt extends Component {
 	private HashSet<String> upstreamComponents;
 	
 	/**
-	 * @param tuple
+	 * the timers that are registered and have not yet run, by id
 	 */
-	public final void setTickTuple(Tuple tuple) {
-		tickTuple=tuple;
-	}
+	private transient ConcurrentHashMap<Long,TimingWheel.Timeout> timers;
+	
+	/**
+	 * 
+	 */
+	private transient AtomicLong nextTimerId;
 	
 	/* (non-Javadoc)
 	 * @see dragon.topology.base.Component#run()
@@ -60,18 +85,13 @@ public class Bolt extends Component {
 	@Override
 	public final void run() {
 		Tuple[] tuples;
-		long now=Instant.now().toEpochMilli();
+		long now=System.nanoTime();
 		if(closed)return;
-		if(tickTuple!=null) {
-			tuples=new Tuple[] {tickTuple};
-			tickTuple=null;
-		} else {
-			try {
-				// poll, but timeout at a time when a bundle will expire
-				tuples = getInputCollector().getQueue().poll(Math.max(getOutputCollector().getNextExpire()-now,1),TimeUnit.MILLISECONDS);
-			} catch (InterruptedException e) {
-				return;
-			}
+		try {
+			// poll, but timeout at a time when a bundle will expire
+			tuples = getInputCollector().poll(Math.max(getOutputCollector().getNextExpire()-now,1000),TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			return;
 		}
 		if(tuples!=null) {
 			/*
@@ -81,9 +101,34 @@ public class Bolt extends Component {
 				Tuple tuple = tuples[i];
 				switch(tuple.getType()) {
 				case APPLICATION:{
+					/*
+					 * a run of consecutive application tuples is given to the
+					 * bolt as a single batch
+					 */
+					int count=1;
+					if(batched) {
+						while(i+count<tuples.length && tuples[i+count]!=null &&
+								tuples[i+count].getType()==Tuple.Type.APPLICATION) count++;
+					}
+					/*
+					 * tuples emitted while executing tracked tuples are anchored
+					 * to the last of them
+					 */
+					final Tuple anchor=lastTracked(tuples,i,count);
+					if(anchor!=null) getOutputCollector().setAnchor(anchor);
+					/*
+					 * tuples emitted while executing tuples that have deadlines
+					 * inherit the earliest of them
+					 */
+					final long deadline=earliestDeadline(tuples,i,count);
+					if(deadline!=0) getOutputCollector().setInheritedDeadline(deadline);
 					getOutputCollector().resetEmit();
 					try {
-						execute(tuple);
+						if(batched) {
+							executeBatch(i==0?tuples:Arrays.copyOfRange(tuples,i,i+count),count);
+						} else {
+							execute(tuple);
+						}
 					} catch (DragonEmitRuntimeException e) {
 						/*
 						 * Such exceptions generally catch user code that is not behaving according
@@ -112,7 +157,24 @@ public class Bolt extends Component {
 							getLocalCluster().componentException(this,e.toString(),e.getStackTrace());
 						}
 					}
-					processed++;
+					if(anchor!=null) executed(tuples,i,count,anchor,getOutputCollector().clearAnchor());
+					if(deadline!=0) getOutputCollector().setInheritedDeadline(0);
+					processed+=count;
+					i+=count-1;
+					break;
+				}
+				case TIMER:{
+					if(timers.remove((Long)tuple.getValue(0))==null) break;
+					getOutputCollector().resetEmit();
+					try {
+						((Runnable)tuple.getValue(1)).run();
+					} catch (Throwable e) {
+						e.printStackTrace();
+						log.error(e.getMessage());
+						if(getLocalCluster().getState()==LocalCluster.State.RUNNING) {
+							getLocalCluster().componentException(this,e.toString(),e.getStackTrace());
+						}
+					}
 					break;
 				}
 				case CHECKPOINT:{
@@ -154,6 +216,7 @@ public class Bolt extends Component {
 							log.error("exception thrown when closing: "+e.getMessage());
 						}
 						log.debug("closed");
+						cancelTimers();
 						/*
 						 * push the terminate tuple down the stream
 						 */
@@ -172,12 +235,69 @@ public class Bolt extends Component {
 		/*
 		 * check tuple bundles for expiration
 		 */
-		now=Instant.now().toEpochMilli();
-		if(getOutputCollector().getNextExpire()<=now) {
+		now=System.nanoTime();
+		if(getOutputCollector().getNextExpire()-now<=0) {
 			getOutputCollector().expireTupleBundles();
 		}
 	}
 	
+	/**
+	 * 
+	 * @param tuples
+	 * @param from
+	 * @param count
+	 * @return the last of the tuples that is tracked, or null if none are
+	 */
+	private Tuple lastTracked(Tuple[] tuples,int from,int count) {
+		for(int i=from+count-1;i>=from;i--) {
+			if(tuples[i].getTracker()!=null) return tuples[i];
+		}
+		return null;
+	}
+	
+	/**
+	 * Find the earliest deadline of the tuples, counting those whose deadline
+	 * has already passed.
+	 * @param tuples
+	 * @param from
+	 * @param count
+	 * @return the earliest deadline, or zero if none of the tuples have one
+	 */
+	private long earliestDeadline(Tuple[] tuples,int from,int count) {
+		long earliest=0;
+		long now=0;
+		for(int i=from;i<from+count;i++) {
+			final long deadline=tuples[i].getDeadline();
+			if(deadline==0) continue;
+			if(now==0) now=System.currentTimeMillis();
+			if(deadline<now) deadlineMissed++;
+			if(earliest==0 || deadline<earliest) earliest=deadline;
+		}
+		return earliest;
+	}
+	
+	/**
+	 * Record that the tracked tuples have been executed, along with the edges of
+	 * the tuples that were anchored to them.
+	 * @param tuples
+	 * @param from
+	 * @param count
+	 * @param anchor the tuple that emitted tuples were anchored to
+	 * @param anchored the XOR of the edges of the anchored tuples
+	 */
+	private void executed(Tuple[] tuples,int from,int count,Tuple anchor,long anchored) {
+		if(componentIndex<0) {
+			componentIndex=getLocalCluster().getRoutingTable().getComponentIndex(getComponentId());
+		}
+		for(int i=from;i<from+count;i++) {
+			final Tuple tuple=tuples[i];
+			if(tuple.getTracker()==null) continue;
+			long edges=CompletionTracker.edge(tuple.getEdge(),componentIndex,getTaskId());
+			if(tuple==anchor) edges^=anchored;
+			tuple.getTracker().update(tuple.getTrackerTree(),edges);
+		}
+	}
+	
 	/**
 	 * @param conf
 	 * @param context
@@ -195,6 +315,24 @@ public class Bolt extends Component {
 		
 	}
 	
+	/**
+	 * Execute a batch of tuples. By default each tuple is given to
+	 * {@link #execute(Tuple)} in turn. Bolts that override this method are given
+	 * runs of application tuples, as they arrive in bundles, and may amortize
+	 * their work over the batch, e.g. by emitting with
+	 * {@link dragon.topology.base.Collector#emitBatch(String, Object[][])}.
+	 * The array may be longer than the batch and must not be kept by the bolt.
+	 * When tuple trees are tracked, tuples emitted during the batch are anchored
+	 * to the last tracked tuple of the batch.
+	 * @param tuples
+	 * @param count the number of tuples in the batch
+	 */
+	public void executeBatch(Tuple[] tuples,int count) {
+		for(int i=0;i<count;i++) {
+			execute(tuples[i]);
+		}
+	}
+	
 	/**
 	 * 
 	 */
@@ -202,6 +340,48 @@ public class Bolt extends Component {
 		
 	}
 	
+	/**
+	 * Register a timer that runs a callback after a delay. The callback is
+	 * run on the bolt's thread, between tuples, so it may emit. The timer
+	 * is delivered through the bolt's priority lane, ahead of the data.
+	 * @param delay the delay in ms
+	 * @param callback
+	 * @return the id of the timer
+	 */
+	public final long registerTimer(long delay,Runnable callback) {
+		final long id=nextTimerId.getAndIncrement();
+		final Tuple tuple=new Tuple(timerFields,new Values(id,callback));
+		tuple.setSourceComponent(Constants.SYSTEM_COMPONENT_ID);
+		tuple.setSourceStreamId(Constants.SYSTEM_TIMER_STREAM_ID);
+		tuple.setType(Tuple.Type.TIMER);
+		timers.put(id, TimingWheel.inst().schedule(delay,()->{
+			getInputCollector().deliver(new Tuple[] {tuple});
+		}));
+		return id;
+	}
+	
+	/**
+	 * Cancel a timer, if it has not yet run.
+	 * @param id the id of the timer
+	 * @return true if the timer was cancelled before it ran
+	 */
+	public final boolean cancelTimer(long id) {
+		final TimingWheel.Timeout timeout=timers.remove(id);
+		if(timeout==null) return false;
+		timeout.cancel();
+		return true;
+	}
+	
+	/**
+	 * Cancel all timers that have not yet run.
+	 */
+	private void cancelTimers() {
+		for(TimingWheel.Timeout timeout : timers.values()) {
+			timeout.cancel();
+		}
+		timers.clear();
+	}
+	
 	/**
 	 * @param declarer
 	 */
@@ -215,7 +395,15 @@ public class Bolt extends Component {
 	public final void setInputCollector(InputCollector inputCollector) {
 		upstreamComponents=new HashSet<String>();
 		processed=0;
-		tickTuple=null;
+		deadlineMissed=0;
+		timers=new ConcurrentHashMap<Long,TimingWheel.Timeout>();
+		nextTimerId=new AtomicLong(0);
+		try {
+			batched=getClass().getMethod("executeBatch",Tuple[].class,int.class)
+					.getDeclaringClass()!=Bolt.class;
+		} catch (NoSuchMethodException e) {
+			batched=false;
+		}
 		this.inputCollector = inputCollector;
 	}
 	
@@ -233,4 +421,12 @@ public class Bolt extends Component {
 		return processed;
 	}
 	
+	/**
+	 * 
+	 * @return the number of tuples that were executed after their deadline
+	 */
+	public final long getDeadlineMissed() {
+		return deadlineMissed;
+	}
+	
 }
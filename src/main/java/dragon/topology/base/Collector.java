@@ -1,12 +1,18 @@
 package dragon.topology.base;
 
-import java.time.Instant;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Objects;
 import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -14,18 +20,29 @@ import org.apache.logging.log4j.Logger;
 import dragon.Constants;
 import dragon.LocalCluster;
 import dragon.grouping.AbstractGrouping;
+import dragon.grouping.Combiner;
+import dragon.grouping.DirectGrouping;
+import dragon.grouping.FieldGrouping;
+import dragon.grouping.FilteredGrouping;
 import dragon.network.Router;
-import dragon.topology.DestComponentMap;
-import dragon.topology.GroupingsSet;
-import dragon.topology.StreamMap;
+import dragon.topology.Declarer;
+import dragon.topology.Route;
+import dragon.topology.RoutingTable;
+import dragon.tuple.CompletionTracker;
 import dragon.tuple.Fields;
 import dragon.tuple.NetworkTask;
 import dragon.tuple.Tuple;
 import dragon.tuple.Values;
 import dragon.utils.ComponentTaskBuffer;
+import dragon.utils.HotKeys;
 import dragon.utils.NetworkTaskBuffer;
 
 /**
+ * Tuples that are emitted are placed into tuple bundles, which are held in an
+ * emit buffer until they are full or expire. Normally all emits share a
+ * single emit buffer. In concurrent mode each emitting thread has its own emit
+ * buffer, so that threads emitting at the same time do not contend; tuple
+ * order is then preserved per emitting thread, destination task and stream.
  * @author aaron
  *
  */
@@ -55,7 +72,7 @@ public class Collector {
 	/**
 	 * 
 	 */
-	private boolean emitted;
+	private volatile boolean emitted;
 	
 	/**
 	 * 
@@ -63,60 +80,968 @@ public class Collector {
 	private final Router router;
 	
 	/**
+	 * the compiled routing table of the topology
+	 */
+	private final RoutingTable routingTable;
+	
+	/**
+	 * the index of this component in the routing table
+	 */
+	private final int componentIndex;
+	
+	/**
+	 * the routes out of this component, indexed by slot
+	 */
+	private final Route[] routes;
+	
+	/**
+	 * the output queue of each slot
+	 */
+	private final NetworkTaskBuffer[] slotQueues;
+	
+	/**
+	 * the hot key detector of each fields grouping, by slot and grouping, or
+	 * null if hot keys are not detected
+	 */
+	private final HotKeys[][] hotKeys;
+	
+	/**
+	 * for each slot, the index of each field that the destination consumes in
+	 * the stream's values, or null if it consumes all of them; null if no
+	 * destination projects its streams
+	 */
+	private final int[][] projections;
+	
+	/**
+	 * for each slot, the schema of the projected tuples
+	 */
+	private final Fields[] projectedFields;
+	
+	/**
+	 * for each slot, the direct grouping of the route, or null if the route
+	 * is not direct grouped
+	 */
+	private final DirectGrouping[] directGroupings;
+	
+	/**
+	 * for each slot whose route has a combiner, the fields of the stream the
+	 * combiner was compiled against
+	 */
+	private final Fields[] combinedFields;
+	
+	/**
+	 * cached value from conf for the largest number of keys held for combining
+	 */
+	private final int combinerMaxKeys;
+	
+	/**
+	 * the schema of system tuples
+	 */
+	private static final Fields systemFields=new Fields(Constants.SYSTEM_TUPLE_FIELDS);
+	
+	/**
+	 * A list view of the values being emitted, given to the groupings so
+	 * that no list needs to be allocated per emit.
+	 * @author aaron
 	 * 
 	 */
-	private final HashSet<Integer> doneTaskIds;
+	private static class ValuesView extends AbstractList<Object> {
+		public Object[] values;
+		@Override
+		public Object get(int index) {
+			return values[index];
+		}
+		@Override
+		public int size() {
+			return values.length;
+		}
+	}
 	
 	/**
 	 * A bundle of tuples that will be sent when full, or
 	 * when it expires.
 	 * @author aaron
-	 *
+	 * 
 	 */
 	private class TupleBundle {
-		public Long expireTime;
+		public final long expireTime;
+		public final long sequence;
+		public boolean sent=false;
 		public Tuple[] tuples;
 		public int size=0;
-		public String componentId;
-		public String streamId;
-		public HashSet<Integer> taskIds;
-		public TupleBundle(String componentId,String streamId,HashSet<Integer> taskIds) {
-			expireTime=Instant.now().toEpochMilli()+linger_ms;
-			if(nextExpire>expireTime) nextExpire=expireTime;
-			tuples=new Tuple[bundleSize];
-			this.componentId=componentId;
-			this.streamId=streamId;
-			this.taskIds=taskIds;
+		public final Route route;
+		public final int[] tasks;
+		public final boolean[] member;
+		public TupleBundle(Route route,List<Integer> taskIds,int capacity,long expireTime,long sequence) {
+			this.expireTime=expireTime;
+			this.sequence=sequence;
+			tuples=new Tuple[capacity];
+			this.route=route;
+			tasks=new int[taskIds.size()];
+			for(int i=0;i<tasks.length;i++) tasks[i]=taskIds.get(i);
+			if(tasks.length>1) {
+				member=new boolean[route.numTasks];
+				for(int t : tasks) member[t]=true;
+			} else {
+				member=null;
+			}
 		}
 		public void add(Tuple tuple) {
 			tuples[size++]=tuple;
 		}
+		public boolean contains(int taskId) {
+			return member!=null ? member[taskId] : tasks.length==1 && tasks[0]==taskId;
+		}
+		public boolean sameTasks(List<Integer> taskIds) {
+			if(taskIds.size()!=tasks.length) return false;
+			for(int i=0;i<tasks.length;i++) {
+				if(!contains(taskIds.get(i))) return false;
+			}
+			return true;
+		}
+		public boolean intersects(TupleBundle other) {
+			if(other.member!=null) {
+				for(int t : tasks) if(other.member[t]) return true;
+				return false;
+			}
+			for(int t : other.tasks) if(contains(t)) return true;
+			return false;
+		}
+	}
+	
+	/**
+	 * The tuple bundles that currently exist for a slot. Bundles for a single
+	 * task are indexed by the task id, while bundles for several tasks are
+	 * searched.
+	 * @author aaron
+	 * 
+	 */
+	private class BundleSlot {
+		public final TupleBundle[] single;
+		public final ArrayList<TupleBundle> multi=new ArrayList<TupleBundle>();
+		public int count=0;
+		public BundleSlot(int numTasks) {
+			single=new TupleBundle[numTasks];
+		}
+		public TupleBundle get(List<Integer> taskIds) {
+			if(taskIds.size()==1) return single[taskIds.get(0)];
+			for(int i=0;i<multi.size();i++) {
+				if(multi.get(i).sameTasks(taskIds)) return multi.get(i);
+			}
+			return null;
+		}
+		public void put(TupleBundle tb) {
+			if(tb.tasks.length==1) {
+				single[tb.tasks[0]]=tb;
+			} else {
+				multi.add(tb);
+			}
+			count++;
+		}
+		public void remove(TupleBundle tb) {
+			if(tb.tasks.length==1) {
+				single[tb.tasks[0]]=null;
+			} else {
+				multi.remove(tb);
+			}
+			count--;
+		}
+	}
+	
+	/**
+	 * The key of a tuple held for combining, which compares the values of the
+	 * key fields in place, so that the key is not copied out of the tuple.
+	 * @author aaron
+	 * 
+	 */
+	private static class CombineKey {
+		public final Object[] values;
+		public final int[] indices;
+		public final int hash;
+		public CombineKey(Object[] values,int[] indices,int hash) {
+			this.values=values;
+			this.indices=indices;
+			this.hash=hash;
+		}
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		@Override
+		public boolean equals(Object o) {
+			final CombineKey other=(CombineKey)o;
+			if(other.hash!=hash) return false;
+			for(int index : indices) {
+				if(!Objects.equals(values[index], other.values[index])) return false;
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * The tuples held for combining on a slot, one per key, in the order that
+	 * their keys were first emitted.
+	 * @author aaron
+	 * 
+	 */
+	private class CombineSlot {
+		public final Route route;
+		public final Combiner combiner;
+		public final int[] allFields;
+		public final LinkedHashMap<CombineKey,Tuple> tuples=new LinkedHashMap<CombineKey,Tuple>();
+		public long expireTime;
+		public CombineSlot(Route route,int numFields) {
+			this.route=route;
+			combiner=route.combiner;
+			allFields=new int[numFields];
+			for(int i=0;i<numFields;i++) allFields[i]=i;
+		}
+	}
+	
+	/**
+	 * The tuple bundles of one emitter, along with the state needed to fill
+	 * them. An emit buffer is only used while its lock is held.
+	 * @author aaron
+	 * 
+	 */
+	private class EmitBuffer {
+		
+		/**
+		 * held while the buffer is used
+		 */
+		public final ReentrantLock lock=new ReentrantLock();
+		
+		/**
+		 * the tuple bundles that currently exist for each slot
+		 */
+		private final BundleSlot[] bundleSlots;
+		
+		/**
+		 * the adaptive bundler of each slot, if bundling is adaptive
+		 */
+		private final AdaptiveBundler[] bundlers;
+		
+		/**
+		 * A priority queue of tuple bundles, ordered by expire time. Bundles that
+		 * are transmitted because they are full are left on the queue and skipped
+		 * when they reach the head.
+		 */
+		private final PriorityQueue<TupleBundle> bundleQueue;
+		
+		/**
+		 * the number of bundles that have been created, used to order bundles
+		 * that have the same expire time
+		 */
+		private long bundleSequence=0;
+		
+		/**
+		 * the time at which the next bundle expires, from {@link System#nanoTime()}
+		 */
+		public volatile long nextExpire;
+		
+		/**
+		 * the thread that emits on this buffer, when emitting concurrently
+		 */
+		public final Thread owner;
+		
+		/**
+		 * the number of bundles that have not yet been transmitted
+		 */
+		public volatile int pendingBundles=0;
+		
+		/**
+		 * the number of tuples that have been transmitted in bundles, for metrics
+		 */
+		public volatile long bundledTuples=0;
+		
+		/**
+		 * the total capacity of the bundles that have been transmitted, for metrics
+		 */
+		public volatile long bundleCapacity=0;
+		
+		/**
+		 * the tracked tuple that the bolt is executing on this buffer's thread, which
+		 * tuples that are emitted are anchored to, or null
+		 */
+		private Tuple anchor;
+		
+		/**
+		 * the XOR of the edges of the tuples that were anchored to the tracked tuple
+		 */
+		private long anchorEdges;
+		
+		/**
+		 * state of the generator of edge ids
+		 */
+		private long random=System.nanoTime()^System.identityHashCode(this);
+		
+		/**
+		 * the stream that was last emitted on
+		 */
+		private String lastStreamId;
+		
+		/**
+		 * the routes of the stream that was last emitted on
+		 */
+		private Route[] lastRoutes;
+		
+		/**
+		 * the schema of the stream that was last emitted on
+		 */
+		private Fields lastFields;
+		
+		/**
+		 * the deadline in ms of the stream that was last emitted on, or zero
+		 */
+		private long lastDeadline;
+		
+		/**
+		 * the deadline of the tuples that the bolt is executing on this buffer's
+		 * thread, which tuples that are emitted inherit if it is earlier, or zero
+		 */
+		private long inheritedDeadline;
+		
+		/**
+		 * the view of the values currently being emitted
+		 */
+		private final ValuesView valuesView=new ValuesView();
+		
+		/**
+		 * the tuples held for combining on each slot whose route has a combiner
+		 */
+		private final CombineSlot[] combineSlots;
+		
+		/**
+		 * the view of the values of held tuples, which are combined and sent
+		 * while other values are being emitted
+		 */
+		private final ValuesView combineView=new ValuesView();
+		
+		/**
+		 * @param sloNanos the latency target for adaptive bundling
+		 */
+		public EmitBuffer(long sloNanos) {
+			owner=Thread.currentThread();
+			nextExpire=System.nanoTime()+lingerNanos;
+			bundleQueue = new PriorityQueue<TupleBundle>((Comparator<TupleBundle>) new Comparator<TupleBundle>() {
+				
+				@Override
+				public int compare(TupleBundle arg0, TupleBundle arg1) {
+					int c=Long.compare(arg0.expireTime-arg1.expireTime,0);
+					if(c!=0) return c;
+					return Long.compare(arg0.sequence,arg1.sequence);
+				}
+			
+			});
+			bundleSlots=new BundleSlot[routes.length];
+			bundlers=new AdaptiveBundler[routes.length];
+			combineSlots=new CombineSlot[routes.length];
+			for(Route route : routes) {
+				bundleSlots[route.slot]=new BundleSlot(route.numTasks);
+				if(combinedFields[route.slot]!=null) {
+					combineSlots[route.slot]=new CombineSlot(route,combinedFields[route.slot].size());
+				}
+				if(adaptive) {
+					bundlers[route.slot]=new AdaptiveBundler(bundleSize,lingerNanos,sloNanos);
+				}
+			}
+		}
+		
+		/**
+		 * Transmit tuple bundles that have expired.
+		 * @param now
+		 */
+		public void expire(long now) {
+			for(CombineSlot cs : combineSlots) {
+				if(cs!=null && !cs.tuples.isEmpty() && cs.expireTime-now<=0) flush(cs,true);
+			}
+			while(bundleQueue.size()>0 && bundleQueue.peek().expireTime-now<=0) {
+				TupleBundle tb = bundleQueue.poll();
+				if(!tb.sent) transmit(tb);
+			}
+			nextExpire = nextExpire();
+		}
+		
+		/**
+		 * Transmit all tuple bundles, regardless of expire time.
+		 */
+		public void expireAll() {
+			for(CombineSlot cs : combineSlots) {
+				if(cs!=null) flush(cs,true);
+			}
+			while(bundleQueue.size()>0) {
+				TupleBundle tb = bundleQueue.poll();
+				if(!tb.sent) transmit(tb);
+			}
+			nextExpire = nextExpire();
+		}
+		
+		/**
+		 * Transmit the given tuple bundle, after first transmitting the bundles
+		 * that were created before it for the same destination component and stream,
+		 * and that have a task in common with it. Tuple order is only promised per
+		 * destination task and stream, so bundles for other destinations and streams
+		 * are left to fill.
+		 * @param tb
+		 */
+		private void expireUpTo(TupleBundle tb) {
+			final BundleSlot bundles=bundleSlots[tb.route.slot];
+			ArrayList<TupleBundle> predecessors=null;
+			if(tb.member!=null) {
+				for(int t : tb.tasks) {
+					TupleBundle other=bundles.single[t];
+					if(other!=null && other.sequence<tb.sequence) {
+						if(predecessors==null) predecessors=new ArrayList<TupleBundle>();
+						predecessors.add(other);
+					}
+				}
+			}
+			for(int i=0;i<bundles.multi.size();i++) {
+				TupleBundle other=bundles.multi.get(i);
+				if(other.sequence<tb.sequence && other.intersects(tb)) {
+					if(predecessors==null) predecessors=new ArrayList<TupleBundle>();
+					predecessors.add(other);
+				}
+			}
+			if(predecessors!=null) {
+				predecessors.sort((x,y)->Long.compare(x.sequence,y.sequence));
+				for(TupleBundle other : predecessors) {
+					if(!other.sent) expireUpTo(other);
+				}
+			}
+			transmit(tb);
+		}
+		
+		/**
+		 * Transmit a tuple bundle and remove it from its slot. It is left
+		 * on the priority queue, marked as sent.
+		 * @param tb
+		 */
+		private void transmit(TupleBundle tb) {
+			tb.sent=true;
+			bundleSlots[tb.route.slot].remove(tb);
+			pendingBundles--;
+			bundledTuples+=tb.size;
+			bundleCapacity+=tb.tuples.length;
+			Collector.this.transmit(tb);
+		}
+		
+		/**
+		 * 
+		 * @return the expire time of the earliest bundle, or the linger time from now
+		 * if there are no bundles
+		 */
+		private long nextExpire() {
+			while(bundleQueue.size()>0 && bundleQueue.peek().sent) bundleQueue.poll();
+			long next=bundleQueue.size()>0 ? bundleQueue.peek().expireTime : System.nanoTime()+lingerNanos;
+			for(CombineSlot cs : combineSlots) {
+				if(cs!=null && !cs.tuples.isEmpty() && cs.expireTime-next<0) next=cs.expireTime;
+			}
+			return next;
+		}
+		
+		/**
+		 * Hold a tuple for combining, or combine it into the held tuple of its
+		 * key if there is one.
+		 * @param tuple
+		 * @param route a route with a combiner
+		 */
+		private void combine(Tuple tuple,Route route) {
+			final CombineSlot cs=combineSlots[route.slot];
+			final Combiner combiner=cs.combiner;
+			final Object[] values=tuple.getValues();
+			combineView.values=values;
+			final int hash=combiner.keyHash(combineView);
+			combineView.values=null;
+			final Tuple held=cs.tuples.get(new CombineKey(values,combiner.getKeyIndices(),hash));
+			if(held!=null) {
+				final int v=combiner.getValueIndex();
+				held.getValues()[v]=combiner.combine(held.getValues()[v],values[v]);
+				return;
+			}
+			if(cs.tuples.isEmpty()) {
+				cs.expireTime=System.nanoTime()+lingerNanos;
+				pendingBundles++; // held tuples are pending like a bundle
+				if(nextExpire-cs.expireTime>0) {
+					nextExpire=cs.expireTime;
+					if(concurrent) earlierExpire(cs.expireTime);
+				}
+			}
+			// the tuple may also be sent on other routes, so a copy is held
+			final Tuple copy=tuple.project(tuple.getFields(),cs.allFields);
+			cs.tuples.put(new CombineKey(copy.getValues(),combiner.getKeyIndices(),hash),copy);
+			if(cs.tuples.size()>=combinerMaxKeys) flush(cs,false);
+		}
+		
+		/**
+		 * Send the tuples held for combining on a slot.
+		 * @param cs
+		 * @param lingered true if the tuples have been held for the linger time,
+		 * in which case the bundles of the slot are transmitted as well rather
+		 * than holding the tuples for another linger time
+		 */
+		private void flush(CombineSlot cs,boolean lingered) {
+			if(cs.tuples.isEmpty()) return;
+			final Route route=cs.route;
+			long transferred=0;
+			for(Tuple tuple : cs.tuples.values()) {
+				combineView.values=tuple.getValues();
+				List<Integer> taskIds = chooseTasks(route,route.combinedGrouping,combineView);
+				transferred+=taskIds.size();
+				transmit(project(tuple,route),
+						taskIds,
+						route);
+			}
+			combineView.values=null;
+			cs.tuples.clear();
+			pendingBundles--;
+			component.incTransferred(transferred); // for metrics
+			if(!lingered) return;
+			final BundleSlot bundles=bundleSlots[route.slot];
+			final ArrayList<TupleBundle> pending=new ArrayList<TupleBundle>(bundles.multi);
+			for(TupleBundle tb : bundles.single) {
+				if(tb!=null) pending.add(tb);
+			}
+			pending.sort((x,y)->Long.compare(x.sequence,y.sequence));
+			for(TupleBundle tb : pending) {
+				if(!tb.sent) transmit(tb);
+			}
+		}
+		
+		/**
+		 * Create a new tuple bundle and place it in its slot.
+		 * @param route
+		 * @param taskIds
+		 * @param capacity
+		 * @param expireTime
+		 * @return the tuple bundle
+		 */
+		private TupleBundle newBundle(Route route,List<Integer> taskIds,int capacity,long expireTime) {
+			TupleBundle tb=new TupleBundle(route,taskIds,capacity,expireTime,bundleSequence++);
+			bundleSlots[route.slot].put(tb);
+			bundleQueue.add(tb);
+			pendingBundles++;
+			if(nextExpire-expireTime>0) {
+				nextExpire=expireTime;
+				if(concurrent) earlierExpire(expireTime);
+			}
+			return tb;
+		}
+		
+		/**
+		 * Transmit a tuple, which will likely just bundle it into an existing
+		 * tuple bundle, waiting to be transmitted.
+		 * @param tuple
+		 * @param taskIds
+		 * @param route
+		 */
+		private void transmit(Tuple tuple,
+				List<Integer> taskIds,
+				Route route) {
+			final BundleSlot bundles = bundleSlots[route.slot];
+			TupleBundle tb = bundles.get(taskIds);
+			if(adaptive) {
+				final long now = System.nanoTime();
+				final AdaptiveBundler bundler = bundlers[route.slot];
+				bundler.arrival(now,tb==null?bundles.count+1:bundles.count);
+				if(tb==null) tb=newBundle(route,taskIds,bundler.getSize(),bundler.expireTime(now));
+			} else if(tb==null) {
+				tb=newBundle(route,taskIds,bundleSize,System.nanoTime()+lingerNanos);
+			}
+			tb.add(tuple);
+			if(tb.size==tb.tuples.length)  {
+				// we expire the bundles that must precede this, to preserve order
+				expireUpTo(tb);
+				nextExpire = nextExpire();
+			}
+		}
+		
+		/**
+		 * 
+		 * @return a random non-zero edge id
+		 */
+		private long nextEdge() {
+			random^=random<<13;
+			random^=random>>>7;
+			random^=random<<17;
+			if(random==0) random=1;
+			return random;
+		}
+		
+		/**
+		 * Make a new tuple part of the tree of the tracked tuple being executed or,
+		 * for a spout that tracks its tuples, the root of a new tree.
+		 * @param tuple
+		 * @return for a new tree, the token that the root's edges must be XOR'd
+		 * with when they have been recorded, otherwise 0
+		 */
+		private long track(Tuple tuple) {
+			if(anchor!=null) {
+				tuple.setTracking(anchor.getTracker(),anchor.getTrackerTree(),nextEdge());
+			} else if(tracker!=null) {
+				long token=nextEdge();
+				long tree=tracker.start(token);
+				if(tree<0) tree=awaitSlot(token);
+				if(tree>=0) {
+					tuple.setTracking(tracker,tree,nextEdge());
+					return token;
+				}
+			}
+			return 0;
+		}
+		
+		/**
+		 * Wait for a tuple tree to complete or expire, when the ledger of the
+		 * spout's tuple trees is full. Bundles are transmitted while waiting,
+		 * since the trees can not complete while their tuples are held.
+		 * @param token
+		 * @return the id of the new tuple tree, or -1 if the thread was
+		 * interrupted, in which case the tuple is emitted untracked
+		 */
+		private long awaitSlot(long token) {
+			long tree;
+			while((tree=tracker.start(token))<0) {
+				final long now=System.nanoTime();
+				tracker.expire(now);
+				expireAll();
+				if(concurrent) {
+					for(EmitBuffer b : buffers) {
+						if(b!=this && b.lock.tryLock()) {
+							try {
+								b.expire(now);
+							} finally {
+								b.lock.unlock();
+							}
+						}
+					}
+				}
+				try {
+					tracker.await(lingerNanos>0 ? lingerNanos : tracker.getNextExpire()-now);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			return tree;
+		}
+		
+		/**
+		 * 
+		 * @param tuple
+		 * @param route
+		 * @param taskIds
+		 * @return the XOR of the edges on which the tuple is sent to the local tasks
+		 */
+		private long edges(Tuple tuple,Route route,List<Integer> taskIds) {
+			long edges=0;
+			for(int taskId : taskIds) {
+				// tuples sent to other nodes are considered executed once sent
+				if(route.local[taskId]) edges^=CompletionTracker.edge(tuple.getEdge(),route.destIndex,taskId);
+			}
+			return edges;
+		}
+		
+		/**
+		 * Record the edges of a tracked tuple, once it has been sent on all of them.
+		 * @param tuple
+		 * @param token the token returned by {@link #track(Tuple)}
+		 * @param edges
+		 */
+		private void tracked(Tuple tuple,long token,long edges) {
+			if(token==0) {
+				// recorded when the anchor has been executed
+				anchorEdges^=edges;
+			} else {
+				tracker.update(tuple.getTrackerTree(),token^edges);
+			}
+		}
+		
+		/**
+		 * Look up the schema and routes of a stream, unless it was the last
+		 * stream emitted on.
+		 * @param streamId
+		 */
+		private void selectStream(String streamId) {
+			if(streamId!=lastStreamId) {
+				lastFields=component.getOutputFieldsDeclarer().getFields(streamId);
+				lastRoutes=routingTable.getRoutes(componentIndex, streamId);
+				lastDeadline=declarer.getDeadline(streamId);
+				lastStreamId=streamId;
+			}
+		}
+		
+		/**
+		 * 
+		 * @return the deadline of a tuple emitted now on the stream that was last
+		 * selected, or zero if it has none
+		 */
+		private long deadline() {
+			long deadline=lastDeadline>0 ? System.currentTimeMillis()+lastDeadline : 0;
+			if(inheritedDeadline!=0 && (deadline==0 || inheritedDeadline<deadline)) {
+				deadline=inheritedDeadline;
+			}
+			return deadline;
+		}
+		
+		/**
+		 * @param streamId
+		 * @param values
+		 * @param receivingTaskIds the list to add the receiving task ids to, or null
+		 */
+		public void emit(String streamId,Object[] values,List<Integer> receivingTaskIds) {
+			selectStream(streamId);
+			final Fields fields = lastFields;
+			if(fields==null) {
+				throw new DragonEmitRuntimeException("no fields have been declared for ["+
+						component.getComponentId()+"] on stream ["+streamId+
+						"] however it is attempting to emit on that stream");
+			}
+			if(values.length!=fields.size()) {
+				throw new DragonEmitRuntimeException("the number of values in ["+Arrays.toString(values)+
+						"] does not match the number of fields ["+
+						fields.getFieldNamesAsString()+"]");
+			}
+			final Tuple tuple = new Tuple(fields,values);
+			tuple.setSourceComponent(component.getComponentId());
+			tuple.setSourceTaskId(component.getTaskId());
+			tuple.setSourceStreamId(streamId);
+			tuple.setDeadline(deadline());
+			component.incEmitted(1); // for metrics
+			final boolean tracking=anchor!=null || tracker!=null;
+			final long token=tracking ? track(tuple) : 0;
+			long edges=0;
+			valuesView.values=values;
+			for(Route route : lastRoutes) {
+				final int combined=!tracking && combineSlots[route.slot]!=null ? route.combinedGrouping : -1;
+				Tuple routed=null;
+				for(int g=0;g<route.groupings.length;g++) {
+					if(g==combined) {
+						// held, and sent later to the task of its key, combined
+						if(receivingTaskIds!=null) {
+							receivingTaskIds.addAll(route.groupings[g].chooseTasks(component.getTaskId(),valuesView));
+						}
+						combine(tuple,route);
+						continue;
+					}
+					List<Integer> taskIds = chooseTasks(route,g,valuesView);
+					if(taskIds.isEmpty()) continue; // filtered out by the subscriber
+					if(receivingTaskIds!=null) receivingTaskIds.addAll(taskIds);
+					component.incTransferred(taskIds.size()); // for metrics
+					if(tracking) edges^=edges(tuple,route,taskIds);
+					if(routed==null) routed=project(tuple,route);
+					transmit(routed,
+							taskIds,
+							route);
+				}
+			}
+			valuesView.values=null;
+			if(tuple.getTracker()!=null) tracked(tuple,token,edges);
+		}
+		
+		/**
+		 * Emit a batch of tuples on the same stream. The stream is looked up and
+		 * the values are checked once for the batch, and then each route and
+		 * grouping is applied to all of the tuples in turn, rather than every
+		 * route being visited for each tuple.
+		 * @param streamId
+		 * @param rows the values of each tuple, which become owned by the tuples
+		 * @param count the number of rows to emit
+		 */
+		public void emitBatch(String streamId,Object[][] rows,int count) {
+			selectStream(streamId);
+			final Fields fields = lastFields;
+			if(fields==null) {
+				throw new DragonEmitRuntimeException("no fields have been declared for ["+
+						component.getComponentId()+"] on stream ["+streamId+
+						"] however it is attempting to emit on that stream");
+			}
+			final Tuple[] tuples = new Tuple[count];
+			final long deadline=deadline();
+			for(int i=0;i<count;i++) {
+				if(rows[i].length!=fields.size()) {
+					throw new DragonEmitRuntimeException("the number of values in ["+Arrays.toString(rows[i])+
+							"] does not match the number of fields ["+
+							fields.getFieldNamesAsString()+"]");
+				}
+				final Tuple tuple = new Tuple(fields,rows[i]);
+				tuple.setSourceComponent(component.getComponentId());
+				tuple.setSourceTaskId(component.getTaskId());
+				tuple.setSourceStreamId(streamId);
+				tuple.setDeadline(deadline);
+				tuples[i]=tuple;
+			}
+			component.incEmitted(count); // for metrics
+			final boolean tracking=anchor!=null || tracker!=null;
+			final long[] tokens=tracking ? new long[count] : null;
+			final long[] edges=tracking ? new long[count] : null;
+			if(tracking) {
+				for(int i=0;i<count;i++) tokens[i]=track(tuples[i]);
+			}
+			long transferred=0;
+			for(Route route : lastRoutes) {
+				final int combined=!tracking && combineSlots[route.slot]!=null ? route.combinedGrouping : -1;
+				// each tuple is projected once for the route, when it is first sent on it
+				final Tuple[] routed=projections!=null && projections[route.slot]!=null ?
+						new Tuple[count] : tuples;
+				for(int g=0;g<route.groupings.length;g++) {
+					if(g==combined) {
+						for(int i=0;i<count;i++) combine(tuples[i],route);
+						continue;
+					}
+					for(int i=0;i<count;i++) {
+						valuesView.values=rows[i];
+						List<Integer> taskIds = chooseTasks(route,g,valuesView);
+						if(taskIds.isEmpty()) continue; // filtered out by the subscriber
+						transferred+=taskIds.size();
+						if(tracking) edges[i]^=edges(tuples[i],route,taskIds);
+						if(routed[i]==null) routed[i]=project(tuples[i],route);
+						transmit(routed[i],
+								taskIds,
+								route);
+					}
+				}
+			}
+			valuesView.values=null;
+			component.incTransferred(transferred); // for metrics
+			if(tracking) {
+				for(int i=0;i<count;i++) {
+					if(tuples[i].getTracker()!=null) tracked(tuples[i],tokens[i],edges[i]);
+				}
+			}
+		}
+		
+		/**
+		 * @param taskId
+		 * @param streamId
+		 * @param values
+		 */
+		public void emitDirect(int taskId, String streamId, Values values) {
+			Fields fields = component.getOutputFieldsDeclarer().getFieldsDirect(streamId);
+			if(fields==null) {
+				throw new DragonEmitRuntimeException("no fields have been declared for ["+
+						component.getComponentId()+"] on stream ["+streamId+
+						"] however it is attempting to emit on that stream");
+			}
+			if(values.size()!=fields.getFieldNames().length) {
+				throw new DragonEmitRuntimeException("the number of values in ["+values+
+						"] does not match the number of fields ["+
+						fields.getFieldNamesAsString()+"]");
+			}
+			selectStream(streamId);
+			final Tuple tuple = new Tuple(fields,values);
+			tuple.setSourceComponent(component.getComponentId());
+			tuple.setSourceTaskId(component.getTaskId());
+			tuple.setSourceStreamId(streamId);
+			tuple.setDeadline(deadline());
+			component.incEmitted(1); // for metrics
+			final boolean tracking=anchor!=null || tracker!=null;
+			final long token=tracking ? track(tuple) : 0;
+			long edges=0;
+			for(Route route : lastRoutes) {
+				final DirectGrouping direct=directGroupings[route.slot];
+				if(direct==null) continue;
+				final List<Integer> taskIds = direct.chooseTask(taskId);
+				component.incTransferred(1); // for metrics
+				if(tracking) edges^=edges(tuple,route,taskIds);
+				transmit(project(tuple,route),
+						taskIds,
+						route);
+			}
+			if(tuple.getTracker()!=null) tracked(tuple,token,edges);
+		}
+		
+		/**
+		 * 
+		 */
+		public void emitTerminateTuple() {
+			for(CombineSlot cs : combineSlots) {
+				if(cs!=null) flush(cs,true);
+			}
+			for(Route route : routes) {
+				// in this special case, we also use the grouping defined on the system stream, since
+				// that is a single "all group".
+				Tuple tuple = new Tuple(systemFields);
+				tuple.setSourceComponent(component.getComponentId());
+				tuple.setSourceStreamId(route.streamId);
+				tuple.setSourceTaskId(component.getTaskId());
+				tuple.setType(Tuple.Type.TERMINATE);
+				for(AbstractGrouping grouping : route.systemGroupings) {
+					List<Integer> taskIds = grouping.chooseTasks(component.getTaskId(), null);
+					transmit(tuple,
+							taskIds,
+							route);
+				}
+			}
+		}
 	}
 	
 	/**
 	 * cached value from conf for the linger time
 	 */
 	private final long linger_ms;
-
+	
+	/**
+	 * the linger time in nanoseconds
+	 */
+	private final long lingerNanos;
+	
 	/**
 	 * cached value from conf for the bundle size
 	 */
 	private final int bundleSize;
 	
 	/**
-	 * the time at which the next bundle expires
+	 * whether bundle sizes and linger times adapt to the arrival rate
+	 */
+	private final boolean adaptive;
+	
+	/**
+	 * whether each emitting thread has its own emit buffer
+	 */
+	private final boolean concurrent;
+	
+	/**
+	 * the time at which the next bundle expires, from {@link System#nanoTime()},
+	 * when emitting concurrently, which any emitting thread may make earlier
+	 */
+	private final AtomicLong nextExpire=new AtomicLong();
+	
+	/**
+	 * the emit buffer shared by all emits, when not emitting concurrently
+	 */
+	private final EmitBuffer buffer;
+	
+	/**
+	 * the emit buffer of each thread, when emitting concurrently
+	 */
+	private final ThreadLocal<EmitBuffer> threadBuffer;
+	
+	/**
+	 * all of the emit buffers
 	 */
-	private long nextExpire;
+	private final CopyOnWriteArrayList<EmitBuffer> buffers;
 	
 	/**
-	 * A map to the tuple bundles that currently exist.
+	 * the number of tuples transmitted by emit buffers that have been retired,
+	 * for metrics
 	 */
-	private HashMap<String,HashMap<String,HashMap<HashSet<Integer>,TupleBundle>>> bundleMap;
+	private volatile long retiredBundledTuples=0;
 	
 	/**
-	 * A priority queue of tuple bundles, ordered by expire time.
+	 * the capacity of the bundles transmitted by emit buffers that have been
+	 * retired, for metrics
 	 */
-	private PriorityQueue<TupleBundle> bundleQueue;
+	private volatile long retiredBundleCapacity=0;
+	
+	/**
+	 * tracks the tuple trees of a spout, or null if they are not tracked
+	 */
+	private final CompletionTracker tracker;
+	
+	/**
+	 * the declarer of the component, which holds the deadlines of its streams
+	 */
+	private final Declarer declarer;
 	
 	/**
 	 * @param component
@@ -132,34 +1057,220 @@ public class Collector {
 			router=null;
 		}
 		linger_ms=localCluster.getConf().getDragonTupleBundleLingerMS();
+		lingerNanos=linger_ms*1000000L;
 		bundleSize=localCluster.getConf().getDragonTupleBundleSize();
+		adaptive=localCluster.getConf().getDragonTupleBundleAdaptive();
+		concurrent=localCluster.getConf().getDragonCollectorConcurrent();
+		final long sloNanos=localCluster.getConf().getDragonTupleBundleLatencySloMS()*1000000L;
+		final int maxPending=localCluster.getConf().getTopologyMaxSpoutPending();
+		if(component instanceof Spout && maxPending>0) {
+			tracker=new CompletionTracker(maxPending,
+					localCluster.getConf().getTopologyMessageTimeoutSecs()*1000000000L,
+					((Spout)component)::wake);
+		} else {
+			tracker=null;
+		}
+		if(component instanceof Spout) {
+			declarer=localCluster.getTopology().getSpoutMap().get(component.getComponentId());
+		} else {
+			declarer=localCluster.getTopology().getBoltMap().get(component.getComponentId());
+		}
 		outputQueues=new ComponentTaskBuffer(bufSize);
-		bundleMap=new HashMap<>();
-		nextExpire=Instant.now().toEpochMilli()+linger_ms;
-		bundleQueue = new PriorityQueue<TupleBundle>((Comparator<TupleBundle>) new Comparator<TupleBundle>() {
-
-			@Override
-			public int compare(TupleBundle arg0, TupleBundle arg1) {
-				return arg0.expireTime.compareTo(arg1.expireTime);
+		nextExpire.set(System.nanoTime()+lingerNanos);
+		
+		routingTable=localCluster.getRoutingTable();
+		componentIndex=routingTable.getComponentIndex(component.getComponentId());
+		routes=routingTable.getRoutes(componentIndex);
+		slotQueues=new NetworkTaskBuffer[routes.length];
+		for(Route route : routes) {
+			outputQueues.create(route.destComponentId, route.streamId);
+			slotQueues[route.slot]=getQueue(route.destComponentId, route.streamId);
+			slotQueues[route.slot].setWatermark(localCluster.getBackpressure()
+					.newWatermark(route.destComponentId, bufSize));
+		}
+		totalBufferSpace=routes.length*bufSize;
+		combinerMaxKeys=localCluster.getConf().getDragonCombinerMaxKeys();
+		combinedFields=new Fields[routes.length];
+		for(Route route : routes) {
+			if(route.combiner==null) continue;
+			final Fields fields=component.getOutputFieldsDeclarer().getFields(route.streamId);
+			if(fields==null) continue;
+			route.combiner.compile(fields);
+			combinedFields[route.slot]=fields;
+		}
+		directGroupings=new DirectGrouping[routes.length];
+		for(Route route : routes) {
+			for(AbstractGrouping grouping : route.groupings) {
+				if(grouping instanceof DirectGrouping) directGroupings[route.slot]=(DirectGrouping)grouping;
 			}
-			
-		});
-		
-		DestComponentMap destComponentMap = localCluster.getTopology().getDestComponentMap(component.getComponentId());
-		int tbs=0;
-		if(destComponentMap!=null) {
-			for(String destId : destComponentMap.keySet()) {
-				bundleMap.put(destId,new HashMap<>());
-				for(String streamId : destComponentMap.get(destId).keySet() ) {
-					outputQueues.create(destId, streamId);
-					bundleMap.get(destId).put(streamId,new HashMap<>());
-					tbs+=bufSize;
+		}
+		int[][] indices=null;
+		projectedFields=new Fields[routes.length];
+		for(Route route : routes) {
+			if(route.projection==null) continue;
+			Fields fields=component.getOutputFieldsDeclarer().getFields(route.streamId);
+			if(fields==null) fields=component.getOutputFieldsDeclarer().getFieldsDirect(route.streamId);
+			if(fields==null) continue;
+			if(indices==null) indices=new int[routes.length][];
+			indices[route.slot]=new int[route.projection.length];
+			for(int i=0;i<route.projection.length;i++) {
+				Integer index=fields.getFieldMap().get(route.projection[i]);
+				if(index==null) {
+					throw new IllegalArgumentException("["+route.destComponentId+"] consumes field ["+
+							route.projection[i]+"] which is not one of the fields "+
+							fields.getFieldNamesAsString()+" of ["+component.getComponentId()+
+							"] on stream ["+route.streamId+"]");
 				}
-				
+				indices[route.slot][i]=index;
+			}
+			projectedFields[route.slot]=new Fields(route.projection);
+		}
+		projections=indices;
+		final double topologyThreshold=localCluster.getConf().getTopologyHotkeyThreshold();
+		HotKeys[][] hot=null;
+		for(Route route : routes) {
+			for(int g=0;g<route.groupings.length;g++) {
+				final AbstractGrouping grouping=FilteredGrouping.unwrap(route.groupings[g]);
+				if(!(grouping instanceof FieldGrouping)) continue;
+				// only subscriptions that opted in with a hot key grouping are split
+				double threshold=((FieldGrouping)grouping).getHotKeyThreshold();
+				if(threshold==FieldGrouping.TOPOLOGY_HOTKEY_THRESHOLD) threshold=topologyThreshold;
+				if(threshold<=0) continue;
+				if(hot==null) hot=new HotKeys[routes.length][];
+				if(hot[route.slot]==null) hot[route.slot]=new HotKeys[route.groupings.length];
+				hot[route.slot][g]=new HotKeys(route.streamId,route.destComponentId,
+						(FieldGrouping)grouping,threshold);
 			}
 		}
-		totalBufferSpace=tbs;
-		doneTaskIds=new HashSet<>();
+		hotKeys=hot;
+		
+		buffers=new CopyOnWriteArrayList<EmitBuffer>();
+		if(concurrent) {
+			buffer=null;
+			threadBuffer=ThreadLocal.withInitial(()->{
+				EmitBuffer b=new EmitBuffer(sloNanos);
+				buffers.add(b);
+				return b;
+			});
+		} else {
+			buffer=new EmitBuffer(sloNanos);
+			buffers.add(buffer);
+			threadBuffer=null;
+		}
+	}
+	
+	/**
+	 * 
+	 * @param tuple
+	 * @param route
+	 * @return the tuple projected onto the fields that the destination of the
+	 * route consumes, or the tuple itself if it consumes all of them
+	 */
+	private Tuple project(Tuple tuple,Route route) {
+		if(projections==null || projections[route.slot]==null) return tuple;
+		return tuple.project(projectedFields[route.slot],projections[route.slot]);
+	}
+	
+	/**
+	 * Choose the target tasks of a tuple by a grouping of a route, splitting
+	 * hot keys of a fields grouping over more tasks.
+	 * @param route
+	 * @param g the index of the grouping in the route
+	 * @param values the values of the tuple
+	 * @return the target tasks
+	 */
+	private List<Integer> chooseTasks(Route route,int g,List<Object> values) {
+		if(hotKeys!=null && hotKeys[route.slot]!=null && hotKeys[route.slot][g]!=null) {
+			if(!FilteredGrouping.accepts(route.groupings[g], values)) return Collections.emptyList();
+			return hotKeys[route.slot][g].chooseTasks(values);
+		}
+		return route.groupings[g].chooseTasks(component.getTaskId(), values);
+	}
+	
+	/**
+	 * 
+	 * @return the hot keys currently split over more tasks, over all fields
+	 * grouped streams
+	 */
+	public ArrayList<HotKeys.HotKey> getHotKeys() {
+		ArrayList<HotKeys.HotKey> keys=new ArrayList<HotKeys.HotKey>();
+		if(hotKeys==null) return keys;
+		for(HotKeys[] slot : hotKeys) {
+			if(slot==null) continue;
+			for(HotKeys h : slot) {
+				if(h!=null) keys.addAll(Arrays.asList(h.getHotKeys()));
+			}
+		}
+		return keys;
+	}
+	
+	/**
+	 * 
+	 * @return the tracker of the spout's tuple trees, or null if they are not tracked
+	 */
+	public CompletionTracker getTracker() {
+		return tracker;
+	}
+	
+	/**
+	 * Anchor the tuples emitted on the calling thread to a tracked tuple, while
+	 * the tuple is executed.
+	 * @param tuple
+	 */
+	public void setAnchor(Tuple tuple) {
+		EmitBuffer b = concurrent ? threadBuffer.get() : buffer;
+		b.anchor=tuple;
+		b.anchorEdges=0;
+	}
+	
+	/**
+	 * Stop anchoring the tuples emitted on the calling thread.
+	 * @return the XOR of the edges of the tuples that were anchored
+	 */
+	public long clearAnchor() {
+		EmitBuffer b = concurrent ? threadBuffer.get() : buffer;
+		long edges=b.anchorEdges;
+		b.anchor=null;
+		b.anchorEdges=0;
+		return edges;
+	}
+	
+	/**
+	 * Set the deadline of the tuples being executed on the calling thread,
+	 * which tuples that are emitted inherit if it is earlier than the deadline
+	 * of their own stream.
+	 * @param deadline the deadline in ms since the epoch, or zero for none
+	 */
+	public void setInheritedDeadline(long deadline) {
+		EmitBuffer b = concurrent ? threadBuffer.get() : buffer;
+		b.inheritedDeadline=deadline;
+	}
+	
+	/**
+	 * 
+	 * @return the emit buffer for the calling thread, locked
+	 */
+	private EmitBuffer lockBuffer() {
+		EmitBuffer b = concurrent ? threadBuffer.get() : buffer;
+		b.lock.lock();
+		return b;
+	}
+	
+	/**
+	 * Release the emit buffer after use. When emitting concurrently the buffer
+	 * transmits its own expired bundles, since the component thread does not
+	 * wait for the buffer's lock.
+	 * @param b
+	 */
+	private void unlockBuffer(EmitBuffer b) {
+		try {
+			if(concurrent) {
+				long now=System.nanoTime();
+				if(b.nextExpire-now<=0) b.expire(now);
+			}
+		} finally {
+			b.lock.unlock();
+		}
 	}
 	
 	/**
@@ -191,7 +1302,7 @@ public class Collector {
 	 * @return
 	 */
 	@Deprecated
-	public synchronized List<Integer> emit(Tuple anchorTuple, Values values) {
+	public List<Integer> emit(Tuple anchorTuple, Values values) {
 		return emit(values);
 	}
 	
@@ -202,7 +1313,7 @@ public class Collector {
 	 * @return
 	 */
 	@Deprecated
-	public synchronized List<Integer> emit(String streamId,Tuple anchorTuple, Values values) {
+	public List<Integer> emit(String streamId,Tuple anchorTuple, Values values) {
 		return emit(streamId,values);
 	}
 	
@@ -210,206 +1321,300 @@ public class Collector {
 	 * @param values
 	 * @return
 	 */
-	public synchronized List<Integer> emit(Values values){
+	public List<Integer> emit(Values values){
 		return emit(Constants.DEFAULT_STREAM,values);
 	}
 	
 	/**
-	 * Transmit tuple bundles that have expired. 
+	 * Make the time at which the next bundle expires earlier, when emitting
+	 * concurrently, and wake the component's thread if it did, since the
+	 * thread may be waiting until the later time.
+	 * @param expireTime
 	 */
-	public synchronized void expireTupleBundles() {
-		long now = Instant.now().toEpochMilli();
-		while(bundleQueue.size()>0 && bundleQueue.peek().expireTime<=now) {
-			TupleBundle tb = bundleQueue.poll();
-			transmit(tb.tuples,tb.taskIds,tb.componentId,tb.streamId);
-			bundleMap.get(tb.componentId).get(tb.streamId).remove(tb.taskIds);
+	private void earlierExpire(long expireTime) {
+		long next;
+		do {
+			next=nextExpire.get();
+			if(next-expireTime<=0) return;
+		} while(!nextExpire.compareAndSet(next, expireTime));
+		if(component instanceof Spout) {
+			((Spout)component).wake();
+		} else if(component instanceof Bolt && ((Bolt)component).getInputCollector()!=null) {
+			((Bolt)component).getInputCollector().wake();
 		}
-		if(bundleQueue.size()>0) {
-			TupleBundle tb = bundleQueue.peek();
-			nextExpire=tb.expireTime;
-		} else {
-			nextExpire = now+linger_ms;
+	}
+	
+	/**
+	 * Recompute the time at which the next bundle expires from the emit
+	 * buffers, when emitting concurrently. The time is reset before the
+	 * buffers are read, so that an earlier time set by another thread in
+	 * the mean time is not lost.
+	 * @param now
+	 */
+	private void resetNextExpire(long now) {
+		nextExpire.set(now+lingerNanos);
+		for(EmitBuffer b : buffers) {
+			final long next=b.nextExpire;
+			long current;
+			do {
+				current=nextExpire.get();
+				if(current-next<=0) break;
+			} while(!nextExpire.compareAndSet(current, next));
 		}
 	}
 	
 	/**
-	 * Transmit all tuple bundles, regardless of expire time.
+	 * Retire the emit buffer of a thread that has died, transmitting its
+	 * bundles so that they are not left behind.
+	 * @param b
 	 */
-	public synchronized void expireAllTupleBundles() {
-		log.debug("expiring all tuple bundles");
-		while(bundleQueue.size()>0) {
-			TupleBundle tb = bundleQueue.poll();
-			transmit(tb.tuples,tb.taskIds,tb.componentId,tb.streamId);
-			bundleMap.get(tb.componentId).get(tb.streamId).remove(tb.taskIds);
+	private void retire(EmitBuffer b) {
+		b.lock.lock();
+		try {
+			b.expireAll();
+		} finally {
+			b.lock.unlock();
 		}
-		nextExpire = Instant.now().toEpochMilli()+linger_ms;
+		buffers.remove(b);
+		retiredBundledTuples+=b.bundledTuples;
+		retiredBundleCapacity+=b.bundleCapacity;
 	}
 	
 	/**
-	 * Expire all tuple bundles up to the given tuple bundle.
-	 * @param tb
+	 * Transmit tuple bundles that have expired. When emitting concurrently,
+	 * emit buffers that are in use by their thread are skipped, since that
+	 * thread will transmit its own expired bundles, and the emit buffers of
+	 * threads that have died are retired. Called only by the component's thread.
 	 */
-	private synchronized void expireAllUpTo(TupleBundle tb) {
-		while(true) {
-			TupleBundle next = bundleQueue.poll();
-			transmit(tb.tuples,tb.taskIds,tb.componentId,tb.streamId);
-			bundleMap.get(tb.componentId).get(tb.streamId).remove(tb.taskIds);
-			if(next==tb) break;
+	public void expireTupleBundles() {
+		final long now = System.nanoTime();
+		if(!concurrent) {
+			buffer.lock.lock();
+			try {
+				buffer.expire(now);
+			} finally {
+				buffer.lock.unlock();
+			}
+			return;
 		}
-		nextExpire = Instant.now().toEpochMilli()+linger_ms;
+		for(EmitBuffer b : buffers) {
+			if(!b.owner.isAlive()) {
+				retire(b);
+			} else if(b.lock.tryLock()) {
+				try {
+					b.expire(now);
+				} finally {
+					b.lock.unlock();
+				}
+			}
+		}
+		resetNextExpire(now);
 	}
 	
 	/**
-	 * @param tuples
-	 * @param taskIds
-	 * @param componentId
-	 * @param streamId
+	 * Transmit all tuple bundles, regardless of expire time.
 	 */
-	private void transmit(Tuple[] tuples,
-			HashSet<Integer> taskIds,
-			String componentId,
-			String streamId) {
-		HashSet<Integer> remoteTaskIds=new HashSet<Integer>();
-		for(Integer taskId : taskIds){
-			if(!localCluster.getBolts().containsKey(componentId) || !localCluster.getBolts().get(componentId).containsKey(taskId)){
+	public void expireAllTupleBundles() {
+		log.debug("expiring all tuple bundles");
+		for(EmitBuffer b : buffers) {
+			b.lock.lock();
+			try {
+				b.expireAll();
+			} finally {
+				b.lock.unlock();
+			}
+		}
+		if(concurrent) resetNextExpire(System.nanoTime());
+	}
+	
+	/**
+	 * Transmit a tuple bundle to its destination tasks.
+	 * @param tb
+	 */
+	private void transmit(TupleBundle tb) {
+		final Route route=tb.route;
+		HashSet<Integer> remoteTaskIds=null;
+		for(int taskId : tb.tasks) {
+			if(!route.local[taskId]) {
+				if(remoteTaskIds==null) remoteTaskIds=new HashSet<Integer>();
 				remoteTaskIds.add(taskId);
 			}
 		}
-		HashSet<Integer> localTaskIds = new HashSet<Integer>(taskIds);
-		localTaskIds.removeAll(remoteTaskIds);
 		
-		if(!remoteTaskIds.isEmpty()){
+		if(remoteTaskIds!=null){
 			NetworkTask task = new NetworkTask();
-			task.init(tuples, remoteTaskIds, componentId, localCluster.getTopologyId());
+			task.init(tb.tuples, remoteTaskIds, route.destComponentId, localCluster.getTopologyId());
 			try {
 				router.put(task);
 			} catch (InterruptedException e) {
 				log.info("interrupted");
 				return;
 			}
-			
+		
 		}
 		
-		if(!localTaskIds.isEmpty()){
-			/*
-			 * First try to directly send the tuple to the input queue(s).
-			 *
-			 * To maintain order this can only be done if the output queue
-			 * is empty. There is no race condition with the output scheduler
-			 * since it does not poll the queue until it is done working on the
-			 * current head of the queue, if it exists.
-			 */
-			final NetworkTaskBuffer queue=getQueue(componentId,streamId);
-			final boolean empty=queue.isEmpty();
-			final HashMap<Integer,Bolt> destComp = localCluster.getBolts().get(componentId);
-			if(empty) {
-				doneTaskIds.clear();
-				for(Integer taskId:localTaskIds) {
-					if(destComp.get(taskId).getInputCollector().getQueue().offer(tuples))
-						doneTaskIds.add(taskId);
-				}
-				localTaskIds.removeAll(doneTaskIds);
+		/*
+		 * First try to directly send the tuple to the input queue(s).
+		 * 
+		 * To maintain order this can only be done if the output queue
+		 * is empty. There is no race condition with the output scheduler
+		 * since it does not poll the queue until it is done working on the
+		 * current head of the queue, if it exists. When emitting concurrently
+		 * other threads may be putting on the same queue, but order is only
+		 * kept per emitting thread.
+		 */
+		final NetworkTaskBuffer queue=slotQueues[route.slot];
+		final boolean empty=queue.isEmpty();
+		HashSet<Integer> localTaskIds=null;
+		for(int taskId : tb.tasks) {
+			if(!route.local[taskId]) continue;
+			if(!empty || !routingTable.getInput(route.destIndex, taskId).offer(tb.tuples)) {
+				if(localTaskIds==null) localTaskIds=new HashSet<Integer>();
+				localTaskIds.add(taskId);
 			}
-			
-			/*
-			 * What we couldn't transmit ourselves, we leave to
-			 * the output scheduler. 
-			 */
-			if(!localTaskIds.isEmpty()) {
-				NetworkTask task = new NetworkTask();
-				task.init(tuples, localTaskIds, componentId, localCluster.getTopologyId());
-				try {
-					queue.put(task);
-					if(queue.size()==1)localCluster.outputPending(queue);
-				} catch (InterruptedException e) {
-					log.info("interrupted");
-					return;
-				}
-				
-			} 
-		} 
+		}
+		
+		/*
+		 * What we couldn't transmit ourselves, we leave to
+		 * the output scheduler. When emitting concurrently the size of
+		 * the queue may include other threads' tasks, so the queue is
+		 * always scheduled, which has no effect if it already is.
+		 */
+		if(localTaskIds!=null) {
+			NetworkTask task = new NetworkTask();
+			task.init(tb.tuples, localTaskIds, route.destComponentId, localCluster.getTopologyId());
+			try {
+				queue.put(task);
+				if(concurrent || queue.size()==1)localCluster.outputPending(queue);
+			} catch (InterruptedException e) {
+				log.info("interrupted");
+				return;
+			}
+		}
 	}
 	
 	/**
-	 * Transmit a tuple, which will likely just bundle it into an existing
-	 * tuple bundle, waiting to be transmitted.
-	 * @param tuple
-	 * @param taskIds
-	 * @param componentId
+	 * 
 	 * @param streamId
+	 * @param values
+	 * @return the tasks that the tuple is sent to, including, for a subscriber
+	 * with a combiner, the task that the tuple's key is sent to once it has
+	 * been combined, although the tuple itself may not be sent until later
 	 */
-	private void transmit(Tuple tuple,
-			List<Integer> taskIds,
-			String componentId,
-			String streamId) {
-		HashSet<Integer> taskIdSet=new HashSet<Integer>(taskIds);
-		//transmit(new Tuple[] {tuple},taskIdSet,componentId,streamId);
-		TupleBundle tb;
-		if(!bundleMap.get(componentId).get(streamId).containsKey(taskIdSet)) {
-			tb=new TupleBundle(componentId,streamId,taskIdSet);
-			bundleMap.get(componentId).get(streamId).put(taskIdSet,tb);
-			bundleQueue.add(tb);
-		} else {
-			tb = bundleMap.get(componentId).get(streamId).get(taskIdSet);
-		}
-		tb.add(tuple);
-		if(tb.size==tb.tuples.length)  {
-			// we expire all bundles up to this, to preserve order
-			expireAllUpTo(tb);
-		} 
+	public List<Integer> emit(String streamId,Values values) {
+		final List<Integer> receivingTaskIds = new ArrayList<Integer>();
+		emit(streamId,values.toArray(),receivingTaskIds);
+		return receivingTaskIds;
 	}
 	
 	/**
-	 * 
+	 * Emit on the default stream without returning the receiving task ids.
+	 * @param values
+	 */
+	public void emitValues(Values values) {
+		emit(Constants.DEFAULT_STREAM,values.toArray(),null);
+	}
+	
+	/**
+	 * Emit without returning the receiving task ids.
 	 * @param streamId
 	 * @param values
-	 * @return
 	 */
-	public synchronized List<Integer> emit(String streamId,Values values) {
-		final List<Integer> receivingTaskIds = new ArrayList<Integer>();
+	public void emitValues(String streamId,Values values) {
+		emit(streamId,values.toArray(),null);
+	}
+	
+	/**
+	 * Emit on the default stream without returning the receiving task ids. The
+	 * tuple takes the values array as its own, without copying it, so the array
+	 * must not be changed or reused after it is emitted.
+	 * @param values
+	 */
+	public void emitValues(Object[] values) {
+		emit(Constants.DEFAULT_STREAM,values,null);
+	}
+	
+	/**
+	 * Emit without returning the receiving task ids. The tuple takes the values
+	 * array as its own, without copying it, so the array must not be changed
+	 * or reused after it is emitted, since the tuple may still be held in a
+	 * bundle or be executed by other tasks; emit a new array each time.
+	 * @param streamId
+	 * @param values
+	 */
+	public void emitValues(String streamId,Object[] values) {
+		emit(streamId,values,null);
+	}
+	
+	/**
+	 * @param streamId
+	 * @param values
+	 * @param receivingTaskIds the list to add the receiving task ids to, or null
+	 */
+	private void emit(String streamId,Object[] values,List<Integer> receivingTaskIds) {
 		if(component.isClosed()) {
 			log.error("spontaneous tuple emission after close, topology may not terminate properly");
-			return receivingTaskIds;
-		}
-		final Fields fields = component.getOutputFieldsDeclarer().getFields(streamId);
-		if(fields==null) {
-			throw new DragonEmitRuntimeException("no fields have been declared for ["+
-					component.getComponentId()+"] on stream ["+streamId+
-					"] however it is attempting to emit on that stream");
-		}
-		if(values.size()!=fields.getFieldNames().length) {
-			throw new DragonEmitRuntimeException("the number of values in ["+values+
-					"] does not match the number of fields ["+
-					fields.getFieldNamesAsString()+"]");
-		}
-		final Tuple tuple = new Tuple();
-		tuple.setFields(fields.copy());
-		tuple.setValues(values);
-		tuple.setSourceComponent(component.getComponentId());
-		tuple.setSourceTaskId(component.getTaskId());
-		tuple.setSourceStreamId(streamId);
-		component.incEmitted(1); // for metrics
-		localCluster.getTopology().getComponentDestSet(component.getComponentId(), streamId).forEach((componentId,groupingSet)->{
-			groupingSet.forEach((grouping)-> {
-				List<Integer> taskIds = grouping.chooseTasks(component.getTaskId(), values);
-				receivingTaskIds.addAll(taskIds);
-				component.incTransferred(receivingTaskIds.size()); // for metrics
-				transmit(tuple,
-						taskIds,
-						componentId,
-						streamId); 
-			});
-		});
-			
+			return;
+		}
+		final EmitBuffer b=lockBuffer();
+		try {
+			b.emit(streamId,values,receivingTaskIds);
+		} finally {
+			unlockBuffer(b);
+		}
+		setEmit();
+	}
+	
+	/**
+	 * Emit a batch of tuples on a stream, without returning the receiving
+	 * task ids.
+	 * @param streamId
+	 * @param batch
+	 */
+	public void emitBatch(String streamId,List<Values> batch) {
+		final Object[][] rows = new Object[batch.size()][];
+		for(int i=0;i<rows.length;i++) {
+			rows[i]=batch.get(i).toArray();
+		}
+		emitBatch(streamId,rows,rows.length);
+	}
+	
+	/**
+	 * Emit a batch of tuples on a stream, without returning the receiving
+	 * task ids. Each tuple takes its values array as its own, without copying
+	 * it, so the arrays must not be changed after they are emitted.
+	 * @param streamId
+	 * @param batch
+	 */
+	public void emitBatch(String streamId,Object[][] batch) {
+		emitBatch(streamId,batch,batch.length);
+	}
+	
+	/**
+	 * @param streamId
+	 * @param rows
+	 * @param count
+	 */
+	private void emitBatch(String streamId,Object[][] rows,int count) {
+		if(component.isClosed()) {
+			log.error("spontaneous tuple emission after close, topology may not terminate properly");
+			return;
+		}
+		if(count==0) return;
+		final EmitBuffer b=lockBuffer();
+		try {
+			b.emitBatch(streamId,rows,count);
+		} finally {
+			unlockBuffer(b);
+		}
 		setEmit();
-		return receivingTaskIds;
 	}
 	
 	/**
 	 * @param taskId
 	 * @param values
 	 */
-	public synchronized void emitDirect(int taskId, Values values){
+	public void emitDirect(int taskId, Values values){
 		emitDirect(taskId,Constants.DEFAULT_STREAM,values);
 	}
 	
@@ -418,39 +1623,17 @@ public class Collector {
 	 * @param streamId
 	 * @param values
 	 */
-	public synchronized void emitDirect(int taskId, String streamId, Values values){
-		Fields fields = component.getOutputFieldsDeclarer().getFieldsDirect(streamId);
+	public void emitDirect(int taskId, String streamId, Values values){
 		if(component.isClosed()) {
 			log.error("spontaneous tuple emission after close, topology may not terminate properly");
 			return;
 		}
-		if(fields==null) {
-			throw new DragonEmitRuntimeException("no fields have been declared for ["+
-					component.getComponentId()+"] on stream ["+streamId+
-					"] however it is attempting to emit on that stream");
-		}
-		if(values.size()!=fields.getFieldNames().length) {
-			throw new DragonEmitRuntimeException("the number of values in ["+values+
-					"] does not match the number of fields ["+
-					fields.getFieldNamesAsString()+"]");
-		}
-		final Tuple tuple = new Tuple();
-		tuple.setFields(fields.copy());
-		tuple.setValues(values);
-		tuple.setSourceComponent(component.getComponentId());
-		tuple.setSourceComponent(component.getComponentId());
-		tuple.setSourceTaskId(component.getTaskId());
-		tuple.setSourceStreamId(streamId);
-		component.incEmitted(1); // for metrics
-		localCluster.getTopology().getComponentDestSet(component.getComponentId(), streamId).forEach((componentId,groupingSet)->{
-				ArrayList<Integer> taskIds = new ArrayList<Integer>();
-				taskIds.add(taskId);
-				component.incTransferred(1); // for metrics
-				transmit(tuple,
-						taskIds,
-						componentId,
-						streamId); 
-		});
+		final EmitBuffer b=lockBuffer();
+		try {
+			b.emitDirect(taskId,streamId,values);
+		} finally {
+			unlockBuffer(b);
+		}
 		setEmit();
 	}
 	
@@ -461,8 +1644,8 @@ public class Collector {
 	 * @param values
 	 */
 	@Deprecated
-	public synchronized void emitDirect(int taskId, String streamId, Tuple anchorTuple, Values values){
-		emitDirect(taskId,Constants.DEFAULT_STREAM,values);
+	public void emitDirect(int taskId, String streamId, Tuple anchorTuple, Values values){
+		emitDirect(taskId,streamId,values);
 	}
 	
 	/**
@@ -485,33 +1668,18 @@ public class Collector {
 	public void setEmit() {
 		emitted=true;
 	}
-
+	
 	/**
-	 * 
+	 * Emit the terminate tuple. When emitting concurrently, the bundles of all
+	 * threads are transmitted first, so that the terminate tuple follows them.
 	 */
 	public void emitTerminateTuple() {
-		if(localCluster.getTopology().getTopology().get(component.getComponentId())==null) return;
-		for(String componentId : localCluster.getTopology().getTopology().get(component.getComponentId()).keySet()) {
-			StreamMap streamMap = localCluster.getTopology().getTopology().get(component.getComponentId()).get(componentId);
-			for(String streamId : streamMap.keySet()) {
-				// in this special case, we also use the grouping defined on the system stream, since 
-				// that is a single "all group".
-				GroupingsSet groupingsSet = streamMap.get(Constants.SYSTEM_STREAM_ID);
-				Tuple tuple = new Tuple();
-				tuple.setFields(new Fields(Constants.SYSTEM_TUPLE_FIELDS));
-				tuple.setSourceComponent(component.getComponentId());
-				tuple.setSourceStreamId(streamId);
-				tuple.setSourceTaskId(component.getTaskId());
-				tuple.setType(Tuple.Type.TERMINATE);
-				for(AbstractGrouping grouping : groupingsSet) {
-					List<Integer> taskIds = grouping.chooseTasks(component.getTaskId(), null);
-					transmit(tuple,
-							taskIds,
-							componentId,
-							streamId); 
-				}
-				
-			}
+		if(concurrent) expireAllTupleBundles();
+		final EmitBuffer b=lockBuffer();
+		try {
+			b.emitTerminateTuple();
+		} finally {
+			b.lock.unlock();
 		}
 	}
 	
@@ -522,7 +1690,7 @@ public class Collector {
 	public long getLinger_ms() {
 		return linger_ms;
 	}
-
+	
 	/**
 	 * 
 	 * @return
@@ -533,10 +1701,85 @@ public class Collector {
 	
 	/**
 	 * 
-	 * @return
+	 * @return the time at which the next bundle expires, from {@link System#nanoTime()}
 	 */
 	public long getNextExpire() {
-		return nextExpire;
+		return concurrent ? nextExpire.get() : buffer.nextExpire;
+	}
+	
+	/**
+	 * 
+	 * @return true if there are tuple bundles that have not yet been transmitted
+	 */
+	public boolean hasPendingBundles() {
+		for(EmitBuffer b : buffers) {
+			if(b.pendingBundles>0) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * 
+	 * @return whether bundle sizes and linger times adapt to the arrival rate
+	 */
+	public boolean isAdaptive() {
+		return adaptive;
 	}
 	
+	/**
+	 * 
+	 * @return whether each emitting thread has its own emit buffer
+	 */
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+	
+	/**
+	 * 
+	 * @return the bundle size currently chosen, averaged over destinations and streams
+	 */
+	public double getAverageBundleSize() {
+		if(!adaptive) return bundleSize;
+		double total=0;
+		int count=0;
+		for(EmitBuffer b : buffers) {
+			for(AdaptiveBundler bundler : b.bundlers) {
+				total+=bundler.getSize();
+				count++;
+			}
+		}
+		return count==0 ? 0 : total/count;
+	}
+	
+	/**
+	 * 
+	 * @return the fraction of bundle capacity that was filled, over all bundles transmitted
+	 */
+	public double getBundleFillRatio() {
+		long tuples=retiredBundledTuples;
+		long capacity=retiredBundleCapacity;
+		for(EmitBuffer b : buffers) {
+			tuples+=b.bundledTuples;
+			capacity+=b.bundleCapacity;
+		}
+		return capacity==0 ? 0 : (double)tuples/capacity;
+	}
+	
+	/**
+	 * 
+	 * @return the linger time in milliseconds currently chosen, averaged over destinations and streams
+	 */
+	public double getAverageLingerMS() {
+		if(!adaptive) return linger_ms;
+		double total=0;
+		int count=0;
+		for(EmitBuffer b : buffers) {
+			for(AdaptiveBundler bundler : b.bundlers) {
+				total+=bundler.getLingerNanos();
+				count++;
+			}
+		}
+		return count==0 ? 0 : total/count/1000000.0;
+	}
+
 }
@@ -2,6 +2,7 @@ package dragon.topology.base;
 
 import java.io.Serializable;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.logging.log4j.LogManager;
@@ -44,12 +45,12 @@ public class Component implements Cloneable, Serializable{
 	/**
 	 * 
 	 */
-	private Long emitted=0L;
+	private LongAdder emitted=new LongAdder();
 	
 	/**
 	 * 
 	 */
-	private Long transferred=0L;
+	private LongAdder transferred=new LongAdder();
 	
 	/**
 	 * 
@@ -100,8 +101,8 @@ public class Component implements Cloneable, Serializable{
 	public final void setOutputCollector(Collector collector) {
 		closing=false;
 		closed=false;
-		emitted=0L;
-		transferred=0L;
+		emitted=new LongAdder();
+		transferred=new LongAdder();
 		this.collector=collector;
 		this.lock=new ReentrantLock();
 	}
@@ -197,7 +198,7 @@ public class Component implements Cloneable, Serializable{
 	 */
 	public final void incEmitted(long inc){
 		
-			emitted+=inc;
+			emitted.add(inc);
 		
 	}
 	
@@ -206,7 +207,7 @@ public class Component implements Cloneable, Serializable{
 	 */
 	public final void incTransferred(long inc){
 		
-			transferred+=inc;
+			transferred.add(inc);
 		
 	}
 	
@@ -215,7 +216,7 @@ public class Component implements Cloneable, Serializable{
 	 */
 	public final long getEmitted(){
 		
-			return emitted;
+			return emitted.sum();
 		
 	}
 	
@@ -224,7 +225,7 @@ public class Component implements Cloneable, Serializable{
 	 */
 	public final long getTransferred(){
 		
-			return transferred;
+			return transferred.sum();
 		
 	}
 }
@@ -0,0 +1,161 @@
+package dragon.topology.base;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import dragon.Constants;
+import dragon.task.OutputCollector;
+import dragon.task.TopologyContext;
+import dragon.topology.OutputFieldsDeclarer;
+import dragon.tuple.Fields;
+import dragon.tuple.Tuple;
+import dragon.tuple.Values;
+
+/**
+ * Merges the partial results of a key from the tasks of an upstream bolt, which
+ * is subscribed to with a {@link dragon.grouping.PartialKeyGrouping} and so
+ * aggregates each key on up to two tasks. The upstream bolt emits its current
+ * partial result for a key whenever it changes, and this bolt, subscribed with
+ * a fields grouping on the key, keeps the latest partial result from each
+ * upstream task and emits the merge of them. Partial results must therefore
+ * be cumulative, such as running counts or sums. The partial results of a key
+ * are held until {@link #forget(List)} is called for it, so unless the keys
+ * are forgotten, e.g. when a window closes, the number of keys held should be
+ * bounded by giving a maximum.
+ * @author aaron
+ *
+ */
+public abstract class PartialMergeBolt extends BaseRichBolt {
+	private static final long serialVersionUID = -2693384339125839540L;
+	
+	/**
+	 * the fields of the key
+	 */
+	private final Fields keyFields;
+	
+	/**
+	 * the field of the partial result
+	 */
+	private final String partialField;
+	
+	/**
+	 * the maximum number of keys to hold partial results for, or zero if unbounded
+	 */
+	private final int maxKeys;
+	
+	/**
+	 * 
+	 */
+	private transient OutputCollector collector;
+	
+	/**
+	 * the latest partial result from each upstream task, by key, in the order
+	 * that the keys were last updated
+	 */
+	private transient LinkedHashMap<List<Object>,HashMap<String,Object>> partials;
+	
+	/**
+	 * @param keyFields the fields of the key, which are also emitted
+	 * @param partialField the field of the partial result, which the merged
+	 * result is emitted as
+	 */
+	public PartialMergeBolt(Fields keyFields,String partialField) {
+		this(keyFields,partialField,0);
+	}
+	
+	/**
+	 * @param keyFields the fields of the key, which are also emitted
+	 * @param partialField the field of the partial result, which the merged
+	 * result is emitted as
+	 * @param maxKeys the maximum number of keys to hold partial results for, or
+	 * zero if unbounded; beyond it the least recently updated key is forgotten,
+	 * so its next merged result only includes the partial results received after
+	 */
+	public PartialMergeBolt(Fields keyFields,String partialField,int maxKeys) {
+		if(maxKeys<0) throw new IllegalArgumentException("maxKeys must not be negative");
+		this.keyFields=keyFields;
+		this.partialField=partialField;
+		this.maxKeys=maxKeys;
+	}
+	
+	/**
+	 * Merge two partial results of a key.
+	 * @param a
+	 * @param b
+	 * @return the merged result
+	 */
+	protected abstract Object merge(Object a,Object b);
+	
+	/* (non-Javadoc)
+	 * @see dragon.topology.base.BaseRichBolt#prepare(java.util.Map, dragon.task.TopologyContext, dragon.task.OutputCollector)
+	 */
+	@Override
+	public void prepare(@SuppressWarnings("rawtypes") Map conf, TopologyContext context, OutputCollector collector) {
+		this.collector=collector;
+		partials=new LinkedHashMap<List<Object>,HashMap<String,Object>>(16,0.75f,true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<List<Object>,HashMap<String,Object>> eldest) {
+				return maxKeys>0 && size()>maxKeys;
+			}
+		};
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.topology.base.BaseRichBolt#execute(dragon.tuple.Tuple)
+	 */
+	@Override
+	public void execute(Tuple tuple) {
+		if(Constants.SYSTEM_TICK_STREAM_ID.equals(tuple.getSourceStreamId())) return;
+		final ArrayList<Object> key=new ArrayList<Object>(keyFields.size());
+		for(String name : keyFields.getFieldNames()) {
+			key.add(tuple.getValueByField(name));
+		}
+		HashMap<String,Object> byTask=partials.get(key);
+		if(byTask==null) {
+			byTask=new HashMap<String,Object>(4);
+			partials.put(key, byTask);
+		}
+		byTask.put(tuple.getSourceComponent()+":"+tuple.getSourceTaskId(),
+				tuple.getValueByField(partialField));
+		Object merged=null;
+		for(Object partial : byTask.values()) {
+			merged = merged==null ? partial : merge(merged,partial);
+		}
+		final Values values=new Values(key.toArray());
+		values.add(merged);
+		collector.emit(values);
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.topology.base.BaseRichBolt#declareOutputFields(dragon.topology.OutputFieldsDeclarer)
+	 */
+	@Override
+	public void declareOutputFields(OutputFieldsDeclarer declarer) {
+		final String[] names=new String[keyFields.size()+1];
+		System.arraycopy(keyFields.getFieldNames(), 0, names, 0, keyFields.size());
+		names[keyFields.size()]=partialField;
+		declarer.declare(new Fields(names));
+	}
+	
+	/**
+	 * Forget the partial results of a key, for instance when a window closes.
+	 * @param key the values of the key fields
+	 */
+	protected void forget(List<Object> key) {
+		partials.remove(key);
+	}
+	
+	/**
+	 * 
+	 * @return the number of keys that partial results are held for
+	 */
+	protected int getKeyCount() {
+		return partials.size();
+	}
+
+}
@@ -1,7 +1,7 @@
 package dragon.topology.base;
 
-import java.time.Instant;
 import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -9,7 +9,9 @@ import org.apache.logging.log4j.Logger;
 import dragon.LocalCluster;
 import dragon.spout.SpoutOutputCollector;
 import dragon.task.TopologyContext;
+import dragon.topology.Backpressure;
 import dragon.topology.OutputFieldsDeclarer;
+import dragon.tuple.CompletionTracker;
 
 /**
  * @author aaron
@@ -22,6 +24,57 @@ public class Spout extends Component {
 	 * 
 	 */
 	private static final Logger log = LogManager.getLogger(Spout.class);
+	
+	/**
+	 * set when data is available for the spout to emit
+	 */
+	private volatile boolean ready=false;
+	
+	/**
+	 * the thread that runs the spout, once it has run
+	 */
+	private transient volatile Thread thread;
+	
+	/**
+	 * the number of consecutive calls to nextTuple() that emitted nothing
+	 */
+	private int idle=0;
+	
+	/**
+	 * the idle count up to which the spout spins
+	 */
+	private int spinLimit;
+	
+	/**
+	 * the idle count up to which the spout yields
+	 */
+	private int yieldLimit;
+	
+	/**
+	 * the longest time to park for in nanoseconds
+	 */
+	private long parkMaxNanos;
+	
+	/**
+	 * 
+	 */
+	private transient Backpressure backpressure;
+	
+	/**
+	 * the index of the spout in the routing table
+	 */
+	private int componentIndex;
+	
+	/**
+	 * tracks the tuple trees of the spout, or null if they are not tracked
+	 */
+	private transient CompletionTracker tracker;
+	
+	/**
+	 * the total time that the spout has been throttled by backpressure or
+	 * by the maximum number of pending tuple trees
+	 */
+	private volatile long throttledNanos=0;
 
 	/* (non-Javadoc)
 	 * @see dragon.topology.base.Component#run()
@@ -44,6 +97,12 @@ public class Spout extends Component {
 			closed=true;
 			return;
 		}
+		if(thread==null) init();
+		if(isThrottled()) {
+			throttle();
+			return;
+		}
+		ready=false;
 		try {
 			nextTuple();
 		} catch (DragonEmitRuntimeException e) {
@@ -77,22 +136,131 @@ public class Spout extends Component {
 		/*
 		 * check tuple bundles for expiration
 		 */
-		long now = Instant.now().toEpochMilli();
-		if(now >= getOutputCollector().getNextExpire()) {
+		long now = System.nanoTime();
+		if(now-getOutputCollector().getNextExpire() >= 0) {
+			getOutputCollector().expireTupleBundles();
+		}
+		if(tracker!=null) tracker.expire(now);
+		if(getOutputCollector().didEmit() || ready) {
+			idle=0;
+		} else {
+			backoff();
+		}
+	}
+	
+	/**
+	 * Initialize the scheduling state, on the thread that runs the spout.
+	 */
+	private void init() {
+		spinLimit=getLocalCluster().getConf().getDragonSpoutBackoffSpin();
+		yieldLimit=spinLimit+getLocalCluster().getConf().getDragonSpoutBackoffYield();
+		parkMaxNanos=getLocalCluster().getConf().getDragonSpoutBackoffParkMaxMS()*1000000L;
+		backpressure=getLocalCluster().getBackpressure();
+		componentIndex=getLocalCluster().getRoutingTable().getComponentIndex(getComponentId());
+		tracker=getOutputCollector().getTracker();
+		thread=Thread.currentThread();
+	}
+	
+	/**
+	 * 
+	 * @return true if a component downstream is under pressure, or the maximum
+	 * number of tuple trees are pending
+	 */
+	private boolean isThrottled() {
+		return backpressure.isThrottled(componentIndex) || (tracker!=null && tracker.isFull());
+	}
+	
+	/**
+	 * The spout is throttled, so park the thread until the throttle is released,
+	 * the next bundle expires or the next tuple tree may expire, without calling
+	 * nextTuple().
+	 */
+	private void throttle() {
+		long now = System.nanoTime();
+		if(now-getOutputCollector().getNextExpire() >= 0) {
 			getOutputCollector().expireTupleBundles();
-		} else if(!getOutputCollector().didEmit()) {
+		}
+		if(tracker!=null) tracker.expire(now);
+		long until = now+parkMaxNanos;
+		if(getOutputCollector().hasPendingBundles()) {
+			long next = getOutputCollector().getNextExpire();
+			if(next-until<0) until=next;
+		}
+		if(tracker!=null && tracker.isFull()) {
+			// wake to expire the tuple trees that have not completed in time
+			long next = tracker.getNextExpire();
+			if(next-until<0) until=next;
+		}
+		if(until-now>0 && isThrottled()) {
+			LockSupport.parkNanos(this,until-now);
+		}
+		throttledNanos+=System.nanoTime()-now;
+	}
+	
+	/**
+	 * The user didn't emit anything, so spin, then yield and then park
+	 * the thread until data is available or the next bundle expires.
+	 */
+	private void backoff() {
+		idle++;
+		if(idle<=spinLimit) {
+			Thread.onSpinWait();
+		} else if(idle<=yieldLimit) {
+			Thread.yield();
+		} else {
+			long now = System.nanoTime();
+			long until = now+parkMaxNanos;
 			/*
-			 * user didn't emit anything so sleep until the next
-			 * expiration time
+			 * a spout that signals when data is available need only wake for
+			 * bundles that are waiting to expire
 			 */
-			try {
-				Thread.sleep(getOutputCollector().getNextExpire()-now);
-			} catch (InterruptedException e) {
-				log.info("interrupted");
-				return;
+			if(!signalsDataAvailable() || getOutputCollector().hasPendingBundles()) {
+				long next = getOutputCollector().getNextExpire();
+				if(next-until<0) until=next;
+			}
+			if(until-now>0 && !ready) {
+				LockSupport.parkNanos(this,until-now);
 			}
 		}
 	}
+	
+	/**
+	 * Signal that data is available for the spout to emit, which wakes the
+	 * spout if it is parked. This may be called from any thread, e.g. by
+	 * the callbacks of an asynchronous client that the spout reads from.
+	 */
+	public final void dataAvailable() {
+		ready=true;
+		wake();
+	}
+	
+	/**
+	 * Wake the spout if it is parked, e.g. when the pressure on the components
+	 * downstream of it has cleared.
+	 */
+	public final void wake() {
+		Thread t=thread;
+		if(t!=null) LockSupport.unpark(t);
+	}
+	
+	/**
+	 * 
+	 * @return the total time in nanoseconds that the spout has been throttled by
+	 * backpressure or by the maximum number of pending tuple trees
+	 */
+	public final long getThrottledNanos() {
+		return throttledNanos;
+	}
+	
+	/**
+	 * Spouts that call {@link #dataAvailable()} whenever data arrives should
+	 * override this to return true, so that they are not woken while idle
+	 * other than to transmit tuple bundles.
+	 * @return true if the spout signals when data is available
+	 */
+	public boolean signalsDataAvailable() {
+		return false;
+	}
 
 	/**
 	 * @param conf
@@ -0,0 +1,274 @@
+package dragon.tuple;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks the completion of the tuple trees of a spout task, in the manner of
+ * an XOR ledger. Each tuple tree has a slot in the ledger. A random edge id
+ * is XOR'd into the slot when a tuple of the tree is sent to a task, and
+ * the same edge id is XOR'd in again when the task has executed the tuple,
+ * so the slot returns to zero exactly when every tuple of the tree has been
+ * executed. While a tree is being started its slot also holds a random
+ * token, so that it can not reach zero before all of the root tuple's
+ * edges have been recorded.
+ * <p>
+ * A tree that has not completed within the message timeout, e.g. because
+ * one of its tuples was lost to a fault, is expired and counted as failed,
+ * which frees its slot. The upper bits of each slot hold the generation of
+ * the tree that it was last started for, and the id of a tree includes its
+ * generation, so that late updates for an expired tree are ignored rather
+ * than corrupting the tree that reuses the slot.
+ * @author aaron
+ *
+ */
+public class CompletionTracker {
+	
+	/**
+	 * the number of low bits of a slot that hold the XOR of the edges
+	 */
+	private static final int EDGE_BITS=48;
+	
+	/**
+	 * 
+	 */
+	private static final long EDGE_MASK=(1L<<EDGE_BITS)-1;
+	
+	/**
+	 * the generation and the XOR of the outstanding edges of each tuple tree,
+	 * where the slot is free when the XOR is zero
+	 */
+	private final AtomicLongArray ledger;
+	
+	/**
+	 * the time in nanoseconds at which the tree in each slot was started
+	 */
+	private final long[] started;
+	
+	/**
+	 * 
+	 */
+	private final int mask;
+	
+	/**
+	 * the maximum number of tuple trees that may be pending
+	 */
+	private final int maxPending;
+	
+	/**
+	 * the time in nanoseconds after which a pending tuple tree is expired
+	 */
+	private final long timeoutNanos;
+	
+	/**
+	 * the earliest time at which a pending tuple tree may expire
+	 */
+	private volatile long nextExpire;
+	
+	/**
+	 * the number of tuple trees that are pending
+	 */
+	private final AtomicInteger pending = new AtomicInteger(0);
+	
+	/**
+	 * the number of tuple trees that were expired
+	 */
+	private volatile long failed=0;
+	
+	/**
+	 * the slot after the one that was last started
+	 */
+	private int next=0;
+	
+	/**
+	 * run when the number of pending tuple trees falls below the maximum
+	 */
+	private final Runnable available;
+	
+	/**
+	 * notified when a slot becomes free while an emitter is waiting for one
+	 */
+	private final Object freed = new Object();
+	
+	/**
+	 * the number of emitters waiting for a free slot
+	 */
+	private volatile int waiting=0;
+	
+	/**
+	 * @param maxPending the maximum number of tuple trees that may be pending
+	 * @param timeoutNanos the time after which a pending tuple tree is expired
+	 * @param available run when the number of pending tuple trees falls below the maximum
+	 */
+	public CompletionTracker(int maxPending,long timeoutNanos,Runnable available) {
+		this.maxPending=maxPending;
+		this.timeoutNanos=timeoutNanos;
+		this.available=available;
+		int size=Integer.highestOneBit(Math.max(maxPending,1)*2-1)<<1;
+		ledger=new AtomicLongArray(size);
+		started=new long[size];
+		mask=size-1;
+		nextExpire=System.nanoTime()+timeoutNanos;
+	}
+	
+	/**
+	 * Start a tuple tree. The ledger has at least twice as many slots as may
+	 * be pending, but an emitter that does not check {@link #isFull()} first
+	 * may fill it, in which case it must wait for a slot with {@link #await(long)}.
+	 * @param token a random non-zero token, that must be XOR'd into the slot
+	 * again when the root tuple's edges have all been recorded
+	 * @return the id of the tuple tree, or -1 if there is no free slot
+	 */
+	public synchronized long start(long token) {
+		token&=EDGE_MASK;
+		if(token==0) token=1;
+		for(int i=0;i<=mask;i++) {
+			int slot=(next+i)&mask;
+			long prev=ledger.get(slot);
+			if((prev&EDGE_MASK)!=0) continue;
+			long generation=(prev>>>EDGE_BITS)+1&0xFFFF;
+			if(ledger.compareAndSet(slot, prev, generation<<EDGE_BITS|token)) {
+				started[slot]=System.nanoTime();
+				next=slot+1;
+				pending.incrementAndGet();
+				return generation<<32|slot;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * XOR edges into the slot of a tuple tree, completing the tree if the
+	 * edges in the slot become zero. The update is ignored if the tree has
+	 * been expired.
+	 * @param tree the id of the tuple tree
+	 * @param edges
+	 */
+	public void update(long tree,long edges) {
+		edges&=EDGE_MASK;
+		if(edges==0) return;
+		final int slot=(int)tree;
+		final long generation=tree>>>32;
+		long prev,value;
+		do {
+			prev=ledger.get(slot);
+			if(prev>>>EDGE_BITS!=generation) return;
+			value=prev^edges;
+		} while(!ledger.compareAndSet(slot, prev, value));
+		if((value&EDGE_MASK)==0) freed();
+	}
+	
+	/**
+	 * Expire the tuple trees that have been pending for longer than the
+	 * message timeout, counting them as failed. This is cheap to call
+	 * until the next tree may expire.
+	 * @param now the current time in nanoseconds
+	 * @return the number of tuple trees that were expired
+	 */
+	public int expire(long now) {
+		if(now-nextExpire<0) return 0;
+		synchronized(this) {
+			int expired=0;
+			long earliest=now+timeoutNanos;
+			for(int slot=0;slot<=mask;slot++) {
+				long prev=ledger.get(slot);
+				if((prev&EDGE_MASK)==0) continue;
+				long expires=started[slot]+timeoutNanos;
+				if(now-expires<0) {
+					if(expires-earliest<0) earliest=expires;
+				} else if(ledger.compareAndSet(slot, prev, ((prev>>>EDGE_BITS)+1&0xFFFF)<<EDGE_BITS)) {
+					expired++;
+					freed();
+				}
+			}
+			failed+=expired;
+			nextExpire=earliest;
+			return expired;
+		}
+	}
+	
+	/**
+	 * A tuple tree has completed or expired, so its slot is free.
+	 */
+	private void freed() {
+		if(pending.getAndDecrement()==maxPending) available.run();
+		if(waiting>0) {
+			synchronized(freed) {
+				freed.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Wait until a slot is free or the timeout elapses.
+	 * @param timeoutNanos
+	 * @return true if a slot is free
+	 * @throws InterruptedException
+	 */
+	public boolean await(long timeoutNanos) throws InterruptedException {
+		final long deadline=System.nanoTime()+timeoutNanos;
+		synchronized(freed) {
+			waiting++;
+			try {
+				while(pending.get()>mask) {
+					long remaining=deadline-System.nanoTime();
+					if(remaining<=0) return false;
+					TimeUnit.NANOSECONDS.timedWait(freed, remaining);
+				}
+				return true;
+			} finally {
+				waiting--;
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the earliest time in nanoseconds at which a pending tuple tree may expire
+	 */
+	public long getNextExpire() {
+		return nextExpire;
+	}
+	
+	/**
+	 * 
+	 * @return the number of tuple trees that failed to complete within the
+	 * message timeout
+	 */
+	public long getFailed() {
+		return failed;
+	}
+	
+	/**
+	 * 
+	 * @return true if the maximum number of tuple trees are pending
+	 */
+	public boolean isFull() {
+		return pending.get()>=maxPending;
+	}
+	
+	/**
+	 * 
+	 * @return the number of tuple trees that are pending
+	 */
+	public int getPending() {
+		return pending.get();
+	}
+	
+	/**
+	 * The id of the edge on which a tuple is sent to a task, derived from the
+	 * tuple's edge id so that a tuple that is shared by several tasks has a
+	 * distinct edge to each of them.
+	 * @param edge the edge id of the tuple
+	 * @param component the index of the receiving component
+	 * @param taskId the receiving task
+	 * @return the edge id, which is non-zero
+	 */
+	public static long edge(long edge,int component,int taskId) {
+		long z=edge+(((long)component<<32)+taskId+1)*0x9E3779B97F4A7C15L;
+		z=(z^(z>>>33))*0xff51afd7ed558ccdL;
+		z=z^(z>>>33);
+		return z==0 ? 1 : z;
+	}
+}
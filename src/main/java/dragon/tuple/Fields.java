@@ -7,6 +7,10 @@ import java.io.Serializable;
 import java.util.HashMap;
 
 /**
+ * The names of the fields of a tuple. A declared Fields object is used as the
+ * schema of every tuple on its stream, so its field names must not be changed.
+ * The values of a tuple are held by the tuple itself, not by its Fields, so
+ * the value accessors of this class are deprecated.
  * @author aaron
  *
  */
@@ -14,9 +18,9 @@ public class Fields implements Serializable, Cloneable {
 	private static final long serialVersionUID = -134149710944581963L;
 	
 	/**
-	 * 
+	 * the values read from a stream, which are taken by the tuple that is read
 	 */
-	private final Object[] values;
+	final Object[] values;
 	
 	/**
 	 * 
@@ -50,7 +54,11 @@ public class Fields implements Serializable, Cloneable {
 	/**
 	 * @param i
 	 * @return
+	 * @deprecated the values of a tuple are held by the tuple, and a schema that
+	 * is shared by the tuples of a stream holds no values; use {@link Tuple#getValue(int)}
+	 * or {@link Tuple#getValues()} instead
 	 */
+	@Deprecated
 	public Object get(int i) {
 		return values[i];
 	}
@@ -58,17 +66,25 @@ public class Fields implements Serializable, Cloneable {
 	/**
 	 * @param i
 	 * @param value
+	 * @deprecated the values of a tuple are held by the tuple, and a schema that
+	 * is shared by the tuples of a stream holds no values; use {@link Tuple#getValue(int)}
+	 * or {@link Tuple#getValues()} instead
 	 */
+	@Deprecated
 	public void set(int i,Object value) {
 		values[i]=value;
 	}
 	
 	/**
 	 * @param values
+	 * @deprecated the values of a tuple are held by the tuple, and a schema that
+	 * is shared by the tuples of a stream holds no values; use {@link Tuple#getValue(int)}
+	 * or {@link Tuple#getValues()} instead
 	 */
+	@Deprecated
 	public void set(Object[] values) {
 		for(int i=0;i<values.length;i++) {
-			set(i,values[i]);
+			this.values[i]=values[i];
 		}
 	}
 
@@ -90,7 +106,11 @@ public class Fields implements Serializable, Cloneable {
 
 	/**
 	 * @return
+	 * @deprecated the values of a tuple are held by the tuple, and a schema that
+	 * is shared by the tuples of a stream holds no values; use {@link Tuple#getValue(int)}
+	 * or {@link Tuple#getValues()} instead
 	 */
+	@Deprecated
 	public Object[] getValues() {
 		return values;
 	}
@@ -130,8 +150,21 @@ public class Fields implements Serializable, Cloneable {
 	/**
 	 * @param out
 	 * @throws IOException
+	 * @deprecated the values of a tuple are held by the tuple; use
+	 * {@link #sendToStream(ObjectOutputStream, Object[])} with the tuple's values
 	 */
+	@Deprecated
 	public void sendToStream(ObjectOutputStream out) throws IOException {
+		sendToStream(out,values);
+	}
+	
+	/**
+	 * Send the field names along with the given values.
+	 * @param out
+	 * @param values the values, in the order of the fields
+	 * @throws IOException
+	 */
+	public void sendToStream(ObjectOutputStream out,Object[] values) throws IOException {
 		out.writeInt(fieldNames.length);
 		for(int i=0;i<fieldNames.length;i++) {
 			out.writeUTF(fieldNames[i]);
@@ -198,7 +231,7 @@ public class Fields implements Serializable, Cloneable {
 		}
 		
 		Fields fields=new Fields(fieldNames);
-		fields.set(values);
+		System.arraycopy(values, 0, fields.values, 0, size);
 		return fields;
 	}
 
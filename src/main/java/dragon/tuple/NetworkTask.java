@@ -82,6 +82,15 @@ public class NetworkTask {
 		return tuples;
 	}
 	
+	/**
+	 * 
+	 * @return the deadline of the first tuple, in ms since the epoch, or
+	 * zero if it has no deadline
+	 */
+	public long getDeadline() {
+		return tuples.length==0 || tuples[0]==null ? 0 : tuples[0].getDeadline();
+	}
+	
 	/**
 	 * @return
 	 */
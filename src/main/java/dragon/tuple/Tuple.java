@@ -4,13 +4,16 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.Arrays;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
  * The message unit, which is basically a fixed set of fields, which
- * can be any Java objects that are serializable.
+ * can be any Java objects that are serializable. The fields are a schema
+ * that is shared by all tuples on the same stream, while each tuple holds
+ * only its own array of values.
  * 
  * @author aaron
  *
@@ -40,10 +43,15 @@ public class Tuple implements Serializable {
 	private Integer sourceTaskId;
 	
 	/**
-	 * 
+	 * the schema of the tuple, which is shared and must not be modified
 	 */
 	private Fields fields;
 	
+	/**
+	 * the values of the tuple, in the order of the fields
+	 */
+	private Object[] values;
+	
 	/**
 	 * @author aaron
 	 *
@@ -74,7 +82,13 @@ public class Tuple implements Serializable {
 		/**
 		 * Used prior to any application data.
 		 */
-		PRECYCLE
+		PRECYCLE,
+		
+		/**
+		 * Used to run a timer that the bolt registered, local
+		 * to the bolt's node.
+		 */
+		TIMER
 	}
 	
 	/**
@@ -82,39 +96,130 @@ public class Tuple implements Serializable {
 	 */
 	private Type type;
 	
+	/**
+	 * the time in ms since the epoch by which the tuple must be executed,
+	 * or zero if it has no deadline
+	 */
+	private long deadline=0;
+	
+	/**
+	 * the tracker of the tuple tree that the tuple belongs to, or null if
+	 * the tuple is not tracked
+	 */
+	private transient CompletionTracker tracker;
+	
+	/**
+	 * the id of the tuple tree in the tracker
+	 */
+	private transient long trackerTree;
+	
+	/**
+	 * the edge id of the tuple, from which the edges to each receiving task are derived
+	 */
+	private transient long edge;
+	
 	/**
 	 * 
 	 */
 	public Tuple() {
 		type=Type.APPLICATION;
 		fields=new Fields();
+		values=new Object[0];
 	}
 	
 	/**
-	 * @param fields
+	 * @param fields the shared schema
 	 */
 	public Tuple(Fields fields) {
 		type=Type.APPLICATION;
-		this.fields=fields.copy();
+		this.fields=fields;
+		values=new Object[fields.size()];
 	}
 	
 	/**
-	 * @param fields
+	 * @param fields the shared schema
 	 * @param values
 	 */
 	public Tuple(Fields fields,Values values) {
 		type=Type.APPLICATION;
-		this.fields=fields.copy();
-		setValues(values);
+		this.fields=fields;
+		this.values=values.toArray();
 	}
 	
 	/**
+	 * The tuple takes the values array as its own, without copying it.
+	 * @param fields the shared schema
 	 * @param values
 	 */
-	public void setValues(Values values) {
-		for(int i=0;i<values.size();i++) {
-			fields.set(i, values.get(i));
+	public Tuple(Fields fields,Object[] values) {
+		type=Type.APPLICATION;
+		this.fields=fields;
+		this.values=values;
+	}
+	
+	/**
+	 * Project the tuple onto a subset of its fields, keeping its source, type,
+	 * deadline and tracking.
+	 * @param fields the shared schema of the projected tuples
+	 * @param indices the index of each field of the projection in this tuple's values
+	 * @return the projected tuple
+	 */
+	public Tuple project(Fields fields,int[] indices) {
+		final Object[] projected=new Object[indices.length];
+		for(int i=0;i<indices.length;i++) {
+			projected[i]=values[indices[i]];
 		}
+		final Tuple tuple=new Tuple(fields,projected);
+		tuple.sourceComponent=sourceComponent;
+		tuple.sourceStreamId=sourceStreamId;
+		tuple.sourceTaskId=sourceTaskId;
+		tuple.type=type;
+		tuple.deadline=deadline;
+		tuple.setTracking(tracker, trackerTree, edge);
+		return tuple;
+	}
+	
+	/**
+	 * @param values
+	 */
+	public void setValues(Values values) {
+		this.values=values.toArray();
+	}
+	
+	/**
+	 * Make the tuple part of a tracked tuple tree.
+	 * @param tracker
+	 * @param trackerTree
+	 * @param edge
+	 */
+	public void setTracking(CompletionTracker tracker,long trackerTree,long edge) {
+		this.tracker=tracker;
+		this.trackerTree=trackerTree;
+		this.edge=edge;
+	}
+	
+	/**
+	 * 
+	 * @return the tracker of the tuple's tree, or null if the tuple is not tracked
+	 */
+	public CompletionTracker getTracker() {
+		return tracker;
+	}
+	
+	/**
+	 * 
+	 * @return the id of the tuple's tree in the tracker
+	 */
+	public long getTrackerTree() {
+		return trackerTree;
+	}
+	
+	/**
+	 * 
+	 * @return the edge id of the tuple
+	 */
+	public long getEdge() {
+		return edge;
 	}
 	
 	/**
@@ -131,13 +236,28 @@ public class Tuple implements Serializable {
 		return type;
 	}
 	
+	/**
+	 * @param deadline the time in ms since the epoch by which the tuple must
+	 * be executed, or zero if it has no deadline
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline=deadline;
+	}
+	
+	/**
+	 * 
+	 * @return the time in ms since the epoch by which the tuple must be
+	 * executed, or zero if it has no deadline
+	 */
+	public long getDeadline() {
+		return deadline;
+	}
+	
 	/**
 	 * 
 	 */
 	public void clearValues() {
-		for(int i=0;i<fields.size();i++) {
-			fields.set(i, null);
-		}
+		Arrays.fill(values, null);
 	}
 	
 	/**
@@ -145,28 +265,29 @@ public class Tuple implements Serializable {
 	 * @return
 	 */
 	public Object getValue(int index){
-		return fields.getValues()[index];
+		return values[index];
 	}
 	
 	/**
 	 * @return
 	 */
 	public Object[] getValues(){
-		return fields.getValues();
+		return values;
 	}
 	
 	/**
-	 * @return
+	 * @return the schema of the tuple, which is shared by all tuples on the stream
 	 */
 	public Fields getFields() {
 		return fields;
 	}
 	
 	/**
-	 * @param fields
+	 * @param fields the shared schema
 	 */
 	public void setFields(Fields fields) {
 		this.fields=fields;
+		if(values.length!=fields.size()) values=new Object[fields.size()];
 	}
 	
 	/**
@@ -174,7 +295,7 @@ public class Tuple implements Serializable {
 	 * @return
 	 */
 	public Object getValueByField(String fieldName) {
-		return fields.get(fields.getFieldMap().get(fieldName));
+		return values[fields.getFieldMap().get(fieldName)];
 	}
 	
 	/**
@@ -224,7 +345,7 @@ public class Tuple implements Serializable {
 	 */
 	@Override
 	public String toString() {
-		return "source("+sourceComponent+":"+sourceStreamId+":"+sourceTaskId+")<"+fields.getValues().toString()+">";
+		return "source("+sourceComponent+":"+sourceStreamId+":"+sourceTaskId+")<"+Arrays.toString(values)+">";
 	}
 	
 	/**
@@ -236,7 +357,8 @@ public class Tuple implements Serializable {
 		out.writeUTF(sourceStreamId);
 		out.writeInt(sourceTaskId);
 		out.writeUTF(type.name());
-		fields.sendToStream(out);
+		out.writeLong(deadline);
+		fields.sendToStream(out,values);
 	}
 	
 	/**
@@ -250,13 +372,14 @@ public class Tuple implements Serializable {
 		String sourceStreamId = in.readUTF();
 		Integer sourceTaskId = in.readInt();
 		Type type = Type.valueOf(in.readUTF());
+		long deadline = in.readLong();
 		Fields fields = Fields.readFromStream(in);
-		Tuple t = new Tuple();
+		Tuple t = new Tuple(fields,fields.values);
 		t.setSourceComponent(sourceComponent);
 		t.setSourceStreamId(sourceStreamId);
 		t.setSourceTaskId(sourceTaskId);
-		t.setFields(fields);
 		t.setType(type);
+		t.setDeadline(deadline);
 		return t;
 	}
 
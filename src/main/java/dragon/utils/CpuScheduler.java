@@ -0,0 +1,221 @@
+package dragon.utils;
+
+import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Shares the cores of this node between the executor groups of the topologies
+ * on it. Each period the CPU time used by each group is measured, and a group
+ * whose use is over its limit is throttled until its balance is restored, in
+ * the manner of a CPU bandwidth controller. A group's limit is its quota, and
+ * while the cores are in contention it is also limited to its weighted fair
+ * share of the cores, where the share that a group does not use is divided
+ * between the others. Measurement is skipped while no group can be limited.
+ * @author aaron
+ *
+ */
+public class CpuScheduler extends Thread {
+	private static final Logger log = LogManager.getLogger(CpuScheduler.class);
+	
+	/**
+	 * the accounting period in ms
+	 */
+	public static final long PERIOD_MS=10;
+	
+	/**
+	 * 
+	 */
+	public static final long PERIOD_NANOS=PERIOD_MS*1000000L;
+	
+	/**
+	 * the number of periods of unused limit that a group may accumulate, to
+	 * allow for bursts
+	 */
+	private static final int BURST_PERIODS=10;
+	
+	/**
+	 * the fraction of the cores in use at which they are considered to be
+	 * in contention
+	 */
+	private static final double CONTENTION=0.9;
+	
+	/**
+	 * the factor by which a group's use may grow from one period to the next
+	 * while the cores are in contention
+	 */
+	private static final double GROWTH=1.5;
+	
+	/**
+	 * 
+	 */
+	private static CpuScheduler me;
+	
+	/**
+	 * 
+	 */
+	private final CopyOnWriteArrayList<ExecutorGroup> groups;
+	
+	/**
+	 * 
+	 */
+	private final int cores;
+	
+	/**
+	 * @return the scheduler of this node, started on first use
+	 */
+	public static synchronized CpuScheduler inst() {
+		if(me==null) me=new CpuScheduler();
+		return me;
+	}
+	
+	/**
+	 * 
+	 */
+	private CpuScheduler() {
+		groups=new CopyOnWriteArrayList<ExecutorGroup>();
+		cores=Runtime.getRuntime().availableProcessors();
+		setName("cpu scheduler");
+		setDaemon(true);
+		start();
+	}
+	
+	/**
+	 * 
+	 * @param group
+	 */
+	void add(ExecutorGroup group) {
+		groups.add(group);
+		log.debug("added ["+group.getTopologyId()+"] with quota ["+group.getQuota()+
+				"] and weight ["+group.getWeight()+"]");
+		LockSupport.unpark(this);
+	}
+	
+	/**
+	 * 
+	 * @param group
+	 */
+	void remove(ExecutorGroup group) {
+		groups.remove(group);
+	}
+	
+	/**
+	 * 
+	 * @return true if a group may be limited, i.e. has a quota or shares the node
+	 */
+	private boolean limiting() {
+		if(groups.size()>1) return true;
+		for(ExecutorGroup group : groups) {
+			if(group.getQuota()>0) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Measure the groups' use over the last period and set their limits.
+	 * @param elapsed the length of the last period in nanoseconds
+	 */
+	private void schedule(long elapsed) {
+		double total=0;
+		for(ExecutorGroup group : groups) {
+			long cpu=group.getCpuNanos();
+			group.usage=(double)(cpu-group.lastCpuNanos)/elapsed;
+			group.lastCpuNanos=cpu;
+			total+=group.usage;
+		}
+		for(ExecutorGroup group : groups) {
+			group.limit=group.getQuota()>0 ? group.getQuota() : Double.MAX_VALUE;
+		}
+		if(total>=cores*CONTENTION) share();
+		for(ExecutorGroup group : groups) {
+			if(group.limit==Double.MAX_VALUE) {
+				group.balance=0;
+				group.setThrottled(false);
+				continue;
+			}
+			group.balance=Math.min(group.balance+(group.limit-group.usage)*elapsed,
+					group.limit*PERIOD_NANOS*BURST_PERIODS);
+			group.setThrottled(group.balance<0);
+		}
+	}
+	
+	/**
+	 * Divide the cores between the groups in proportion to their weight. A
+	 * group whose demand is less than its share is given what it demands, and
+	 * the remainder is divided between the others. Use under contention
+	 * understates demand, so a group is assumed to demand somewhat more than it
+	 * used, or as much as it may have if it was throttled, which lets it grow
+	 * from one period to the next. If every group is given what it demands, the
+	 * cores that are left are divided between them by weight, so the limits
+	 * never add up to more than the cores. Groups that use more than their
+	 * share are therefore throttled over a few periods until each has its share.
+	 */
+	private void share() {
+		ArrayList<ExecutorGroup> unsatisfied=new ArrayList<ExecutorGroup>(groups);
+		double remaining=cores;
+		boolean changed=true;
+		while(changed && !unsatisfied.isEmpty()) {
+			changed=false;
+			double weights=0;
+			for(ExecutorGroup group : unsatisfied) weights+=group.getWeight();
+			for(int i=0;i<unsatisfied.size();i++) {
+				ExecutorGroup group=unsatisfied.get(i);
+				double share=remaining*group.getWeight()/weights;
+				double demand=group.isThrottled() ? group.limit : Math.min(group.usage*GROWTH,group.limit);
+				if(demand<=share) {
+					group.limit=demand;
+					remaining-=demand;
+					unsatisfied.remove(i);
+					changed=true;
+					break;
+				}
+			}
+		}
+		if(unsatisfied.isEmpty()) {
+			// the groups may grow into the cores that are left, up to their quota
+			double weights=0;
+			for(ExecutorGroup group : groups) weights+=group.getWeight();
+			for(ExecutorGroup group : groups) {
+				double limit=group.limit+remaining*group.getWeight()/weights;
+				group.limit=group.getQuota()>0 ? Math.min(group.getQuota(),limit) : limit;
+			}
+			return;
+		}
+		double weights=0;
+		for(ExecutorGroup group : unsatisfied) weights+=group.getWeight();
+		for(ExecutorGroup group : unsatisfied) {
+			group.limit=Math.min(group.limit,remaining*group.getWeight()/weights);
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Thread#run()
+	 */
+	@Override
+	public void run() {
+		long last=System.nanoTime();
+		while(!isInterrupted()) {
+			if(!limiting()) {
+				for(ExecutorGroup group : groups) {
+					group.setThrottled(false);
+					group.lastCpuNanos=group.getCpuNanos();
+				}
+				LockSupport.park(this);
+				last=System.nanoTime();
+				continue;
+			}
+			LockSupport.parkNanos(this,last+PERIOD_NANOS-System.nanoTime());
+			final long now=System.nanoTime();
+			if(now-last<PERIOD_NANOS/2) continue;
+			try {
+				schedule(now-last);
+			} catch (Throwable e) {
+				log.error("could not schedule: "+e.toString());
+			}
+			last=now;
+		}
+	}
+}
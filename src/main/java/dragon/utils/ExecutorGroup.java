@@ -0,0 +1,272 @@
+package dragon.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The executor threads of a topology on this node, i.e. its component and
+ * network executor threads, which share a CPU quota and a weight. The
+ * {@link CpuScheduler} measures the CPU time used by the group and sets the
+ * group as throttled while it is over its limit, during which its threads
+ * park the next time they call {@link Executor#throttle()}.
+ * @author aaron
+ *
+ */
+public class ExecutorGroup {
+	
+	/**
+	 * 
+	 */
+	private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+	
+	/**
+	 * A thread of the group.
+	 * @author aaron
+	 * 
+	 */
+	public class Executor {
+		
+		/**
+		 * 
+		 */
+		private final Object owner;
+		
+		/**
+		 * 
+		 */
+		private final Thread thread;
+		
+		/**
+		 * nanoseconds that the thread has spent parked by the group's throttle
+		 */
+		private volatile long throttledNanos=0;
+		
+		/**
+		 * @param owner
+		 * @param thread
+		 */
+		private Executor(Object owner,Thread thread) {
+			this.owner=owner;
+			this.thread=thread;
+		}
+		
+		/**
+		 * Park the calling thread while the group is over its limit, called
+		 * by the thread between units of work.
+		 */
+		public void throttle() {
+			if(!throttled) return;
+			final long start=System.nanoTime();
+			while(throttled && !thread.isInterrupted()) {
+				LockSupport.parkNanos(ExecutorGroup.this,CpuScheduler.PERIOD_NANOS);
+			}
+			throttledNanos+=System.nanoTime()-start;
+		}
+		
+		/**
+		 * 
+		 * @return the CPU time used by the thread in nanoseconds
+		 */
+		public long getCpuNanos() {
+			long nanos=threadMXBean.getThreadCpuTime(thread.getId());
+			return nanos<0 ? 0 : nanos;
+		}
+		
+		/**
+		 * 
+		 * @return the time the thread has spent throttled in nanoseconds
+		 */
+		public long getThrottledNanos() {
+			return throttledNanos;
+		}
+		
+		/**
+		 * Remove the thread from the group, called by the thread when it
+		 * is shutting down.
+		 */
+		public void deregister() {
+			synchronized(ExecutorGroup.this) {
+				if(executors.remove(owner)!=null) {
+					retiredCpuNanos+=getCpuNanos();
+					retiredThrottledNanos+=throttledNanos;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	private final String topologyId;
+	
+	/**
+	 * the number of cores the group may use, or zero for no limit
+	 */
+	private final double quota;
+	
+	/**
+	 * 
+	 */
+	private final double weight;
+	
+	/**
+	 * the threads of the group, by the component or other object that owns them
+	 */
+	private final ConcurrentHashMap<Object,Executor> executors;
+	
+	/**
+	 * CPU time of threads that have left the group
+	 */
+	private long retiredCpuNanos=0;
+	
+	/**
+	 * throttled time of threads that have left the group
+	 */
+	private long retiredThrottledNanos=0;
+	
+	/**
+	 * true while the group is over its limit
+	 */
+	private volatile boolean throttled=false;
+	
+	/*
+	 * State of the CpuScheduler.
+	 */
+	
+	/**
+	 * the CPU time of the group at the end of the last period
+	 */
+	long lastCpuNanos=0;
+	
+	/**
+	 * the cores used by the group during the last period
+	 */
+	double usage=0;
+	
+	/**
+	 * the cores the group may use, as determined by the scheduler
+	 */
+	double limit=Double.MAX_VALUE;
+	
+	/**
+	 * CPU time in nanoseconds that the group may use before being throttled,
+	 * negative when it has used more than its limit
+	 */
+	double balance=0;
+	
+	/**
+	 * @param topologyId
+	 * @param quota the number of cores the group may use, or zero for no limit
+	 * @param weight the weight of the group when cores are in contention, which
+	 * is taken to be one if it is not positive
+	 */
+	public ExecutorGroup(String topologyId,double quota,double weight) {
+		this.topologyId=topologyId;
+		this.quota=quota;
+		this.weight=weight>0 ? weight : 1.0;
+		executors=new ConcurrentHashMap<Object,Executor>();
+		CpuScheduler.inst().add(this);
+	}
+	
+	/**
+	 * Add the calling thread to the group.
+	 * @param owner the component or other object that the thread runs for
+	 * @return the executor of the thread
+	 */
+	public Executor register(Object owner) {
+		Executor executor=new Executor(owner,Thread.currentThread());
+		executors.put(owner, executor);
+		return executor;
+	}
+	
+	/**
+	 * Remove the group from the scheduler, when the topology has terminated.
+	 */
+	public void close() {
+		CpuScheduler.inst().remove(this);
+		setThrottled(false);
+	}
+	
+	/**
+	 * 
+	 * @return
+	 */
+	public String getTopologyId() {
+		return topologyId;
+	}
+	
+	/**
+	 * 
+	 * @return the number of cores the group may use, or zero for no limit
+	 */
+	public double getQuota() {
+		return quota;
+	}
+	
+	/**
+	 * 
+	 * @return
+	 */
+	public double getWeight() {
+		return weight;
+	}
+	
+	/**
+	 * 
+	 * @return true while the group is over its limit
+	 */
+	public boolean isThrottled() {
+		return throttled;
+	}
+	
+	/**
+	 * Set whether the group is throttled, waking its threads when the
+	 * throttle is released.
+	 * @param throttled
+	 */
+	void setThrottled(boolean throttled) {
+		if(this.throttled==throttled) return;
+		this.throttled=throttled;
+		if(!throttled) {
+			for(Executor executor : executors.values()) {
+				LockSupport.unpark(executor.thread);
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @param owner
+	 * @return the executor of the owner's thread, or null if it has none
+	 */
+	public Executor getExecutor(Object owner) {
+		return executors.get(owner);
+	}
+	
+	/**
+	 * 
+	 * @return the total CPU time used by the group in nanoseconds
+	 */
+	public synchronized long getCpuNanos() {
+		long nanos=retiredCpuNanos;
+		for(Executor executor : executors.values()) {
+			nanos+=executor.getCpuNanos();
+		}
+		return nanos;
+	}
+	
+	/**
+	 * 
+	 * @return the total time that the group's threads have spent throttled
+	 * in nanoseconds
+	 */
+	public synchronized long getThrottledNanos() {
+		long nanos=retiredThrottledNanos;
+		for(Executor executor : executors.values()) {
+			nanos+=executor.throttledNanos;
+		}
+		return nanos;
+	}
+}
@@ -0,0 +1,319 @@
+package dragon.utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dragon.grouping.FieldGrouping;
+
+/**
+ * Detects the heavy hitters of a fields grouped stream, and splits them over
+ * more target tasks. A sample of the keys that are emitted is counted with the
+ * Space-Saving sketch, which holds a bounded number of counters and replaces
+ * the smallest counter when a key that is not counted arrives. Each time
+ * enough keys have been sampled, the keys whose share of the sample exceeds
+ * the threshold become hot, and each hot key is spread in turn over as many
+ * tasks as its share warrants. The counts are then halved, so that keys that
+ * cool down stop being hot. Keys are counted and matched by their values, the
+ * hash only serving to find a hot key quickly.
+ * @author aaron
+ *
+ */
+public class HotKeys {
+	
+	/**
+	 * one in this many plus one tuples is sampled
+	 */
+	private static final int SAMPLE_MASK=7;
+	
+	/**
+	 * the number of sampled keys after which the hot keys are found
+	 */
+	private static final long WINDOW=4096;
+	
+	/**
+	 * the largest number of counters
+	 */
+	private static final int MAX_CAPACITY=256;
+	
+	/**
+	 * A counter of the sketch.
+	 */
+	private static class Counter {
+		long count;
+		int hash;
+		Object[] key;
+		Counter next;
+	}
+	
+	/**
+	 * The hot keys found at the end of a window, which are replaced together.
+	 */
+	private static class Hot {
+		final int[] hashes;
+		final Object[][] values;
+		final int[] fanouts;
+		final HotKey[] keys;
+		Hot(int[] hashes,Object[][] values,HotKey[] keys) {
+			this.hashes=hashes;
+			this.values=values;
+			this.keys=keys;
+			fanouts=new int[keys.length];
+			for(int i=0;i<keys.length;i++) fanouts[i]=keys[i].fanout;
+		}
+	}
+	
+	/**
+	 * A hot key, as reported in metrics.
+	 */
+	public static class HotKey implements Serializable {
+		private static final long serialVersionUID = -3169640935402297381L;
+		
+		/**
+		 * the stream that the key is emitted on
+		 */
+		public final String streamId;
+		
+		/**
+		 * the component that the stream is fields grouped to
+		 */
+		public final String destComponentId;
+		
+		/**
+		 * the values of the key
+		 */
+		public final String key;
+		
+		/**
+		 * the estimated fraction of the stream's tuples that have the key
+		 */
+		public final double share;
+		
+		/**
+		 * the number of tasks that the key is split over
+		 */
+		public final int fanout;
+		
+		/**
+		 * @param streamId
+		 * @param destComponentId
+		 * @param key
+		 * @param share
+		 * @param fanout
+		 */
+		public HotKey(String streamId,String destComponentId,String key,double share,int fanout) {
+			this.streamId=streamId;
+			this.destComponentId=destComponentId;
+			this.key=key;
+			this.share=share;
+			this.fanout=fanout;
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		public String toString() {
+			return "hot key "+key+" on "+streamId+"->"+destComponentId+
+					" share:"+String.format("%.3f", share)+",fanout:"+fanout;
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	private final String streamId;
+	
+	/**
+	 * 
+	 */
+	private final String destComponentId;
+	
+	/**
+	 * 
+	 */
+	private final FieldGrouping grouping;
+	
+	/**
+	 * the share of the sampled keys above which a key is hot
+	 */
+	private final double threshold;
+	
+	/**
+	 * the number of counters of the sketch
+	 */
+	private final int capacity;
+	
+	/**
+	 * the counters of the sketch, by key hash, chained when keys share a hash
+	 */
+	private final HashMap<Integer,Counter> counters;
+	
+	/**
+	 * the number of counters
+	 */
+	private int size;
+	
+	/**
+	 * the total count of sampled keys since the counts were last halved
+	 */
+	private long total;
+	
+	/**
+	 * the number of sampled keys since the hot keys were last found
+	 */
+	private long sampled;
+	
+	/**
+	 * counts the tuples, to sample them, from any emitting thread
+	 */
+	private final AtomicInteger tick=new AtomicInteger();
+	
+	/**
+	 * counts the tuples of hot keys, to split them in turn, from any emitting thread
+	 */
+	private final AtomicLong turn=new AtomicLong();
+	
+	/**
+	 * the hot keys found last
+	 */
+	private volatile Hot hot=new Hot(new int[0],new Object[0][],new HotKey[0]);
+	
+	/**
+	 * @param streamId
+	 * @param destComponentId
+	 * @param grouping the fields grouping of the stream to the destination
+	 * @param threshold the share of the sampled keys above which a key is hot
+	 */
+	public HotKeys(String streamId,String destComponentId,FieldGrouping grouping,double threshold) {
+		this.streamId=streamId;
+		this.destComponentId=destComponentId;
+		this.grouping=grouping;
+		this.threshold=threshold;
+		capacity=(int)Math.min(MAX_CAPACITY, Math.ceil(2.0/threshold));
+		counters=new HashMap<Integer,Counter>(capacity*2);
+	}
+	
+	/**
+	 * Choose the target task of a tuple, sampling its key and splitting it over
+	 * more tasks if it is hot.
+	 * @param values the values of the tuple
+	 * @return the target task
+	 */
+	public List<Integer> chooseTasks(List<Object> values) {
+		final int hash=grouping.keyHash(values);
+		if((tick.incrementAndGet()&SAMPLE_MASK)==0) sample(hash,values);
+		final Hot h=hot;
+		for(int i=0;i<h.hashes.length;i++) {
+			if(h.hashes[i]==hash && grouping.isKey(values,h.values[i])) {
+				return grouping.chooseTasks(hash,h.fanouts[i],turn.getAndIncrement());
+			}
+		}
+		return grouping.chooseTasks(hash);
+	}
+	
+	/**
+	 * Count a sampled key, and find the hot keys at the end of a window.
+	 * @param hash
+	 * @param values
+	 */
+	private synchronized void sample(int hash,List<Object> values) {
+		Counter counter=counters.get(hash);
+		while(counter!=null && !grouping.isKey(values,counter.key)) counter=counter.next;
+		if(counter==null) {
+			long min=0;
+			if(size>=capacity) {
+				for(Counter chain : counters.values()) {
+					for(Counter c=chain;c!=null;c=c.next) {
+						if(counter==null || c.count<min) {
+							min=c.count;
+							counter=c;
+						}
+					}
+				}
+				remove(counter);
+			} else {
+				counter=new Counter();
+			}
+			counter.count=min;
+			counter.hash=hash;
+			counter.key=grouping.key(values);
+			counter.next=counters.get(hash);
+			counters.put(hash, counter);
+			size++;
+		}
+		counter.count++;
+		total++;
+		if(++sampled>=WINDOW) {
+			findHot();
+			sampled=0;
+		}
+	}
+	
+	/**
+	 * Remove a counter from its chain.
+	 * @param counter
+	 */
+	private void remove(Counter counter) {
+		final Counter head=counters.get(counter.hash);
+		if(head==counter) {
+			if(counter.next==null) {
+				counters.remove(counter.hash);
+			} else {
+				counters.put(counter.hash, counter.next);
+			}
+		} else {
+			Counter c=head;
+			while(c.next!=counter) c=c.next;
+			c.next=counter.next;
+		}
+		counter.next=null;
+		size--;
+	}
+	
+	/**
+	 * Find the keys whose share of the sample exceeds the threshold, and
+	 * halve the counts.
+	 */
+	private void findHot() {
+		final int n=grouping.getTargetTasks().size();
+		final ArrayList<Counter> found=new ArrayList<Counter>();
+		final ArrayList<HotKey> keys=new ArrayList<HotKey>();
+		final ArrayList<Counter> all=new ArrayList<Counter>(size);
+		for(Counter chain : counters.values()) {
+			for(Counter c=chain;c!=null;c=c.next) all.add(c);
+		}
+		for(Counter counter : all) {
+			final double share=(double)counter.count/total;
+			if(n>1 && share>threshold) {
+				final int fanout=(int)Math.min(n, Math.max(2, Math.ceil(share*n)));
+				found.add(counter);
+				keys.add(new HotKey(streamId,destComponentId,Arrays.toString(counter.key),share,fanout));
+			}
+		}
+		final int[] hashes=new int[found.size()];
+		final Object[][] values=new Object[found.size()][];
+		for(int i=0;i<hashes.length;i++) {
+			hashes[i]=found.get(i).hash;
+			values[i]=found.get(i).key;
+		}
+		hot=new Hot(hashes,values,keys.toArray(new HotKey[0]));
+		total=0;
+		for(Counter counter : all) {
+			counter.count/=2;
+			total+=counter.count;
+			if(counter.count==0) remove(counter);
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the hot keys found last
+	 */
+	public HotKey[] getHotKeys() {
+		return hot.keys;
+	}
+}
@@ -0,0 +1,49 @@
+package dragon.utils;
+
+/**
+ * A pool of threads that take work from a queue, which can be resized
+ * while it is running by a {@link PoolTuner}.
+ * @author aaron
+ *
+ */
+public interface IResizablePool {
+	
+	/**
+	 * 
+	 * @return the number of threads in the pool
+	 */
+	public int getPoolSize();
+	
+	/**
+	 * Start or retire threads so that the pool has the given size. Threads
+	 * that are retired finish the work they hold first.
+	 * @param size
+	 */
+	public void setPoolSize(int size);
+	
+	/**
+	 * 
+	 * @return the total time in nanoseconds that the threads of the pool have
+	 * been busy
+	 */
+	public long getPoolBusyNanos();
+	
+	/**
+	 * 
+	 * @return the total time in nanoseconds that work has waited on the queue
+	 * for a thread, or zero if it is not measured
+	 */
+	public long getPoolWaitNanos();
+	
+	/**
+	 * 
+	 * @return the total number of items of work that have been taken from the queue
+	 */
+	public long getPoolTaken();
+	
+	/**
+	 * 
+	 * @return the number of items of work on the queue
+	 */
+	public int getPoolBacklog();
+}
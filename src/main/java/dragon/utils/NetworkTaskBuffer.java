@@ -1,5 +1,7 @@
 package dragon.utils;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import dragon.tuple.NetworkTask;
 
 /**
@@ -8,6 +10,23 @@ import dragon.tuple.NetworkTask;
  */
 public class NetworkTaskBuffer extends CircularBlockingQueue<NetworkTask> {
 
+	/**
+	 * True while the buffer is scheduled for, or is being serviced by, a
+	 * network executor thread. At most one thread services a buffer at a
+	 * time, which preserves the order of the network tasks on it.
+	 */
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	
+	/**
+	 * Watermarks on the size of the buffer, or null if there are none.
+	 */
+	private volatile Watermark watermark;
+	
+	/**
+	 * The time at which the buffer was last scheduled, from {@link System#nanoTime()}.
+	 */
+	private volatile long scheduledNanos;
+	
 	/**
 	 * 
 	 */
@@ -21,4 +40,86 @@ public class NetworkTaskBuffer extends CircularBlockingQueue<NetworkTask> {
 	public NetworkTaskBuffer(int bufsize) {
 		super(bufsize);
 	}
+	
+	/**
+	 * Claim the buffer for scheduling.
+	 * @return true if the buffer was claimed, false if it is already scheduled
+	 */
+	public boolean claim() {
+		return scheduled.compareAndSet(false, true);
+	}
+	
+	/**
+	 * Release the buffer so that it can be scheduled again.
+	 */
+	public void release() {
+		scheduled.set(false);
+	}
+	
+	/**
+	 * 
+	 * @param scheduledNanos the time at which the buffer was scheduled, from
+	 * {@link System#nanoTime()}
+	 */
+	public void setScheduledNanos(long scheduledNanos) {
+		this.scheduledNanos=scheduledNanos;
+	}
+	
+	/**
+	 * 
+	 * @return the time at which the buffer was last scheduled, from
+	 * {@link System#nanoTime()}
+	 */
+	public long getScheduledNanos() {
+		return scheduledNanos;
+	}
+	
+	/**
+	 * Set the watermarks on the size of the buffer, which are checked whenever
+	 * a network task is put on or polled from the buffer.
+	 * @param watermark
+	 */
+	public void setWatermark(Watermark watermark) {
+		this.watermark=watermark;
+	}
+	
+	/**
+	 * 
+	 * @return the watermarks on the size of the buffer, or null if there are none
+	 */
+	public Watermark getWatermark() {
+		return watermark;
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.utils.CircularBlockingQueue#put(java.lang.Object)
+	 */
+	@Override
+	public void put(NetworkTask element) throws InterruptedException {
+		super.put(element);
+		final Watermark w=watermark;
+		if(w!=null) w.update(size());
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.utils.CircularBlockingQueue#offer(java.lang.Object)
+	 */
+	@Override
+	public boolean offer(NetworkTask element) {
+		if(!super.offer(element)) return false;
+		final Watermark w=watermark;
+		if(w!=null) w.update(size());
+		return true;
+	}
+	
+	/* (non-Javadoc)
+	 * @see dragon.utils.CircularBlockingQueue#poll()
+	 */
+	@Override
+	public NetworkTask poll() {
+		final NetworkTask element=super.poll();
+		final Watermark w=watermark;
+		if(w!=null && element!=null) w.update(size());
+		return element;
+	}
 }
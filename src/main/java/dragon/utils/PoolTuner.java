@@ -0,0 +1,222 @@
+package dragon.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Resizes a thread pool within bounds, according to measurements taken over
+ * each period. The pool is grown by a thread when its threads are mostly busy
+ * and work is either backing up on its queue or waiting too long for a thread.
+ * It is shrunk by a thread when its threads have been mostly idle, with no
+ * backlog, for several periods in a row. Every resize is logged, and the
+ * number of resizes and the reason for the last are kept for metrics.
+ * @author aaron
+ *
+ */
+public class PoolTuner {
+	private static final Logger log = LogManager.getLogger(PoolTuner.class);
+	
+	/**
+	 * the period in ms over which the pool is measured
+	 */
+	public static final long PERIOD_MS=1000;
+	
+	/**
+	 * the utilization above which the pool may be grown
+	 */
+	private static final double HIGH_UTILIZATION=0.75;
+	
+	/**
+	 * the utilization below which the pool may be shrunk
+	 */
+	private static final double LOW_UTILIZATION=0.25;
+	
+	/**
+	 * the average wait in ms of work on the queue above which the pool
+	 * may be grown
+	 */
+	private static final double HIGH_WAIT_MS=1.0;
+	
+	/**
+	 * the number of idle periods in a row after which the pool is shrunk
+	 */
+	private static final int IDLE_PERIODS=3;
+	
+	/**
+	 * 
+	 */
+	private final String name;
+	
+	/**
+	 * 
+	 */
+	private final IResizablePool pool;
+	
+	/**
+	 * 
+	 */
+	private final int min;
+	
+	/**
+	 * 
+	 */
+	private final int max;
+	
+	/**
+	 * 
+	 */
+	private final TimingWheel.Timeout timeout;
+	
+	/**
+	 * the time at the start of the period
+	 */
+	private long lastTime;
+	
+	/**
+	 * the busy time of the pool at the start of the period
+	 */
+	private long lastBusy;
+	
+	/**
+	 * the wait time of the pool at the start of the period
+	 */
+	private long lastWait;
+	
+	/**
+	 * the work taken by the pool at the start of the period
+	 */
+	private long lastTaken;
+	
+	/**
+	 * the number of idle periods in a row
+	 */
+	private int idlePeriods=0;
+	
+	/**
+	 * the number of times the pool has been resized
+	 */
+	private volatile long resizes=0;
+	
+	/**
+	 * the reason for the last resize, or null if there has been none
+	 */
+	private volatile String lastDecision;
+	
+	/**
+	 * the utilization of the pool over the last period
+	 */
+	private volatile double utilization=0;
+	
+	/**
+	 * @param name the name of the pool, for logging
+	 * @param pool
+	 * @param min the least size of the pool
+	 * @param max the largest size of the pool, where zero means the number of
+	 * available processors, and which is taken to be at least the least size
+	 */
+	public PoolTuner(String name,IResizablePool pool,int min,int max) {
+		this.name=name;
+		this.pool=pool;
+		this.min=Math.max(min,1);
+		if(max<=0) max=Runtime.getRuntime().availableProcessors();
+		this.max=Math.max(max,this.min);
+		lastTime=System.nanoTime();
+		lastBusy=pool.getPoolBusyNanos();
+		lastWait=pool.getPoolWaitNanos();
+		lastTaken=pool.getPoolTaken();
+		if(this.max>this.min) {
+			log.info("tuning ["+name+"] between ["+this.min+"] and ["+this.max+"] threads");
+			timeout=TimingWheel.inst().schedule(PERIOD_MS,PERIOD_MS,this::tune);
+		} else {
+			timeout=null;
+		}
+	}
+	
+	/**
+	 * Stop tuning the pool.
+	 */
+	public void cancel() {
+		if(timeout!=null) timeout.cancel();
+	}
+	
+	/**
+	 * Measure the pool over the last period and resize it if needed.
+	 */
+	private void tune() {
+		final long now=System.nanoTime();
+		final long busy=pool.getPoolBusyNanos();
+		final long wait=pool.getPoolWaitNanos();
+		final long taken=pool.getPoolTaken();
+		final int size=pool.getPoolSize();
+		final int backlog=pool.getPoolBacklog();
+		final long elapsed=Math.max(now-lastTime,1);
+		utilization=Math.min(1.0,(double)(busy-lastBusy)/elapsed/size);
+		final double waitMs=taken>lastTaken ? (double)(wait-lastWait)/(taken-lastTaken)/1000000.0 : 0;
+		lastTime=now;
+		lastBusy=busy;
+		lastWait=wait;
+		lastTaken=taken;
+		int target=size;
+		if(utilization>=HIGH_UTILIZATION && (backlog>size || waitMs>=HIGH_WAIT_MS)) {
+			idlePeriods=0;
+			if(size<max) target=size+1;
+		} else if(utilization<LOW_UTILIZATION && backlog==0) {
+			if(++idlePeriods>=IDLE_PERIODS && size>min) {
+				idlePeriods=0;
+				target=size-1;
+			}
+		} else {
+			idlePeriods=0;
+		}
+		if(target==size) return;
+		lastDecision=String.format("resized [%s] from [%d] to [%d] threads: utilization=%.2f backlog=%d wait=%.2fms",
+				name,size,target,utilization,backlog,waitMs);
+		log.info(lastDecision);
+		resizes++;
+		try {
+			pool.setPoolSize(target);
+		} catch (Throwable e) {
+			log.error("could not resize ["+name+"]: "+e.toString());
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the name of the pool
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * 
+	 * @return the number of threads in the pool
+	 */
+	public int getSize() {
+		return pool.getPoolSize();
+	}
+	
+	/**
+	 * 
+	 * @return the utilization of the pool over the last period
+	 */
+	public double getUtilization() {
+		return utilization;
+	}
+	
+	/**
+	 * 
+	 * @return the number of times the pool has been resized
+	 */
+	public long getResizes() {
+		return resizes;
+	}
+	
+	/**
+	 * 
+	 * @return the reason for the last resize, or null if there has been none
+	 */
+	public String getLastDecision() {
+		return lastDecision;
+	}
+}
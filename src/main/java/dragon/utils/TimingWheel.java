@@ -0,0 +1,341 @@
+package dragon.utils;
+
+import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A hierarchical timing wheel with a resolution of one millisecond, shared
+ * by all topologies on the node. The first level has a slot for each of the
+ * next 64 milliseconds, and each further level has 64 slots that each span
+ * a whole rotation of the level below. Timeouts are cascaded down a level
+ * when the level below wraps around, so scheduling and cancelling take
+ * constant time regardless of the number of timeouts. The wheel's thread
+ * parks until the next tick that has a slot to run or cascade, rather than
+ * waking every tick. Tasks are run on the wheel's thread and must not block,
+ * typically they hand off work to another thread.
+ * @author aaron
+ *
+ */
+public class TimingWheel extends Thread {
+	private static final Logger log = LogManager.getLogger(TimingWheel.class);
+	
+	/**
+	 * 
+	 */
+	private static final int WHEEL_BITS=6;
+	
+	/**
+	 * the number of slots in each level
+	 */
+	private static final int WHEEL_SIZE=1<<WHEEL_BITS;
+	
+	/**
+	 * 
+	 */
+	private static final int WHEEL_MASK=WHEEL_SIZE-1;
+	
+	/**
+	 * the number of levels, which span about two years
+	 */
+	private static final int LEVELS=6;
+	
+	/**
+	 * 
+	 */
+	private static TimingWheel me;
+	
+	/**
+	 * A scheduled task, that may be cancelled.
+	 * @author aaron
+	 * 
+	 */
+	public static class Timeout {
+		
+		/**
+		 * 
+		 */
+		private final TimingWheel wheel;
+		
+		/**
+		 * 
+		 */
+		private final Runnable task;
+		
+		/**
+		 * the period in ms for a repeating task, otherwise zero
+		 */
+		private final long period;
+		
+		/**
+		 * the tick at which the task is due
+		 */
+		private long deadline;
+		
+		/**
+		 * 
+		 */
+		private volatile boolean cancelled=false;
+		
+		/**
+		 * 
+		 */
+		private Timeout prev;
+		
+		/**
+		 * 
+		 */
+		private Timeout next;
+		
+		/**
+		 * @param wheel
+		 * @param task
+		 * @param period
+		 */
+		private Timeout(TimingWheel wheel,Runnable task,long period) {
+			this.wheel=wheel;
+			this.task=task;
+			this.period=period;
+			prev=this;
+			next=this;
+		}
+		
+		/**
+		 * Cancel the task, so that it will not be run again.
+		 * @return true if the task was scheduled and has now been cancelled
+		 */
+		public boolean cancel() {
+			return wheel.cancel(this);
+		}
+	}
+	
+	/**
+	 * the slots of each level, each a circular list with a sentinel
+	 */
+	private final Timeout[][] slots;
+	
+	/**
+	 * the time at which tick zero started
+	 */
+	private final long start;
+	
+	/**
+	 * the last tick that was processed
+	 */
+	private long tick=0;
+	
+	/**
+	 * the number of timeouts that are scheduled
+	 */
+	private int count=0;
+	
+	/**
+	 * the tick that the wheel's thread is parked until, or Long.MAX_VALUE
+	 * if nothing is scheduled
+	 */
+	private long wakeTick=Long.MAX_VALUE;
+	
+	/**
+	 * @return the timing wheel of this node, started on first use
+	 */
+	public static synchronized TimingWheel inst() {
+		if(me==null) me=new TimingWheel();
+		return me;
+	}
+	
+	/**
+	 * 
+	 */
+	private TimingWheel() {
+		slots=new Timeout[LEVELS][WHEEL_SIZE];
+		for(int level=0;level<LEVELS;level++) {
+			for(int slot=0;slot<WHEEL_SIZE;slot++) {
+				slots[level][slot]=new Timeout(this,null,0);
+			}
+		}
+		start=System.nanoTime();
+		setName("timing wheel");
+		setDaemon(true);
+		start();
+	}
+	
+	/**
+	 * 
+	 * @return the number of whole ms since the wheel started
+	 */
+	private long elapsed() {
+		return (System.nanoTime()-start)/1000000L;
+	}
+	
+	/**
+	 * Run a task once after a delay.
+	 * @param delay the delay in ms
+	 * @param task
+	 * @return the timeout, which can be used to cancel the task
+	 */
+	public Timeout schedule(long delay,Runnable task) {
+		return schedule(delay,0,task);
+	}
+	
+	/**
+	 * Run a task after a delay, and then repeatedly with the given period
+	 * if the period is greater than zero. The period is kept relative to
+	 * the first deadline, so a repeating task does not drift.
+	 * @param delay the delay in ms
+	 * @param period the period in ms, or zero to run the task once
+	 * @param task
+	 * @return the timeout, which can be used to cancel the task
+	 */
+	public Timeout schedule(long delay,long period,Runnable task) {
+		final Timeout timeout=new Timeout(this,task,period);
+		final long now=elapsed();
+		boolean wake=false;
+		synchronized(this) {
+			// nothing is scheduled, so the wheel can skip ahead
+			if(count==0 && tick<now) tick=now;
+			timeout.deadline=now+Math.max(delay,0);
+			insert(timeout,tick+1);
+			final long due=Math.max(timeout.deadline,tick+1);
+			if(due<wakeTick) {
+				// the thread is parked until later, so wake it to park again
+				wakeTick=due;
+				wake=true;
+			}
+		}
+		if(wake) LockSupport.unpark(this);
+		return timeout;
+	}
+	
+	/**
+	 * 
+	 * @param timeout
+	 * @return true if the timeout was scheduled and has now been cancelled
+	 */
+	private synchronized boolean cancel(Timeout timeout) {
+		if(timeout.cancelled) return false;
+		timeout.cancelled=true;
+		if(timeout.next==timeout) return false;
+		unlink(timeout);
+		return true;
+	}
+	
+	/**
+	 * Place a timeout in the slot that covers its deadline, relative to the
+	 * current tick.
+	 * @param timeout
+	 * @param earliest the earliest tick at which it may be run
+	 */
+	private void insert(Timeout timeout,long earliest) {
+		long deadline=Math.max(timeout.deadline,earliest);
+		long delta=deadline-tick;
+		int level=0;
+		while(level<LEVELS-1 && delta>=1L<<(WHEEL_BITS*(level+1))) level++;
+		if(delta>=1L<<(WHEEL_BITS*LEVELS)) {
+			// beyond the last level, it will be cascaded again
+			deadline=tick+(1L<<(WHEEL_BITS*LEVELS))-1;
+		}
+		final Timeout sentinel=slots[level][(int)((deadline>>>(WHEEL_BITS*level))&WHEEL_MASK)];
+		timeout.prev=sentinel.prev;
+		timeout.next=sentinel;
+		sentinel.prev.next=timeout;
+		sentinel.prev=timeout;
+		count++;
+	}
+	
+	/**
+	 * 
+	 * @param timeout
+	 */
+	private void unlink(Timeout timeout) {
+		timeout.prev.next=timeout.next;
+		timeout.next.prev=timeout.prev;
+		timeout.prev=timeout;
+		timeout.next=timeout;
+		count--;
+	}
+	
+	/**
+	 * Advance to the next tick, cascading the levels that have wrapped and
+	 * collecting the timeouts that are due.
+	 * @param due the list to add the timeouts that are due to
+	 */
+	private void advance(ArrayList<Timeout> due) {
+		tick++;
+		for(int level=1;level<LEVELS;level++) {
+			if((tick&((1L<<(WHEEL_BITS*level))-1))!=0) break;
+			final Timeout sentinel=slots[level][(int)((tick>>>(WHEEL_BITS*level))&WHEEL_MASK)];
+			while(sentinel.next!=sentinel) {
+				final Timeout timeout=sentinel.next;
+				unlink(timeout);
+				insert(timeout,tick);
+			}
+		}
+		final Timeout sentinel=slots[0][(int)(tick&WHEEL_MASK)];
+		while(sentinel.next!=sentinel) {
+			final Timeout timeout=sentinel.next;
+			unlink(timeout);
+			due.add(timeout);
+			if(timeout.period>0 && !timeout.cancelled) {
+				timeout.deadline+=timeout.period;
+				insert(timeout,tick+1);
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the next tick at which a slot of the first level is due, or a
+	 * slot of a further level is cascaded, or Long.MAX_VALUE if every slot
+	 * is empty
+	 */
+	private long nextTick() {
+		long next=Long.MAX_VALUE;
+		for(int level=0;level<LEVELS;level++) {
+			final int shift=WHEEL_BITS*level;
+			final long base=(tick>>>shift)+1;
+			for(int i=0;i<WHEEL_SIZE;i++) {
+				final long at=(base+i)<<shift;
+				if(at>=next) break;
+				final Timeout sentinel=slots[level][(int)((base+i)&WHEEL_MASK)];
+				if(sentinel.next!=sentinel) {
+					next=at;
+					break;
+				}
+			}
+		}
+		return next;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Thread#run()
+	 */
+	@Override
+	public void run() {
+		final ArrayList<Timeout> due=new ArrayList<Timeout>();
+		while(!isInterrupted()) {
+			final long now=elapsed();
+			final long next;
+			synchronized(this) {
+				while(tick<now && count>0) advance(due);
+				next=count==0 ? Long.MAX_VALUE : nextTick();
+				wakeTick=next;
+			}
+			for(Timeout timeout : due) {
+				if(timeout.cancelled) continue;
+				try {
+					timeout.task.run();
+				} catch (Throwable e) {
+					log.error("timer task threw: "+e.toString());
+				}
+			}
+			due.clear();
+			if(next==Long.MAX_VALUE) {
+				LockSupport.park(this);
+			} else {
+				LockSupport.parkNanos(this,start+next*1000000L-System.nanoTime());
+			}
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package dragon.utils;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * High and low watermarks on the size of a buffer. When the size reaches
+ * the high watermark the buffer is under pressure, and it remains so until
+ * the size falls to the low watermark. The listener is told of each change
+ * and the total time spent under pressure is recorded.
+ * @author aaron
+ *
+ */
+public class Watermark {
+	
+	/**
+	 * Told when the buffer comes under pressure and when the pressure clears.
+	 * @author aaron
+	 * 
+	 */
+	public static interface Listener {
+		/**
+		 * @param pressure true if the buffer reached the high watermark,
+		 * false if it fell to the low watermark
+		 */
+		public void pressure(boolean pressure);
+	}
+	
+	/**
+	 * the size at which the buffer comes under pressure
+	 */
+	private final int high;
+	
+	/**
+	 * the size at which the pressure clears
+	 */
+	private final int low;
+	
+	/**
+	 * 
+	 */
+	private final Listener listener;
+	
+	/**
+	 * true while the buffer is under pressure
+	 */
+	private final AtomicBoolean above = new AtomicBoolean(false);
+	
+	/**
+	 * the time at which the buffer last came under pressure
+	 */
+	private volatile long since;
+	
+	/**
+	 * nanoseconds spent under pressure, not counting the current period
+	 */
+	private final AtomicLong nanos = new AtomicLong(0);
+	
+	/**
+	 * @param capacity the capacity of the buffer
+	 * @param high the high watermark as a fraction of the capacity
+	 * @param low the low watermark as a fraction of the capacity
+	 * @param listener
+	 */
+	public Watermark(int capacity,double high,double low,Listener listener) {
+		this.high=Math.max(1,Math.min(capacity,(int)Math.ceil(capacity*high)));
+		this.low=Math.max(0,Math.min(this.high-1,(int)Math.floor(capacity*low)));
+		this.listener=listener;
+	}
+	
+	/**
+	 * Check the size of the buffer against the watermarks, called after
+	 * the buffer has changed.
+	 * @param size the current size of the buffer
+	 */
+	public void update(int size) {
+		if(size>=high) {
+			if(!above.get() && above.compareAndSet(false, true)) {
+				since=System.nanoTime();
+				listener.pressure(true);
+			}
+		} else if(size<=low) {
+			if(above.get() && above.compareAndSet(true, false)) {
+				nanos.addAndGet(System.nanoTime()-since);
+				listener.pressure(false);
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @return true if the buffer is under pressure
+	 */
+	public boolean isAbove() {
+		return above.get();
+	}
+	
+	/**
+	 * 
+	 * @return the total time in nanoseconds that the buffer has been under pressure
+	 */
+	public long getNanos() {
+		long n=nanos.get();
+		if(above.get()) n+=System.nanoTime()-since;
+		return n;
+	}
+}
@@ -0,0 +1,356 @@
+package dragon.utils;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A set of deques, one per worker thread, that workers take elements from.
+ * A worker takes from the head of its own deque and, when that is empty,
+ * steals from the tail of the other deques before waiting. The number of
+ * workers can be changed up to the number of deques, and workers beyond the
+ * number are retired, leaving their elements to be stolen. Elements that
+ * are offered by threads outside of the pool are spread over the deques
+ * in a round robin manner. Elements that are offered with a deadline are
+ * held apart and taken by any worker before the deques, earliest deadline
+ * first. The busy time of each worker is recorded so that the utilization
+ * of the workers can be reported.
+ * @author aaron
+ *
+ * @param <T>
+ */
+public class WorkStealingDeques<T> {
+
+	/**
+	 * One deque per worker.
+	 */
+	private final ConcurrentLinkedDeque<T>[] deques;
+
+	/**
+	 * An element that has a deadline.
+	 * @author aaron
+	 *
+	 * @param <T>
+	 */
+	private static class Deadline<T> implements Comparable<Deadline<T>> {
+		public final T element;
+		public final long deadline;
+		public final long sequence;
+		public Deadline(T element,long deadline,long sequence) {
+			this.element=element;
+			this.deadline=deadline;
+			this.sequence=sequence;
+		}
+		@Override
+		public int compareTo(Deadline<T> other) {
+			int c=Long.compare(deadline,other.deadline);
+			return c!=0 ? c : Long.compare(sequence,other.sequence);
+		}
+	}
+	
+	/**
+	 * Elements that have a deadline, ordered by deadline and then by the
+	 * order in which they were offered.
+	 */
+	private final PriorityBlockingQueue<Deadline<T>> urgent;
+	
+	/**
+	 * The number of elements that have a deadline.
+	 */
+	private final AtomicInteger urgentCount = new AtomicInteger(0);
+	
+	/**
+	 * The number of elements that have been offered with a deadline.
+	 */
+	private final AtomicLong sequence = new AtomicLong(0);
+	
+	/**
+	 * The number of workers that are active.
+	 */
+	private volatile int active;
+	
+	/**
+	 * Nanoseconds that all workers have been busy, in total.
+	 */
+	private final AtomicLong busyTotal = new AtomicLong(0);
+	
+	/**
+	 * Nanoseconds that elements have waited to be taken, in total.
+	 */
+	private final AtomicLong waitTotal = new AtomicLong(0);
+	
+	/**
+	 * The number of elements that have been taken.
+	 */
+	private final AtomicLong taken = new AtomicLong(0);
+	
+	/**
+	 * The number of elements over all of the deques.
+	 */
+	private final AtomicInteger count = new AtomicInteger(0);
+
+	/**
+	 * The next deque to place an element on.
+	 */
+	private final AtomicInteger next = new AtomicInteger(0);
+
+	/**
+	 * Lock for workers that have nothing to do.
+	 */
+	private final ReentrantLock idleLock = new ReentrantLock();
+
+	/**
+	 * Condition for workers that have nothing to do.
+	 */
+	private final Condition notEmpty = idleLock.newCondition();
+
+	/**
+	 * The number of workers waiting on the not empty condition.
+	 */
+	private final AtomicInteger idle = new AtomicInteger(0);
+
+	/**
+	 * Nanoseconds that each worker has been busy since the last sample.
+	 */
+	private final AtomicLongArray busyNanos;
+
+	/**
+	 * The time at which the last utilization sample was taken.
+	 */
+	private long sampleStart;
+
+	/**
+	 * @param workers the number of workers, and therefore deques
+	 */
+	public WorkStealingDeques(int workers) {
+		this(workers,workers);
+	}
+	
+	/**
+	 * @param workers the number of workers to start with
+	 * @param maxWorkers the largest number of workers, and therefore deques
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public WorkStealingDeques(int workers,int maxWorkers) {
+		maxWorkers=Math.max(workers,maxWorkers);
+		active = workers;
+		deques = new ConcurrentLinkedDeque[maxWorkers];
+		for(int i=0;i<maxWorkers;i++) {
+			deques[i]=new ConcurrentLinkedDeque<T>();
+		}
+		urgent = new PriorityBlockingQueue<Deadline<T>>();
+		busyNanos = new AtomicLongArray(maxWorkers);
+		sampleStart = System.nanoTime();
+	}
+
+	/**
+	 *
+	 * @return the number of workers
+	 */
+	public int getWorkers() {
+		return active;
+	}
+	
+	/**
+	 * 
+	 * @return the largest number of workers
+	 */
+	public int getMaxWorkers() {
+		return deques.length;
+	}
+	
+	/**
+	 * Change the number of workers. Workers whose index is no longer less
+	 * than the number are woken, and are given no more elements.
+	 * @param workers the number of workers, up to the largest number
+	 */
+	public void setWorkers(int workers) {
+		active = Math.max(1,Math.min(workers,deques.length));
+		idleLock.lock();
+		try {
+			notEmpty.signalAll();
+		} finally {
+			idleLock.unlock();
+		}
+	}
+
+	/**
+	 * Place an element on the tail of the next deque.
+	 * @param element
+	 */
+	public void offer(T element) {
+		int i = (next.getAndIncrement() & Integer.MAX_VALUE) % active;
+		deques[i].offerLast(element);
+		count.incrementAndGet();
+		signal();
+	}
+	
+	/**
+	 * Place an element that has a deadline ahead of those that have a later
+	 * deadline or none.
+	 * @param element
+	 * @param deadline the deadline, or zero if the element has none
+	 */
+	public void offer(T element,long deadline) {
+		if(deadline==0) {
+			offer(element);
+			return;
+		}
+		urgent.offer(new Deadline<T>(element,deadline,sequence.getAndIncrement()));
+		urgentCount.incrementAndGet();
+		count.incrementAndGet();
+		signal();
+	}
+	
+	/**
+	 * 
+	 * @return the earliest deadline of the elements that have one, or zero if
+	 * there are none
+	 */
+	public long nextDeadline() {
+		if(urgentCount.get()==0) return 0;
+		final Deadline<T> head=urgent.peek();
+		return head==null ? 0 : head.deadline;
+	}
+	
+	/**
+	 * Wake a worker, if any are waiting.
+	 */
+	private void signal() {
+		if(idle.get()>0) {
+			idleLock.lock();
+			try {
+				notEmpty.signal();
+			} finally {
+				idleLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Take an element for the given worker, first the element with the earliest
+	 * deadline, then from its own deque and otherwise from the other deques,
+	 * waiting if there are no elements at all.
+	 * @param me the index of the worker
+	 * @return the element, or null if the worker has been retired
+	 * @throws InterruptedException
+	 */
+	public T take(int me) throws InterruptedException {
+		for(;;) {
+			if(me>=active) return null;
+			if(urgentCount.get()>0) {
+				final Deadline<T> head=urgent.poll();
+				if(head!=null) {
+					urgentCount.decrementAndGet();
+					count.decrementAndGet();
+					return head.element;
+				}
+			}
+			T element = deques[me].pollFirst();
+			if(element==null) element = steal(me);
+			if(element!=null) {
+				count.decrementAndGet();
+				return element;
+			}
+			idleLock.lockInterruptibly();
+			try {
+				idle.incrementAndGet();
+				try {
+					while(count.get()==0 && me<active) {
+						notEmpty.await();
+					}
+				} finally {
+					idle.decrementAndGet();
+				}
+			} finally {
+				idleLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Steal an element from the tail of another worker's deque.
+	 * @param me the index of the worker that is stealing
+	 * @return the element, or null if there was nothing to steal
+	 */
+	private T steal(int me) {
+		for(int j=1;j<deques.length;j++) {
+			T element = deques[(me+j)%deques.length].pollLast();
+			if(element!=null) return element;
+		}
+		return null;
+	}
+
+	/**
+	 * Record time that a worker spent busy.
+	 * @param me the index of the worker
+	 * @param nanos the number of nanoseconds the worker was busy for
+	 */
+	public void busy(int me,long nanos) {
+		busyNanos.addAndGet(me, nanos);
+		busyTotal.addAndGet(nanos);
+	}
+	
+	/**
+	 * Record the time that an element waited before it was taken.
+	 * @param nanos
+	 */
+	public void waited(long nanos) {
+		waitTotal.addAndGet(nanos);
+		taken.incrementAndGet();
+	}
+	
+	/**
+	 * 
+	 * @return the time in nanoseconds that all workers have been busy, in total
+	 */
+	public long getBusyNanos() {
+		return busyTotal.get();
+	}
+	
+	/**
+	 * 
+	 * @return the time in nanoseconds that elements have waited to be taken, in total
+	 */
+	public long getWaitNanos() {
+		return waitTotal.get();
+	}
+	
+	/**
+	 * 
+	 * @return the number of elements that have been taken, for which the wait was recorded
+	 */
+	public long getTaken() {
+		return taken.get();
+	}
+
+	/**
+	 * The fraction of time that each worker was busy since the last time
+	 * this method was called.
+	 * @return an array of utilizations in the range [0,1], one per worker
+	 */
+	public synchronized double[] sampleUtilization() {
+		long now = System.nanoTime();
+		long elapsed = Math.max(now-sampleStart,1);
+		sampleStart=now;
+		final int workers = active;
+		double[] utilization = new double[workers];
+		for(int i=0;i<deques.length;i++) {
+			final double u=Math.min(1.0,(double)busyNanos.getAndSet(i,0)/elapsed);
+			if(i<workers) utilization[i]=u;
+		}
+		return utilization;
+	}
+
+	/**
+	 *
+	 * @return the number of elements over all of the deques
+	 */
+	public int size() {
+		return count.get();
+	}
+}